@@ -0,0 +1,172 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Batches manual acknowledgements of the messages received on a channel.
+ * Each acknowledgement covers all messages up to a delivery tag, so
+ * acknowledging a batch takes one message to the broker. Because the broker
+ * numbers deliveries per channel, the tags visible to the user also carry the
+ * generation of the channel. Therefore, a tag from a channel that has been
+ * replaced is never applied to the current one. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class AckBatcher
+{
+	// Constants
+	// The low bits of a user-visible tag are the delivery tag of the broker,
+	// and the high bits are the generation of the channel
+	private static final int channelTagBits = 40;
+	private static final long channelTagMask = (1L << channelTagBits) - 1;
+	
+	private final int m_flushCount;
+	private final long m_flushIntervalNanos;
+	
+	// These are synchronized with the lock of this object
+	private Channel m_channel = null;
+	private int m_generation = 0;
+	private long m_ackedTag = 0; // acknowledged to the broker
+	private long m_pendingTag = 0; // acknowledged by the user
+	private long m_pendingSinceNanos = 0;
+	
+	// Whether an acknowledgement is pending. This can be checked without locking.
+	private volatile boolean m_hasPending = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param flushCount How many messages a pending acknowledgement must cover to be sent.
+	 * @param flushIntervalMillis How old a pending acknowledgement can become, or 0 for no limit.
+	 */
+	AckBatcher(int flushCount, long flushIntervalMillis)
+	{
+		m_flushCount = flushCount;
+		m_flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+	}
+	
+	/**
+	 * Starts acknowledging on a new channel. Anything pending on the previous
+	 * channel is discarded, because the broker has requeued those messages.
+	 * @param channel Channel.
+	 * @return The generation of the channel.
+	 */
+	synchronized int setChannel(Channel channel)
+	{
+		m_channel = channel;
+		++m_generation;
+		m_ackedTag = 0;
+		m_pendingTag = 0;
+		m_hasPending = false;
+		return m_generation;
+	}
+	
+	/**
+	 * Creates the tag visible to the user.
+	 * @param generation The generation of the channel.
+	 * @param channelTag The delivery tag of the broker.
+	 * @return Tag.
+	 */
+	static long toUserTag(int generation, long channelTag)
+	{
+		return ((long)generation << channelTagBits) | (channelTag & channelTagMask);
+	}
+	
+	/**
+	 * Acknowledges all messages up to the given tag. The acknowledgement is sent
+	 * to the broker once it covers enough messages or has become old enough. If the tag
+	 * is from a channel already replaced, nothing happens, because the broker
+	 * has requeued the messages.
+	 * @param userTag Tag as visible to the user.
+	 * @throws IOException Thrown if sending the acknowledgement fails.
+	 */
+	synchronized void ackUpTo(long userTag) throws IOException
+	{
+		long channelTag = userTag & channelTagMask;
+		
+		if ((int)(userTag >>> channelTagBits) != m_generation || channelTag <= m_pendingTag)
+		{
+			return;
+		}
+		
+		if (!m_hasPending)
+		{
+			m_pendingSinceNanos = System.nanoTime();
+		}
+		
+		m_pendingTag = channelTag;
+		m_hasPending = true;
+		
+		// Delivery tags are consecutive, so the difference is the count of messages
+		if (m_pendingTag - m_ackedTag >= m_flushCount)
+		{
+			flush();
+		}
+		else
+		{
+			flushIfDue();
+		}
+	}
+	
+	/**
+	 * Sends the pending acknowledgement if it has become old enough.
+	 * @throws IOException Thrown if sending the acknowledgement fails.
+	 */
+	void flushIfDue() throws IOException
+	{
+		// Checking without locking first, because this is called on every receive
+		if (!m_hasPending || m_flushIntervalNanos <= 0)
+		{
+			return;
+		}
+		
+		synchronized (this)
+		{
+			if (m_hasPending && System.nanoTime() - m_pendingSinceNanos >= m_flushIntervalNanos)
+			{
+				flush();
+			}
+		}
+	}
+	
+	/**
+	 * Sends the pending acknowledgement if any.
+	 * @throws IOException Thrown if sending the acknowledgement fails.
+	 */
+	synchronized void flush() throws IOException
+	{
+		if (!m_hasPending)
+		{
+			return;
+		}
+		
+		// Whatever happens, the acknowledgement is not retried. If the channel
+		// has closed, the broker requeues the messages anyway.
+		m_hasPending = false;
+		
+		try
+		{
+			m_channel.basicAck(m_pendingTag, true);
+			m_ackedTag = m_pendingTag;
+		}
+		catch (ShutdownSignalException e)
+		{
+			throw new IOException("Channel closed", e);
+		}
+	}
+}
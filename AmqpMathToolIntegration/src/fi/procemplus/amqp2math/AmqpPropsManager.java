@@ -8,7 +8,7 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2math;
 
@@ -22,6 +22,26 @@ public class AmqpPropsManager
 	private static final int defaultPortSecure = 5671;
 	private static final int defaultPortNotSecure = 5672;
 	private static final int portUnspecified = -1;
+	private static final int defaultPrefetchCount = 100;
+	private static final int defaultMaxUnconfirmed = 1000;
+	private static final int defaultTopicQueueCapacity = 1000;
+	private static final int defaultCompressionThreshold = 1024;
+	private static final int defaultMaxDecompressedBytes = 64 * 1024 * 1024;
+	
+	/**
+	 * No compression.
+	 */
+	public static final String compressionNone = "none";
+	
+	/**
+	 * Compression with deflate at the default level.
+	 */
+	public static final String compressionDeflate = "deflate";
+	
+	/**
+	 * Compression with deflate at the fastest level, which costs less CPU but compresses less.
+	 */
+	public static final String compressionFast = "fast";
 	
 	private final String m_host;
 	private final String m_exchange;
@@ -31,6 +51,30 @@ public class AmqpPropsManager
 	private boolean m_secure = true; // Secure by default
 	private boolean m_exchangeDurable = false; // not durable by default
 	private boolean m_exchangeAutoDelete = false; // no autodelete by default
+	private String m_queueName = ""; // a server-named queue by default
+	private boolean m_queueDurable = false; // not durable by default
+	private boolean m_pushConsumer = false; // pull with basicGet by default
+	private int m_prefetchCount = defaultPrefetchCount;
+	private long m_receiveBufferMaxBytes = 0; // bounded by the prefetch count by default
+	private boolean m_manualAck = false; // acknowledge on receipt by default
+	private int m_ackFlushCount = 1; // acknowledge immediately by default
+	private long m_ackFlushIntervalMillis = 0; // no time limit by default
+	private boolean m_publisherConfirms = false; // fire and forget by default
+	private int m_maxUnconfirmed = defaultMaxUnconfirmed;
+	private boolean m_autoReconnect = false; // reconnect on next use by default
+	private long m_journalMaxBytes = 0; // no journal by default
+	private int m_journalDrainRate = 0; // drain as fast as the broker confirms by default
+	private int m_publishChannelCount = 1;
+	private boolean m_shareConnection = false; // each connector has its own connection by default
+	private boolean m_loopback = false; // communicate through the broker by default
+	private boolean m_traceHeaders = false; // no tracing headers by default
+	private boolean m_pooledBuffers = false; // a new array for each message by default
+	private int m_topicQueueCapacity = defaultTopicQueueCapacity;
+	private String[] m_conflatedTopics = new String[0]; // nothing conflated by default
+	private String m_compression = compressionNone;
+	private int m_compressionThreshold = defaultCompressionThreshold;
+	private String[] m_compressedTopics = new String[0]; // all topics if compression is enabled
+	private int m_maxDecompressedBytes = defaultMaxDecompressedBytes;
 	
 	// This indicates the port if set explicitly. Otherwise, a default port is assumed.
 	private int m_explicitPort = portUnspecified;
@@ -160,4 +204,607 @@ public class AmqpPropsManager
 	{
 		return m_exchangeAutoDelete;
 	}
+	
+	/**
+	 * Sets the name of the queue in the broker. By default, the name is empty,
+	 * and the broker generates a name for a queue that is deleted when the
+	 * connection closes, so anything not yet received is lost with the connection.
+	 * With a name, the queue remains in the broker across reconnects and even
+	 * when the application exits, so the connector resumes with its backlog
+	 * intact. If the queue already exists, it is reused. Please note that the
+	 * connector only knows the bindings it has made itself. When it starts with
+	 * an existing queue, any bindings from earlier runs remain, even to topics
+	 * no longer listened to, and AMQP offers no way to list them. Delete the
+	 * queue or remove such bindings in the broker when the topics change. Only
+	 * one connector at a time should use a queue, and the queue must be deleted
+	 * in the broker once no longer needed.
+	 * @param name Queue name, or an empty string for a server-named queue.
+	 */
+	public void setQueueName(String name)
+	{
+		if (name == null)
+		{
+			throw new IllegalArgumentException("Queue name must not be null");
+		}
+		
+		m_queueName = name;
+	}
+	
+	/**
+	 * Gets the name of the queue in the broker.
+	 * @return Queue name, or an empty string for a server-named queue.
+	 */
+	String getQueueName()
+	{
+		return m_queueName;
+	}
+	
+	/**
+	 * Sets whether a named queue shall be durable (i.e., survive a broker
+	 * restart). Only applies if a queue name has been set and the queue does
+	 * not exist yet.
+	 * @param dur True if durable, otherwise false.
+	 */
+	public void setQueueDurable(boolean dur)
+	{
+		m_queueDurable = dur;
+	}
+	
+	/**
+	 * Gets whether a named queue shall be durable (i.e., survive a broker
+	 * restart).
+	 * @return True if durable, otherwise false.
+	 */
+	boolean getQueueDurable()
+	{
+		return m_queueDurable;
+	}
+	
+	/**
+	 * Sets whether messages are received with a push-based consumer. If enabled,
+	 * the broker delivers messages in the background to a local buffer, and
+	 * retrieving a message needs no round trip to the broker. If disabled,
+	 * each retrieval polls the broker. The default is "false".
+	 * @param push True to enable, otherwise false.
+	 */
+	public void setPushConsumer(boolean push)
+	{
+		m_pushConsumer = push;
+	}
+	
+	/**
+	 * Gets whether messages are received with a push-based consumer.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getPushConsumer()
+	{
+		return m_pushConsumer;
+	}
+	
+	/**
+	 * Sets the prefetch count for the push-based consumer, i.e., how many
+	 * messages the broker delivers in advance. This is also the size of the local
+	 * buffer. Only applies if the push-based consumer is enabled. The default is 100.
+	 * @param count Prefetch count. Must be at least 1.
+	 */
+	public void setPrefetchCount(int count)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("Prefetch count must be at least 1");
+		}
+		
+		m_prefetchCount = count;
+	}
+	
+	/**
+	 * Gets the prefetch count for the push-based consumer.
+	 * @return Prefetch count.
+	 */
+	int getPrefetchCount()
+	{
+		return m_prefetchCount;
+	}
+	
+	/**
+	 * Sets the memory budget of the local receive buffer of the push consumer
+	 * (see setPushConsumer()). If set, the buffer is bounded by the bytes of
+	 * the message bodies rather than by the prefetch count, and the broker
+	 * delivers without a prefetch limit. Once the budget is exceeded, further
+	 * bodies are spilled to memory-mapped temporary files and read back in the
+	 * order of arrival. Thus, nothing is dropped, and the broker is never
+	 * slowed down, but the disk must have room for any backlog. The default
+	 * is 0, which bounds the buffer by the prefetch count instead.
+	 * @param maxBytes Budget in bytes, or 0 to bound by the prefetch count. Must not be negative.
+	 */
+	public void setReceiveBufferMaxBytes(long maxBytes)
+	{
+		if (maxBytes < 0)
+		{
+			throw new IllegalArgumentException("Receive buffer budget must not be negative");
+		}
+		
+		m_receiveBufferMaxBytes = maxBytes;
+	}
+	
+	/**
+	 * Gets the memory budget of the local receive buffer.
+	 * @return Budget in bytes, or 0 if bounded by the prefetch count.
+	 */
+	long getReceiveBufferMaxBytes()
+	{
+		return m_receiveBufferMaxBytes;
+	}
+	
+	/**
+	 * Sets whether received messages are acknowledged manually. By default, a
+	 * message is removed from the queue as soon as it is received, so it is lost
+	 * if the application crashes while processing it. With manual acknowledgement,
+	 * the broker keeps the message until acknowledged with
+	 * AmqpTopicConnectorSync.ackUpTo(), and redelivers it if the connection is lost
+	 * before that. With the push-based consumer, the broker delivers at most as
+	 * many unacknowledged messages as the prefetch count. The default is "false".
+	 * @param manual True to enable, otherwise false.
+	 */
+	public void setManualAck(boolean manual)
+	{
+		m_manualAck = manual;
+	}
+	
+	/**
+	 * Gets whether received messages are acknowledged manually.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getManualAck()
+	{
+		return m_manualAck;
+	}
+	
+	/**
+	 * Sets how many messages an acknowledgement must cover before it is sent to
+	 * the broker. With a larger value, one acknowledgement covers many messages,
+	 * which saves broker work. Any pending acknowledgement is sent when closing
+	 * the connector or calling flushAcks(). Only applies with manual
+	 * acknowledgement. The default is 1, i.e., acknowledgements are sent immediately.
+	 * @param count Message count. Must be at least 1.
+	 */
+	public void setAckFlushCount(int count)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("Ack flush count must be at least 1");
+		}
+		
+		m_ackFlushCount = count;
+	}
+	
+	/**
+	 * Gets how many messages an acknowledgement must cover before it is sent.
+	 * @return Message count.
+	 */
+	int getAckFlushCount()
+	{
+		return m_ackFlushCount;
+	}
+	
+	/**
+	 * Sets how old a pending acknowledgement can become before it is sent to
+	 * the broker regardless of the flush count. The age is checked whenever the
+	 * connector is called to acknowledge or receive. Only applies with manual
+	 * acknowledgement. The default is 0, i.e., no time limit.
+	 * @param millis Interval in milliseconds, or 0 for no limit.
+	 */
+	public void setAckFlushIntervalMillis(long millis)
+	{
+		if (millis < 0)
+		{
+			throw new IllegalArgumentException("Ack flush interval must not be negative");
+		}
+		
+		m_ackFlushIntervalMillis = millis;
+	}
+	
+	/**
+	 * Gets how old a pending acknowledgement can become before it is sent.
+	 * @return Interval in milliseconds, or 0 for no limit.
+	 */
+	long getAckFlushIntervalMillis()
+	{
+		return m_ackFlushIntervalMillis;
+	}
+	
+	/**
+	 * Sets whether publisher confirms are used. If enabled, the broker confirms
+	 * each sent message asynchronously, and the connector tracks which messages
+	 * remain unconfirmed. The default is "false".
+	 * @param conf True to enable, otherwise false.
+	 */
+	public void setPublisherConfirms(boolean conf)
+	{
+		m_publisherConfirms = conf;
+	}
+	
+	/**
+	 * Gets whether publisher confirms are used.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getPublisherConfirms()
+	{
+		return m_publisherConfirms;
+	}
+	
+	/**
+	 * Sets the maximum count of unconfirmed messages. If reached, sending waits
+	 * until the broker has confirmed more. Only applies if publisher confirms
+	 * are enabled. The default is 1000.
+	 * @param count Maximum count. Must be at least 1.
+	 */
+	public void setMaxUnconfirmed(int count)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("Max unconfirmed count must be at least 1");
+		}
+		
+		m_maxUnconfirmed = count;
+	}
+	
+	/**
+	 * Gets the maximum count of unconfirmed messages.
+	 * @return Maximum count.
+	 */
+	int getMaxUnconfirmed()
+	{
+		return m_maxUnconfirmed;
+	}
+	
+	/**
+	 * Sets whether the connection is re-established in the background after a
+	 * connection loss. If enabled, a background thread re-creates the connection,
+	 * the exchange, the queue and the topic bindings with growing intervals
+	 * until it succeeds, and calls made meanwhile fail immediately instead of waiting.
+	 * If disabled, reconnecting happens when the connector is used next time.
+	 * The default is "false".
+	 * @param auto True to enable, otherwise false.
+	 */
+	public void setAutoReconnect(boolean auto)
+	{
+		m_autoReconnect = auto;
+	}
+	
+	/**
+	 * Gets whether the connection is re-established in the background.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getAutoReconnect()
+	{
+		return m_autoReconnect;
+	}
+	
+	/**
+	 * Sets the size limit of the outbound journal. If set, messages sent while
+	 * the broker is unreachable are appended to a journal in memory-mapped
+	 * temporary files instead of failing. Once reconnected, the journal is
+	 * published in order with publisher confirms, and any messages sent
+	 * meanwhile are appended after it. With autoReconnect, the connector
+	 * reconnects in the background; without it, the next send or receive
+	 * reconnects in the caller thread. Sending fails only if the journal is
+	 * full. Please note that a message is journaled only if the connector
+	 * knows the connection is lost; what was published just before that is
+	 * lost unless publisher confirms are used. When the connector is closed, a
+	 * batch being published is given time to be confirmed, but anything else
+	 * still journaled is lost. The default is 0, which disables the journal.
+	 * @param maxBytes The maximum total length of journaled messages, or 0 to disable. Must not be negative.
+	 */
+	public void setOutboundJournalMaxBytes(long maxBytes)
+	{
+		if (maxBytes < 0)
+		{
+			throw new IllegalArgumentException("Journal size limit must not be negative");
+		}
+		
+		m_journalMaxBytes = maxBytes;
+	}
+	
+	/**
+	 * Gets the size limit of the outbound journal.
+	 * @return The maximum total length of journaled messages, or 0 if disabled.
+	 */
+	long getOutboundJournalMaxBytes()
+	{
+		return m_journalMaxBytes;
+	}
+	
+	/**
+	 * Sets the rate at which the outbound journal is published after a reconnect.
+	 * Limiting the rate leaves room for the other traffic of the broker. The default
+	 * is 0, which publishes as fast as the broker confirms.
+	 * @param messagesPerSecond Rate, or 0 for no limit. Must not be negative.
+	 */
+	public void setJournalDrainRate(int messagesPerSecond)
+	{
+		if (messagesPerSecond < 0)
+		{
+			throw new IllegalArgumentException("Journal drain rate must not be negative");
+		}
+		
+		m_journalDrainRate = messagesPerSecond;
+	}
+	
+	/**
+	 * Gets the rate at which the outbound journal is published after a reconnect.
+	 * @return Messages per second, or 0 for no limit.
+	 */
+	int getJournalDrainRate()
+	{
+		return m_journalDrainRate;
+	}
+	
+	/**
+	 * Sets the count of channels used for publishing. Each thread that publishes
+	 * is assigned one of the channels. To let multiple threads publish
+	 * in parallel, use as many channels as there are threads. The default is 1.
+	 * @param count Channel count. Must be at least 1.
+	 */
+	public void setPublishChannelCount(int count)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("Publish channel count must be at least 1");
+		}
+		
+		m_publishChannelCount = count;
+	}
+	
+	/**
+	 * Gets the count of channels used for publishing.
+	 * @return Channel count.
+	 */
+	int getPublishChannelCount()
+	{
+		return m_publishChannelCount;
+	}
+	
+	/**
+	 * Sets whether the connection is shared with other connectors. If enabled, all
+	 * connectors with the same server URL (including the credentials) use a single
+	 * connection, which is closed when the last of them closes. This saves the
+	 * time and resources of opening multiple connections. The default is "false".
+	 * @param share True to enable, otherwise false.
+	 */
+	public void setShareConnection(boolean share)
+	{
+		m_shareConnection = share;
+	}
+	
+	/**
+	 * Gets whether the connection is shared with other connectors.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getShareConnection()
+	{
+		return m_shareConnection;
+	}
+	
+	/**
+	 * Sets whether the connector communicates within the JVM instead of through
+	 * the broker. If enabled, messages are routed in-process like in an AMQP topic
+	 * exchange, and only connectors with the same exchange name in the same JVM
+	 * will receive them. No broker is needed, and the other properties are ignored.
+	 * This is useful for simulations run on a single computer as well as for testing.
+	 * The default is "false".
+	 * @param loop True to enable, otherwise false.
+	 */
+	public void setLoopback(boolean loop)
+	{
+		m_loopback = loop;
+	}
+	
+	/**
+	 * Gets whether the connector communicates within the JVM.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getLoopback()
+	{
+		return m_loopback;
+	}
+	
+	/**
+	 * Sets whether sent messages carry tracing headers: the send time in
+	 * microseconds, a sequence number and the ID of the sending connector.
+	 * The receiver uses the headers to measure the end-to-end latency
+	 * regardless of this setting. The default is "false".
+	 * @param trace True to enable, otherwise false.
+	 */
+	public void setTraceHeaders(boolean trace)
+	{
+		m_traceHeaders = trace;
+	}
+	
+	/**
+	 * Gets whether sent messages carry tracing headers.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getTraceHeaders()
+	{
+		return m_traceHeaders;
+	}
+	
+	/**
+	 * Sets whether the bodies of received messages are held in pooled buffers.
+	 * Then, the user calls ReceivedMessage.release() once done with a message,
+	 * and the buffer is reused for later messages. This reduces garbage
+	 * collection when messages are received at a high rate or held in the
+	 * local per-topic queues. Access the body with ReceivedMessage.getBodyBuffer(),
+	 * because getBody() returns a copy. The default is "false".
+	 * @param pooled True to enable, otherwise false.
+	 */
+	public void setPooledBuffers(boolean pooled)
+	{
+		m_pooledBuffers = pooled;
+	}
+	
+	/**
+	 * Gets whether the bodies of received messages are held in pooled buffers.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getPooledBuffers()
+	{
+		return m_pooledBuffers;
+	}
+	
+	/**
+	 * Sets the capacity of each local per-topic queue. These queues hold received
+	 * messages once a topic-specific method of the connector, such as
+	 * getMessage(String), has been called. If a queue is full, its oldest message
+	 * is dropped. If some topics are conflated (see setConflatedTopics()), all
+	 * received messages pass through these queues. The default is 1000.
+	 * @param capacity Capacity in messages. Must be at least 1.
+	 */
+	public void setTopicQueueCapacity(int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Topic queue capacity must be at least 1");
+		}
+		
+		m_topicQueueCapacity = capacity;
+	}
+	
+	/**
+	 * Gets the capacity of each local per-topic queue.
+	 * @return Capacity in messages.
+	 */
+	int getTopicQueueCapacity()
+	{
+		return m_topicQueueCapacity;
+	}
+	
+	/**
+	 * Sets the topics that are conflated, i.e., for which only the latest value
+	 * matters. For each routing key that matches one of these patterns, the
+	 * connector keeps only the most recent message, and any older message not yet
+	 * retrieved is dropped. The patterns can have wildcards like those listened to.
+	 * Messages of other routing keys are never dropped because of conflation,
+	 * and they are still returned in the order of arrival. To find the latest
+	 * values, the connector moves received messages to local per-topic queues.
+	 * While messages of other routing keys wait there, nothing more is moved,
+	 * so each retrieval returns at most as many messages as the capacity of a
+	 * per-topic queue (see setTopicQueueCapacity()). By default, nothing is
+	 * conflated.
+	 * @param patterns Topic patterns.
+	 */
+	public void setConflatedTopics(String[] patterns)
+	{
+		m_conflatedTopics = patterns.clone();
+	}
+	
+	/**
+	 * Gets the topics that are conflated.
+	 * @return Topic patterns.
+	 */
+	String[] getConflatedTopics()
+	{
+		return m_conflatedTopics.clone();
+	}
+	
+	/**
+	 * Sets the compression of sent messages. The compressed messages have the
+	 * content encoding "deflate", and every connector decompresses such messages
+	 * automatically, whatever its own setting. Therefore, the receivers must
+	 * use a version of the connector that supports compression. The default
+	 * is "none".
+	 * @param codec compressionNone, compressionDeflate or compressionFast.
+	 */
+	public void setCompression(String codec)
+	{
+		if (!compressionNone.equals(codec) && !compressionDeflate.equals(codec) && !compressionFast.equals(codec))
+		{
+			throw new IllegalArgumentException("Unknown compression: " + codec);
+		}
+		
+		m_compression = codec;
+	}
+	
+	/**
+	 * Gets the compression of sent messages.
+	 * @return Compression.
+	 */
+	String getCompression()
+	{
+		return m_compression;
+	}
+	
+	/**
+	 * Sets the minimum size of a message to compress. Small messages hardly
+	 * compress, so compressing them would only cost CPU. A message is also sent
+	 * uncompressed if compressing does not make it smaller. The default is 1024.
+	 * @param bytes Threshold in bytes. Must not be negative.
+	 */
+	public void setCompressionThreshold(int bytes)
+	{
+		if (bytes < 0)
+		{
+			throw new IllegalArgumentException("Compression threshold must not be negative");
+		}
+		
+		m_compressionThreshold = bytes;
+	}
+	
+	/**
+	 * Gets the minimum size of a message to compress.
+	 * @return Threshold in bytes.
+	 */
+	int getCompressionThreshold()
+	{
+		return m_compressionThreshold;
+	}
+	
+	/**
+	 * Sets the topics whose messages are compressed if compression is enabled.
+	 * The patterns can have wildcards like those listened to. By default, every
+	 * topic is compressed.
+	 * @param patterns Topic patterns, or an empty array for every topic.
+	 */
+	public void setCompressedTopics(String[] patterns)
+	{
+		m_compressedTopics = patterns.clone();
+	}
+	
+	/**
+	 * Gets the topics whose messages are compressed.
+	 * @return Topic patterns, or an empty array for every topic.
+	 */
+	String[] getCompressedTopics()
+	{
+		return m_compressedTopics.clone();
+	}
+	
+	/**
+	 * Sets the maximum size of a received message after decompression. A small
+	 * compressed message can expand to a huge one, so that a corrupt or
+	 * malicious message could exhaust the memory. A received message that
+	 * would exceed the limit is dropped, and the connector throws
+	 * CommunicationException unless it has other messages to return. The
+	 * default is 64 MiB.
+	 * @param bytes Limit in bytes. Must be at least 1.
+	 */
+	public void setMaxDecompressedBytes(int bytes)
+	{
+		if (bytes < 1)
+		{
+			throw new IllegalArgumentException("Decompressed size limit must be at least 1");
+		}
+		
+		m_maxDecompressedBytes = bytes;
+	}
+	
+	/**
+	 * Gets the maximum size of a received message after decompression.
+	 * @return Limit in bytes.
+	 */
+	int getMaxDecompressedBytes()
+	{
+		return m_maxDecompressedBytes;
+	}
 }
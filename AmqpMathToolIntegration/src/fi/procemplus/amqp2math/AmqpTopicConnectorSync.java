@@ -8,54 +8,75 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2math;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeoutException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.GetResponse;
-import com.rabbitmq.client.ShutdownListener;
-import com.rabbitmq.client.ShutdownSignalException;
 
 /**
- * A synchronous AMQP connector class.
+ * A synchronous AMQP connector class. The class is thread-safe.
+ * By default, the connector communicates through an AMQP broker. For
+ * communication within a single JVM, it can use an in-process exchange instead
+ * (see AmqpPropsManager.setLoopback()).
  * @author Petri Kannisto
  */
 public class AmqpTopicConnectorSync
 {
-	// The topics being listened to.
-	private final AmqpPropsManager m_amqpProperties;
-	private final List<String> m_topics;
+	// Constants
+	// The properties of sent messages. Use a TTL of 15 minutes for the messages.
+	// The object is immutable, so it can be reused for every message.
+	private static final int messageTtlMilliseconds = 15 * 60 * 1000; // 15 minutes
+	private static final BasicProperties sendProperties = new BasicProperties().builder()
+			.expiration(Integer.toString(messageTtlMilliseconds))
+			.build();
+	private static final BasicProperties sendPropertiesFloat64 = createSendProperties(NumericPayloadCodec.contentTypeFloat64);
+	private static final BasicProperties sendPropertiesFloat32 = createSendProperties(NumericPayloadCodec.contentTypeFloat32);
+	private static final BasicProperties sendPropertiesInt64 = createSendProperties(NumericPayloadCodec.contentTypeInt64);
+	private static final BasicProperties sendPropertiesInt32 = createSendProperties(NumericPayloadCodec.contentTypeInt32);
 	
-	private boolean m_objectAlreadyClosed = false;
+	// When moving messages to the per-topic queues, at most this many are moved at once
+	private static final int storeFillBatchSize = 1000;
 	
-	// The name of the currently active queue if any
-	private String m_queueName = null;
+	// With conflation, batches are moved until the backlog is through but at most this many
+	private static final int conflationFillMaxBatches = 100;
 	
-	// Connection-related variables. These are synchronized with m_connLock.
-	private Connection m_connection = null;
-	private Channel m_channel = null;
+	// The transport that communicates with the other participants
+	private final MessageTransport m_transport;
 	
-	// This synchronizes all connection-related variables, so that
-	// these cannot be assigned to or read when locked.
-	private final Object m_connLock = new Object();
+	private final ConnectorMetrics m_metrics = new ConnectorMetrics();
 	
-	// Whether the object assumes the connection is currently OK.
-	// This requires synchronization, because the shutdown callback uses this.
-	private boolean m_connSupposedlyConnected = false;
+	// The pool for the bodies of received messages. Null if not pooled.
+	private final BufferPool m_bufferPool;
+	
+	// The local per-topic queues. Filling is serialized with the lock, so that the
+	// messages are stored in the order of arrival.
+	private final LocalMessageStore m_store;
+	private final Object m_storeFillLock = new Object();
+	
+	// Compresses sent messages. Null if not enabled.
+	private final PayloadCompressor m_compressor;
+	private final int m_maxDecompressedBytes;
+	
+	// Tracing. The sequence number is that of the previously sent message.
+	private final boolean m_traceHeaders;
+	private final String m_senderId = UUID.randomUUID().toString();
+	private final AtomicLong m_sequenceNumber = new AtomicLong(0);
+	
+	// Records retrieved messages for replay. Null if not recording.
+	private volatile TrafficRecorder m_recorder = null;
+	private final Object m_recorderLock = new Object();
+	
+	private volatile boolean m_objectAlreadyClosed = false;
 	
 	
 	
@@ -77,8 +98,36 @@ public class AmqpTopicConnectorSync
 	 */
 	public AmqpTopicConnectorSync(AmqpPropsManager amqpProps, List<String> topics)
 	{
-		m_amqpProperties = amqpProps;
-		m_topics = topics;
+		m_traceHeaders = amqpProps.getTraceHeaders();
+		m_bufferPool = amqpProps.getPooledBuffers() ? new BufferPool(m_metrics) : null;
+		m_store = new LocalMessageStore(amqpProps.getTopicQueueCapacity(), amqpProps.getConflatedTopics(), m_metrics);
+		m_compressor = createCompressor(amqpProps, m_metrics);
+		m_maxDecompressedBytes = amqpProps.getMaxDecompressedBytes();
+		
+		if (amqpProps.getLoopback())
+		{
+			m_transport = new LoopbackTransport(amqpProps, topics);
+		}
+		else
+		{
+			m_transport = new AmqpTransport(amqpProps, topics, m_metrics);
+		}
+	}
+	
+	/**
+	 * Constructor for a connector with a transport of its own, such as a replay.
+	 * The connection-related properties are ignored.
+	 * @param amqpProps Properties.
+	 * @param transport Transport.
+	 */
+	AmqpTopicConnectorSync(AmqpPropsManager amqpProps, MessageTransport transport)
+	{
+		m_traceHeaders = amqpProps.getTraceHeaders();
+		m_bufferPool = amqpProps.getPooledBuffers() ? new BufferPool(m_metrics) : null;
+		m_store = new LocalMessageStore(amqpProps.getTopicQueueCapacity(), amqpProps.getConflatedTopics(), m_metrics);
+		m_compressor = createCompressor(amqpProps, m_metrics);
+		m_maxDecompressedBytes = amqpProps.getMaxDecompressedBytes();
+		m_transport = transport;
 	}
 	
 	/**
@@ -88,246 +137,846 @@ public class AmqpTopicConnectorSync
 	public void openConnectionIfNotOpen() throws CommunicationException
 	{
 		expectNotClosed();
+		m_transport.open(); // throws CommunicationException
+	}
+	
+	/**
+	 * Closes the object. After this, the object can no longer be used.
+	 */
+	public void close()
+	{
+		m_objectAlreadyClosed = true;
+		m_transport.close();
 		
-		// Already connected?
-		synchronized (m_connLock)
+		try
+		{
+			stopRecording();
+		}
+		catch (IOException e)
 		{
-			if (m_connSupposedlyConnected) return;
+			// No can do!
 		}
+	}
+	
+	/**
+	 * Starts recording every message that the connector returns, i.e., the routing
+	 * key, the content type, the body and the arrival time. The recording can be
+	 * replayed with ReplayTopicConnector. The log consists of the given file and an
+	 * index file with the extension ".idx" appended. Any existing log with the same
+	 * name is overwritten. If recording already, the previous log is closed first.
+	 * @param path The path of the log.
+	 * @throws IOException Thrown if the files cannot be created.
+	 */
+	public void startRecording(String path) throws IOException
+	{
+		expectNotClosed();
 		
-		cleanConnectionRelatedObjects();
-		setUpConnection(); // throws CommunicationException
-		setUpQueue(); // throws CommunicationException
+		synchronized (m_recorderLock)
+		{
+			stopRecording(); // throws IOException
+			m_recorder = new TrafficRecorder(path); // throws IOException
+		}
 	}
 	
 	/**
-	 * Closes the object. After this, the object can no longer be used.
+	 * Stops recording and closes the log. Does nothing if not recording.
+	 * @throws IOException Thrown if writing the log has failed at any time during
+	 * the recording. Then, the log only contains the messages before the failure.
 	 */
-	public void close()
+	public void stopRecording() throws IOException
 	{
-		m_objectAlreadyClosed = true;
-		cleanConnectionRelatedObjects();
+		synchronized (m_recorderLock)
+		{
+			TrafficRecorder recorder = m_recorder;
+			m_recorder = null;
+			
+			if (recorder != null)
+			{
+				recorder.close(); // throws IOException
+			}
+		}
+	}
+	
+	/**
+	 * Starts listening to a topic in addition to the current ones. If the connection
+	 * is open, the topic is bound to the existing queue, so that nothing already
+	 * received is lost. The topic is also bound again whenever the connector
+	 * reconnects. Subscribing to a topic already listened to does nothing.
+	 * @param topic Topic pattern. Wildcards are allowed like in the constructor.
+	 * @throws CommunicationException Thrown if binding fails. The topic remains
+	 * subscribed and will be bound when the connector reconnects.
+	 */
+	public void subscribe(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		m_transport.subscribe(topic); // throws CommunicationException
+	}
+	
+	/**
+	 * Stops listening to a topic. The topic must be given exactly as when subscribed.
+	 * Messages that have already been received from the topic can still be retrieved.
+	 * Unsubscribing from a topic not listened to does nothing.
+	 * @param topic Topic pattern.
+	 * @throws CommunicationException Thrown if unbinding fails. The topic is no
+	 * longer subscribed and will not be bound when the connector reconnects.
+	 */
+	public void unsubscribe(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		m_transport.unsubscribe(topic); // throws CommunicationException
+	}
+	
+	/**
+	 * Gets the topics currently listened to.
+	 * @return Topic patterns.
+	 */
+	public String[] getTopics()
+	{
+		return m_transport.getTopics();
 	}
 	
 	/**
 	 * Gets a message received from one of the topics. If the connection is not open, there is
-	 * an attempt to open it.
+	 * an attempt to open it. Any messages already in the local per-topic queues
+	 * (see getMessage(String)) are returned first in the order of arrival.
+	 * If some topics are conflated (see AmqpPropsManager), only the latest
+	 * message of each of their routing keys is returned.
 	 * @return Message, or null if nothing has been received from the topics.
 	 * @throws CommunicationException Thrown if communication with the broker fails.
 	 */
 	public ReceivedMessage getMessage() throws CommunicationException
 	{
 		expectNotClosed();
-		openConnectionIfNotOpen();
 		
-		boolean autoAck = true;
+		if (m_store.hasConflatedTopics())
+		{
+			fillStoreForConflation(); // throws CommunicationException
+			return recordReceived(m_store.pollOldest());
+		}
+		
+		ReceivedMessage stored = pollStore();
+		
+		if (stored != null)
+		{
+			return stored;
+		}
+		
+		try
+		{
+			return recordReceived(m_transport.receive()); // throws CommunicationException
+		}
+		catch (CommunicationException e)
+		{
+			m_metrics.recordReceiveFailure();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Gets up to the given count of messages received from the topics. This is
+	 * faster than calling getMessage() repeatedly, because the retrieval stops
+	 * as soon as the broker reports that the queue has become empty. If the
+	 * connection is not open, there is an attempt to open it.
+	 * @param maxCount Maximum count of messages to get.
+	 * @return Messages in the order of reception. If nothing has been received
+	 * from the topics, the batch is empty.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public ReceivedMessageBatch getMessages(int maxCount) throws CommunicationException
+	{
+		if (maxCount < 1)
+		{
+			throw new IllegalArgumentException("Max count must be at least 1");
+		}
+		
+		expectNotClosed();
+		
+		ArrayList<ReceivedMessage> messages = new ArrayList<>(Math.min(maxCount, 64));
+		receiveAvailable(messages, maxCount); // throws CommunicationException
+		return recordReceived(messages, 0);
+	}
+	
+	/**
+	 * Gets a message received from one of the topics. If nothing has been received,
+	 * waits until a message arrives or the timeout expires. If the connection
+	 * is not open, there is an attempt to open it.
+	 * With the push-based consumer (see AmqpPropsManager) or the loopback, the caller
+	 * sleeps until a message is delivered. Otherwise, the broker is polled at short intervals.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return Message, or null if nothing was received before the timeout.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public ReceivedMessage getMessage(long timeoutMillis) throws CommunicationException
+	{
+		expectNotClosed();
+		
+		if (m_store.hasConflatedTopics())
+		{
+			fillStoreForConflation(); // throws CommunicationException
+		}
+		
+		ReceivedMessage stored = pollStore();
+		
+		if (stored != null)
+		{
+			return stored;
+		}
 		
 		try
 		{
-			GetResponse getResponse = m_channel.basicGet(m_queueName, autoAck);
+			return recordReceived(m_transport.receive(timeoutMillis)); // throws CommunicationException
+		}
+		catch (CommunicationException e)
+		{
+			m_metrics.recordReceiveFailure();
+			throw e;
+		}
+		catch (InterruptedException e)
+		{
+			// Return nothing but let the caller know about the interruption
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	/**
+	 * Gets up to the given count of messages received from the topics. If nothing
+	 * has been received, waits until a message arrives or the timeout expires.
+	 * Once there is at least one message, returns without further waiting.
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param maxCount Maximum count of messages to get.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return Messages in the order of reception. If nothing was received before
+	 * the timeout, the batch is empty.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public ReceivedMessageBatch getMessages(int maxCount, long timeoutMillis) throws CommunicationException
+	{
+		if (maxCount < 1)
+		{
+			throw new IllegalArgumentException("Max count must be at least 1");
+		}
+		
+		expectNotClosed();
+		
+		ArrayList<ReceivedMessage> messages = new ArrayList<>(Math.min(maxCount, 64));
+		ReceivedMessage first = getMessage(timeoutMillis); // throws CommunicationException
+		
+		if (first != null)
+		{
+			messages.add(first);
 			
-			if (getResponse == null)
+			if (maxCount > 1)
 			{
-				return null;
+				receiveAvailable(messages, maxCount); // throws CommunicationException
 			}
-			else
+		}
+		
+		// The first message was recorded already
+		return recordReceived(messages, 1);
+	}
+	
+	/**
+	 * Gets a message received with the given routing key. Because a topic pattern
+	 * with wildcards can match multiple routing keys, each routing key has a local
+	 * queue of its own. Any messages received since the previous call are first moved
+	 * to these queues, after which the retrieval takes constant time regardless of
+	 * the count of topics. If a queue becomes full, its oldest message is dropped
+	 * (see AmqpPropsManager.setTopicQueueCapacity()). Therefore, if you use this method,
+	 * retrieve the messages of every topic regularly. If the connection is not open,
+	 * there is an attempt to open it.
+	 * @param topic Routing key, i.e., the topic the message was sent to.
+	 * @return Message, or null if nothing has been received with the routing key.
+	 * @throws CommunicationException Thrown if communication with the broker fails and
+	 * no message of the routing key has been received before.
+	 */
+	public ReceivedMessage getMessage(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		
+		try
+		{
+			fillStore(m_store.hasConflatedTopics() ? conflationFillMaxBatches : 1, storeFillBatchSize, false); // throws CommunicationException
+		}
+		catch (CommunicationException e)
+		{
+			// Messages already received remain available while disconnected
+			ReceivedMessage stored = m_store.poll(topic);
+			
+			if (stored == null)
 			{
-				return new ReceivedMessage(getResponse.getEnvelope().getRoutingKey(), getResponse.getBody());
+				throw e;
 			}
+			
+			return recordReceived(stored);
 		}
-		catch (ShutdownSignalException | IOException e)
+		
+		return recordReceived(m_store.poll(topic));
+	}
+	
+	/**
+	 * Gets the count of messages received with the given routing key but not yet
+	 * retrieved. Works like getMessage(String) but does not retrieve anything.
+	 * @param topic Routing key, i.e., the topic the messages were sent to.
+	 * @return Count.
+	 * @throws CommunicationException Thrown if communication with the broker fails and
+	 * no message of the routing key has been received before.
+	 */
+	public int getMessageCount(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		
+		try
+		{
+			fillStore(m_store.hasConflatedTopics() ? conflationFillMaxBatches : 1, storeFillBatchSize, false); // throws CommunicationException
+		}
+		catch (CommunicationException e)
 		{
-			throw new CommunicationException("Failed to get message from queue: " + e.getMessage(), e);
+			int count = m_store.getCount(topic);
+			
+			if (count == 0)
+			{
+				throw e;
+			}
+			
+			return count;
 		}
+		
+		return m_store.getCount(topic);
 	}
 	
 	/**
 	 * Sends a message to given topic. If the connection is not open, there is
-	 * an attempt to open it.
+	 * an attempt to open it. If the outbound journal is enabled (see
+	 * AmqpPropsManager), the message is journaled instead while the broker
+	 * is unreachable.
 	 * @param topic Topic.
 	 * @param msg Message.
 	 * @throws CommunicationException Thrown if communication with the broker fails.
 	 */
 	public void sendMessage(String topic, byte[] msg) throws CommunicationException
 	{
+		send(topic, sendProperties, msg); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends an array of doubles to given topic. The values are encoded as 64-bit
+	 * little-endian floating point numbers, and the content type of the message
+	 * indicates this. To decode, use ReceivedMessage.getBodyAsDoubles().
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public void sendDoubles(String topic, double[] values) throws CommunicationException
+	{
+		send(topic, sendPropertiesFloat64, NumericPayloadCodec.encode(values)); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends an array of floats to given topic. The values are encoded as 32-bit
+	 * little-endian floating point numbers, and the content type of the message
+	 * indicates this. To decode, use ReceivedMessage.getBodyAsFloats().
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public void sendFloats(String topic, float[] values) throws CommunicationException
+	{
+		send(topic, sendPropertiesFloat32, NumericPayloadCodec.encode(values)); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends an array of longs to given topic. The values are encoded as 64-bit
+	 * little-endian integers, and the content type of the message indicates this.
+	 * To decode, use ReceivedMessage.getBodyAsLongs().
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public void sendLongs(String topic, long[] values) throws CommunicationException
+	{
+		send(topic, sendPropertiesInt64, NumericPayloadCodec.encode(values)); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends an array of ints to given topic. The values are encoded as 32-bit
+	 * little-endian integers, and the content type of the message indicates this.
+	 * To decode, use ReceivedMessage.getBodyAsInts().
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @throws CommunicationException Thrown if communication with the broker fails.
+	 */
+	public void sendInts(String topic, int[] values) throws CommunicationException
+	{
+		send(topic, sendPropertiesInt32, NumericPayloadCodec.encode(values)); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends multiple messages. This is faster than calling sendMessage() repeatedly,
+	 * because the messages are written to the connection back to back.
+	 * The messages are sent in the order of the arrays. If sending fails, the remaining
+	 * messages are not sent, so that their order is not changed by a retry.
+	 * If the connection is not open, there is an attempt to open it.
+	 * @param topics Topics. The same index refers to the same message in both arrays.
+	 * @param msgs Messages.
+	 * @return For each message, true if it was sent, otherwise false.
+	 * @throws CommunicationException Thrown if the connection cannot be opened.
+	 */
+	public boolean[] sendMessages(String[] topics, byte[][] msgs) throws CommunicationException
+	{
+		if (topics.length != msgs.length)
+		{
+			throw new IllegalArgumentException("The count of topics and messages must be equal");
+		}
+		
 		expectNotClosed();
-		openConnectionIfNotOpen();
 		
-		// Sending.
-		// Use a TTL of 15 minutes for the messages.
-		int ttlMilliseconds = 15 * 60 * 1000; // 15 minutes
-		BasicProperties props = new BasicProperties().builder()
-				.expiration(Integer.toString(ttlMilliseconds))
-				.build();
+		boolean[] sent = new boolean[msgs.length];
+		BasicProperties[] props = new BasicProperties[msgs.length];
+		
+		byte[][] bodies = new byte[msgs.length][];
+		
+		for (int i = 0; i < msgs.length; ++i)
+		{
+			bodies[i] = compress(topics[i], msgs[i]);
+			props[i] = addTraceHeaders(bodies[i] == msgs[i] ? sendProperties : withEncoding(sendProperties));
+		}
 		
 		try
 		{
-			// TODO: This will not fail immediately after losing the connection.
-			// It is unclear what happens to messages sent before the connection is
-			// declared lost. :/
-			m_channel.basicPublish(m_amqpProperties.getExchange(), topic, props, msg);
+			m_transport.publishAll(topics, props, bodies, sent); // throws CommunicationException
 		}
-		catch (ShutdownSignalException | IOException e)
+		finally
 		{
-			throw new CommunicationException("Failed to send message: " + e.getMessage(), e);
+			for (int i = 0; i < msgs.length; ++i)
+			{
+				if (!sent[i])
+				{
+					m_metrics.recordSendFailure();
+					break;
+				}
+				
+				m_metrics.recordSent(topics[i], msgs[i].length, -1);
+			}
 		}
+		
+		return sent;
 	}
 	
-	private void setUpConnection() throws CommunicationException
+	/**
+	 * Acknowledges all received messages up to the given delivery tag, i.e., the
+	 * message with the tag and every message received before it from the broker.
+	 * The broker then removes these from the queue. Only applies if manual
+	 * acknowledgement is enabled (see AmqpPropsManager); otherwise, this does
+	 * nothing. Depending on the flush settings, the acknowledgement may be sent
+	 * later together with others. Please note that this also covers any messages
+	 * that have been received but not yet retrieved from the local per-topic queues.
+	 * If the connection has been lost after receiving the message, this does
+	 * nothing, because the broker will redeliver the message.
+	 * @param deliveryTag Delivery tag (see ReceivedMessage.getDeliveryTag()).
+	 * @throws CommunicationException Thrown if sending the acknowledgement fails.
+	 * Then, the broker will redeliver the messages.
+	 */
+	public void ackUpTo(long deliveryTag) throws CommunicationException
+	{
+		expectNotClosed();
+		m_transport.ackUpTo(deliveryTag); // throws CommunicationException
+	}
+	
+	/**
+	 * Sends any pending acknowledgement to the broker immediately. Closing the
+	 * connector does this as well.
+	 * @throws CommunicationException Thrown if sending the acknowledgement fails.
+	 */
+	public void flushAcks() throws CommunicationException
+	{
+		expectNotClosed();
+		m_transport.flushAcks(); // throws CommunicationException
+	}
+	
+	/**
+	 * Waits until the broker has confirmed all sent messages or the timeout expires.
+	 * Only applies if publisher confirms are enabled (see AmqpPropsManager).
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return True if no sent message remains unconfirmed, otherwise false.
+	 * Any messages that the broker rejected or that were lost with the connection
+	 * are not counted as unconfirmed; see getFailedConfirmCount().
+	 */
+	public boolean awaitConfirms(long timeoutMillis)
 	{
-		ConnectionFactory factory = new ConnectionFactory();
+		expectNotClosed();
 		
 		try
 		{
-			if (m_amqpProperties.getSecure())
-			{
-				// Due to calling this function, no certificate verification will be performed
-				factory.useSslProtocol();
-			}
-	        
-			factory.setUri(m_amqpProperties.getUrl());
+			return m_transport.awaitConfirms(timeoutMillis);
 		}
-		catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException e)
+		catch (InterruptedException e)
 		{
-			throw new CommunicationException("Connection setup failed: " + e.getMessage(), e);
+			Thread.currentThread().interrupt();
+			return false;
 		}
+	}
+	
+	/**
+	 * Gets the count of sent messages not yet confirmed by the broker.
+	 * Only applies if publisher confirms are enabled (see AmqpPropsManager).
+	 * @return Unconfirmed count.
+	 */
+	public int getUnconfirmedCount()
+	{
+		return m_transport.getUnconfirmedCount();
+	}
+	
+	/**
+	 * Gets the total count of sent messages that the broker rejected or that were
+	 * lost with the connection before a confirm. Only applies if publisher confirms
+	 * are enabled (see AmqpPropsManager).
+	 * @return Failed count.
+	 */
+	public long getFailedConfirmCount()
+	{
+		return m_transport.getFailedConfirmCount();
+	}
+	
+	/**
+	 * Gets the count of sent messages held in the outbound journal, waiting for
+	 * the broker to become reachable. Only applies if the journal is enabled
+	 * (see AmqpPropsManager). Before closing the connector, wait until this is 0,
+	 * or the journaled messages are lost.
+	 * @return Count.
+	 */
+	public int getJournaledCount()
+	{
+		return m_transport.getJournaledCount();
+	}
+	
+	/**
+	 * Gets the statistics of the connector: counts of sent and received messages
+	 * and bytes, both in total and per topic, latency histograms, and counts of
+	 * empty polls, failures and reconnects. The statistics are collected all the
+	 * time with a low overhead.
+	 * @return A snapshot of the statistics. It does not change afterwards.
+	 */
+	public ConnectorStatistics getStatistics()
+	{
+		return m_metrics.snapshot();
+	}
+	
+	/**
+	 * Gets the ID of this connector. If tracing headers are enabled (see
+	 * AmqpPropsManager), the ID is included in each sent message, and the
+	 * receivers report their statistics per sender with this ID.
+	 * @return Sender ID. This is unique for each connector object.
+	 */
+	public String getSenderId()
+	{
+		return m_senderId;
+	}
+	
+	private static BasicProperties createSendProperties(String contentType)
+	{
+		return sendProperties.builder()
+				.contentType(contentType)
+				.build();
+	}
+	
+	private void send(String topic, BasicProperties props, byte[] msg) throws CommunicationException
+	{
+		expectNotClosed();
 		
-		// Cleaning old connection-related objects if these exist
-		cleanConnectionRelatedObjects();
+		long startNanos = System.nanoTime();
 		
 		try
 		{
-			// Opening a connection
-			m_connection = factory.newConnection();
-			m_channel = m_connection.createChannel();
-			
-			// Adding shutdown listeners
-			ShutdownListener shutdownListener = new ShutdownListener()
-			{				
-				@Override
-				public void shutdownCompleted(ShutdownSignalException arg0)
-				{
-					// Connection lost!
-					synchronized (m_connLock)
-					{
-						m_connSupposedlyConnected = false; // TODO: Re-connect immediately
-					}
-				}
-			};
-			m_connection.addShutdownListener(shutdownListener);
-			m_channel.addShutdownListener(shutdownListener);
-			
-			// Declaring the desired exchange
-			m_channel.exchangeDeclare(m_amqpProperties.getExchange(), "topic",
-			m_amqpProperties.getExchangeDurable(), m_amqpProperties.getExchangeAutoDelete(), null);
-			
-			synchronized (m_connLock)
-			{
-				m_connSupposedlyConnected = true;
-			}
+			byte[] body = compress(topic, msg);
+			BasicProperties sendProps = body == msg ? props : withEncoding(props);
+			m_transport.publish(topic, addTraceHeaders(sendProps), body); // throws CommunicationException
 		}
-		catch (TimeoutException | IOException e)
+		catch (CommunicationException e)
 		{
-			handleConnectError(e); // throws CommunicationException
+			m_metrics.recordSendFailure();
+			throw e;
 		}
+		
+		m_metrics.recordSent(topic, msg.length, System.nanoTime() - startNanos);
 	}
 	
-	private void setUpQueue() throws CommunicationException
+	private static PayloadCompressor createCompressor(AmqpPropsManager amqpProps, ConnectorMetrics metrics)
 	{
-		// TODO: If a queue already exists in the server, re-use it
+		int level;
 		
-		// Creating a queue
-		String explicitName = ""; // Empty value; the name will be generated
-        boolean durable = false; // The queue does not survive a broker restart
-        boolean exclusive = true; // Exclusive to this app, delete on exit
-        boolean autoDelete = true; // Delete the queue if no consumer uses it
+		switch (amqpProps.getCompression())
+		{
+		case AmqpPropsManager.compressionDeflate:
+			level = Deflater.DEFAULT_COMPRESSION;
+			break;
+		case AmqpPropsManager.compressionFast:
+			level = Deflater.BEST_SPEED;
+			break;
+		default:
+			return null;
+		}
 		
-        try
-        {
-	        String queueName = m_channel.queueDeclare(explicitName, durable, exclusive, autoDelete, null).getQueue();
-			
-			// Binding the queue to topics
-			for (String t : m_topics)
-			{
-				m_channel.queueBind(queueName, m_amqpProperties.getExchange(), t);
-			}
-			
-			m_queueName = queueName;
-        }
-        catch (IOException e)
-        {
-			throw new CommunicationException("Failed to set up message queue: " + e.getMessage(), e);
+		return new PayloadCompressor(level, amqpProps.getCompressionThreshold(), amqpProps.getCompressedTopics(), metrics);
+	}
+	
+	private byte[] compress(String topic, byte[] msg)
+	{
+		if (m_compressor == null)
+		{
+			return msg;
 		}
+		
+		byte[] compressed = m_compressor.compress(topic, msg);
+		return compressed == null ? msg : compressed;
 	}
 	
-	private void expectNotClosed() throws RuntimeException
+	private static BasicProperties withEncoding(BasicProperties props)
 	{
-		if (m_objectAlreadyClosed)
+		return props.builder()
+				.contentEncoding(PayloadCompressor.encodingDeflate)
+				.build();
+	}
+	
+	private ReceivedMessage decompress(ReceivedMessage msg) throws CommunicationException
+	{
+		// Every connector decompresses, whether it compresses or not
+		if (msg == null || !PayloadCompressor.encodingDeflate.equals(msg.getContentEncoding()))
 		{
-			throw new RuntimeException("Cannot use connector because the user has closed it");
+			return msg;
+		}
+		
+		try
+		{
+			// throws DataFormatException, CommunicationException
+			return msg.withDecodedBody(PayloadCompressor.decompress(msg.getBody(), m_maxDecompressedBytes, m_metrics));
+		}
+		catch (DataFormatException e)
+		{
+			// Leaving the message as is, so the content encoding remains visible to the user
+			return msg;
 		}
 	}
 	
-	private void handleConnectError(Exception e) throws CommunicationException
+	private BasicProperties addTraceHeaders(BasicProperties props)
 	{
-		String msgStart = "Failed to create AmqpConnector";
-		String errMsg = String.format("%s: %s: %s", msgStart, e.getClass().getSimpleName(), e.getMessage());
-		printError(errMsg);
+		if (!m_traceHeaders)
+		{
+			return props;
+		}
 		
-		if (e.getCause() != null)
+		return TraceHeaders.stamp(props, m_senderId, m_sequenceNumber.incrementAndGet(), HighResolutionClock.currentTimeMicros());
+	}
+	
+	private ReceivedMessage pollStore() throws CommunicationException
+	{
+		// Checking without locking first, because the store is usually empty
+		if (m_store.isEmpty())
 		{
-			Throwable cause = e.getCause();
-			printError("-- Error cause: " + cause.getMessage());
+			return null;
 		}
 		
-		throw new CommunicationException(msgStart, e);
+		ReceivedMessage stored = m_store.pollOldest();
+		return stored == null ? null : recordReceived(stored);
 	}
 	
-	private void printError(String msg)
+	private void receiveAvailable(List<ReceivedMessage> messages, int maxCount) throws CommunicationException
 	{
-		String fullMsg = getMessageForPrint("ERR", msg);
-		System.err.println(fullMsg);
+		boolean conflating = m_store.hasConflatedTopics();
+		
+		if (conflating)
+		{
+			fillStoreForConflation(); // throws CommunicationException
+		}
+		
+		if (!m_store.isEmpty())
+		{
+			m_store.drainOldest(messages, maxCount);
+		}
+		
+		// With conflation, everything must pass through the store
+		if (messages.size() >= maxCount || conflating)
+		{
+			return;
+		}
+		
+		try
+		{
+			m_transport.receiveInto(messages, maxCount); // throws CommunicationException
+		}
+		catch (CommunicationException e)
+		{
+			m_metrics.recordReceiveFailure();
+			
+			// Returning what was already in the store
+			if (messages.isEmpty())
+			{
+				throw e;
+			}
+		}
 	}
 	
-	private String getMessageForPrint(String tag, String msg)
+	private void fillStoreForConflation() throws CommunicationException
 	{
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
-		String timeString = LocalTime.now().format(formatter);
-		return String.format("%s [AmqpTopicConnectorSync] (%s) %s", timeString, tag, msg);
+		try
+		{
+			// Messages of other routing keys are capped too. None of them is dropped,
+			// because filling stops once any are stored, and a batch cannot fill a queue.
+			int batchSize = Math.min(storeFillBatchSize, m_store.getCapacityPerTopic());
+			fillStore(conflationFillMaxBatches, batchSize, true); // throws CommunicationException
+		}
+		catch (CommunicationException e)
+		{
+			// Messages already received remain available while disconnected
+			if (m_store.isEmpty())
+			{
+				throw e;
+			}
+		}
 	}
 	
-	private void cleanConnectionRelatedObjects()
+	private void fillStore(int maxBatches, int batchSize, boolean untilUnconflated) throws CommunicationException
 	{
-		// Cleaning up AMQP resources
+		ArrayList<ReceivedMessage> received = new ArrayList<>();
 		
-		try
+		synchronized (m_storeFillLock)
 		{
-			// Cleaning up AMQP resources
-			if (m_channel != null)
+			for (int i = 0; i < maxBatches; ++i)
 			{
-				m_channel.close();
+				if (untilUnconflated && m_store.hasUnconflatedMessages())
+				{
+					break;
+				}
+				
+				received.clear();
+				
+				try
+				{
+					m_transport.receiveInto(received, batchSize); // throws CommunicationException
+				}
+				catch (CommunicationException e)
+				{
+					m_metrics.recordReceiveFailure();
+					throw e;
+				}
+				
+				CommunicationException failure = null;
+				
+				for (ReceivedMessage msg : received)
+				{
+					try
+					{
+						m_store.add(toPooled(decompress(msg))); // throws CommunicationException
+					}
+					catch (CommunicationException e)
+					{
+						// The message is dropped, but the others are stored
+						m_metrics.recordReceiveFailure();
+						failure = e;
+					}
+				}
+				
+				if (failure != null)
+				{
+					throw failure;
+				}
+				
+				// Anything left would have filled the batch
+				if (received.size() < batchSize)
+				{
+					break;
+				}
 			}
 		}
-		catch (ShutdownSignalException | IOException | TimeoutException e)
+	}
+	
+	private ReceivedMessage recordReceived(ReceivedMessage received) throws CommunicationException
+	{
+		ReceivedMessage msg = decompress(received); // throws CommunicationException
+		
+		if (msg == null)
+		{
+			m_metrics.recordEmptyPoll();
+		}
+		else
 		{
-			// No can do!
+			m_metrics.recordReceived(msg);
+			recordToLog(msg);
 		}
 		
-		m_channel = null;
+		return toPooled(msg);
+	}
+	
+	private ReceivedMessageBatch recordReceived(List<ReceivedMessage> messages, int alreadyRecordedCount) throws CommunicationException
+	{
+		if (messages.isEmpty())
+		{
+			m_metrics.recordEmptyPoll();
+		}
 		
-		try
+		CommunicationException failure = null;
+		int i = alreadyRecordedCount;
+		
+		while (i < messages.size())
 		{
-			// Cleaning up AMQP resources
-			if (m_connection != null)
+			try
+			{
+				messages.set(i, decompress(messages.get(i))); // throws CommunicationException
+			}
+			catch (CommunicationException e)
 			{
-				m_connection.close();
+				// The message is dropped, but the others are returned
+				m_metrics.recordReceiveFailure();
+				messages.remove(i).release();
+				failure = e;
+				continue;
 			}
+			
+			m_metrics.recordReceived(messages.get(i));
+			recordToLog(messages.get(i));
+			++i;
 		}
-		catch (ShutdownSignalException | IOException e)
+		
+		if (failure != null && messages.isEmpty())
 		{
-			// No can do!
+			throw failure;
+		}
+		
+		ReceivedMessageBatch batch = new ReceivedMessageBatch(messages);
+		
+		// The batch has copies of the bodies, so any pooled buffers can be reused
+		for (ReceivedMessage msg : messages)
+		{
+			msg.release();
 		}
 		
-		m_connection = null;
+		return batch;
+	}
+	
+	private void recordToLog(ReceivedMessage msg)
+	{
+		TrafficRecorder recorder = m_recorder;
+		
+		if (recorder != null)
+		{
+			recorder.write(msg);
+		}
+	}
+	
+	private ReceivedMessage toPooled(ReceivedMessage msg)
+	{
+		return m_bufferPool == null || msg == null ? msg : msg.toPooled(m_bufferPool);
+	}
+	
+	private void expectNotClosed() throws RuntimeException
+	{
+		if (m_objectAlreadyClosed)
+		{
+			throw new RuntimeException("Cannot use connector because the user has closed it");
+		}
 	}
 }
@@ -0,0 +1,1422 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Transports messages through an AMQP broker. Receiving uses a dedicated
+ * channel, whereas publishing uses a pool of channels, so that threads
+ * publishing in parallel do not have to wait for each other.
+ * @author Petri Kannisto
+ */
+class AmqpTransport implements MessageTransport
+{
+	// Constants
+	// When pulling messages with a timeout, the pause between polls
+	// grows from the minimum to the maximum.
+	private static final long pollPauseMinMillis = 1;
+	private static final long pollPauseMaxMillis = 50;
+	
+	// When reconnecting in the background, the delay between attempts
+	// grows from the minimum to the maximum. The first attempt is immediate.
+	private static final long reconnectDelayMinMillis = 500;
+	private static final long reconnectDelayMaxMillis = 30 * 1000;
+	
+	// The outbound journal is published in batches, and each batch must be
+	// confirmed within the timeout, or it is published again later
+	private static final int journalDrainBatchSize = 100;
+	private static final long journalConfirmTimeoutMillis = 10 * 1000;
+	
+	private final AmqpPropsManager m_amqpProperties;
+	
+	// The topics being listened to. This is thread-safe to iterate. Binding
+	// changes are synchronized with m_setupLock, so that a (re)connect binds
+	// exactly the current topics.
+	private final CopyOnWriteArraySet<String> m_topics;
+	
+	private volatile boolean m_objectAlreadyClosed = false;
+	
+	// The name of the currently active queue if any
+	private volatile String m_queueName = null;
+	
+	// The topics known to be bound to the queue in the broker. A named queue keeps
+	// its bindings across reconnects, so only the changes are bound. Synchronized
+	// with m_setupLock.
+	private final HashSet<String> m_boundTopics = new HashSet<>();
+	
+	// A generated queue on a shared connection. The broker deletes it only
+	// when the connection closes, so this object must delete it. Synchronized
+	// with m_setupLock.
+	private String m_generatedSharedQueue = null;
+	
+	// Connection-related variables. These are assigned with m_connLock.
+	// These are volatile, so that these can be read without locking.
+	private volatile Connection m_connection = null;
+	private boolean m_connectionShared = false;
+	private ShutdownListener m_connShutdownListener = null;
+	private volatile Channel m_consumeChannel = null;
+	private volatile PublishChannel[] m_publishChannels = null;
+	
+	// This synchronizes all connection-related variables, so that
+	// these cannot be assigned to when locked.
+	private final Object m_connLock = new Object();
+	
+	// Whether the object assumes the connection is currently OK.
+	// This is assigned with m_connLock, because the shutdown callback uses this.
+	private volatile boolean m_connSupposedlyConnected = false;
+	
+	// This makes sure only one thread at a time sets up the connection.
+	// Never lock m_connLock first and then this, or a deadlock will follow.
+	private final Object m_setupLock = new Object();
+	
+	// The thread for background reconnects. Synchronized with m_connLock.
+	// Null if the background reconnect is not enabled or not yet needed.
+	private ScheduledExecutorService m_reconnectExecutor = null;
+	private boolean m_reconnectPending = false;
+	
+	// Whether the connection has been open at least once. Synchronized with m_connLock.
+	private boolean m_hasConnected = false;
+	
+	// When the connection was lost (System.nanoTime()). Synchronized with m_connLock.
+	private long m_connLostNanos = 0;
+	
+	private final ConnectorMetrics m_metrics;
+	
+	// The local buffer for the push-based consumer. Null if messages are pulled instead.
+	private final LocalReceiveBuffer m_localBuffer;
+	
+	// Batches manual acknowledgements. Null if messages are acknowledged on receipt.
+	// The generation identifies the current consume channel in delivery tags.
+	private final AckBatcher m_ackBatcher;
+	private volatile int m_ackGeneration = 0;
+	
+	// The count of sent messages that were nacked or lost before a publisher confirm
+	private final AtomicLong m_failedConfirmCount = new AtomicLong(0);
+	
+	// Holds outbound messages while the broker is unreachable. Null if not enabled.
+	private final OutboundJournal m_journal;
+	
+	// The thread that publishes the journal after a reconnect. Synchronized with m_connLock.
+	// Null if the journal is not enabled or not yet needed.
+	private ScheduledExecutorService m_drainExecutor = null;
+	private boolean m_drainPending = false;
+	
+	
+	
+	/**
+	 * Constructor.
+	 * @param amqpProps Connection properties.
+	 * @param topics Topics to listen to.
+	 * @param metrics Metrics to record the broker round trips and reconnects to.
+	 */
+	AmqpTransport(AmqpPropsManager amqpProps, List<String> topics, ConnectorMetrics metrics)
+	{
+		m_amqpProperties = amqpProps;
+		m_topics = new CopyOnWriteArraySet<>(topics);
+		m_metrics = metrics;
+		m_ackBatcher = amqpProps.getManualAck() ?
+				new AckBatcher(amqpProps.getAckFlushCount(), amqpProps.getAckFlushIntervalMillis()) : null;
+		m_localBuffer = amqpProps.getPushConsumer() ?
+				new LocalReceiveBuffer(amqpProps.getPrefetchCount(), amqpProps.getReceiveBufferMaxBytes(),
+						m_ackBatcher == null, metrics) : null;
+		m_journal = amqpProps.getOutboundJournalMaxBytes() > 0 ?
+				new OutboundJournal(amqpProps.getOutboundJournalMaxBytes()) : null;
+	}
+	
+	@Override
+	public void open() throws CommunicationException
+	{
+		expectNotClosed();
+		
+		// Already connected?
+		synchronized (m_connLock)
+		{
+			if (m_connSupposedlyConnected) return;
+		}
+		
+		synchronized (m_setupLock)
+		{
+			// Another thread may have connected while this one was waiting
+			synchronized (m_connLock)
+			{
+				if (m_connSupposedlyConnected) return;
+			}
+			
+			expectNotClosed();
+			
+			cleanConnectionRelatedObjects();
+			setUpConnection(); // throws CommunicationException
+			setUpQueue(); // throws CommunicationException
+			
+			// Only now is everything ready for use
+			synchronized (m_connLock)
+			{
+				if (m_hasConnected)
+				{
+					m_metrics.recordReconnect(System.nanoTime() - m_connLostNanos);
+				}
+				
+				m_connSupposedlyConnected = true;
+				m_hasConnected = true;
+				
+				if (m_journal != null && m_journal.isActive())
+				{
+					scheduleDrain(0);
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void close()
+	{
+		m_objectAlreadyClosed = true;
+		
+		try
+		{
+			// Otherwise, the broker would redeliver what the user has already acknowledged
+			flushAcks();
+		}
+		catch (CommunicationException e)
+		{
+			// No can do!
+		}
+		
+		ScheduledExecutorService drainExecutor;
+		
+		synchronized (m_connLock)
+		{
+			if (m_reconnectExecutor != null)
+			{
+				m_reconnectExecutor.shutdownNow();
+				m_reconnectExecutor = null;
+			}
+			
+			drainExecutor = m_drainExecutor;
+			m_drainExecutor = null;
+		}
+		
+		if (drainExecutor != null)
+		{
+			// A batch being published is given the time to be confirmed,
+			// so that it is not lost. Nothing else is published after closing.
+			drainExecutor.shutdown();
+			
+			try
+			{
+				if (!drainExecutor.awaitTermination(journalConfirmTimeoutMillis, TimeUnit.MILLISECONDS))
+				{
+					drainExecutor.shutdownNow();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				drainExecutor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		synchronized (m_setupLock)
+		{
+			cleanConnectionRelatedObjects();
+		}
+		
+		if (m_localBuffer != null)
+		{
+			// The broker requeues whatever was not acknowledged
+			m_localBuffer.close();
+		}
+		
+		if (m_journal != null)
+		{
+			m_journal.close();
+		}
+	}
+	
+	@Override
+	public void subscribe(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		
+		synchronized (m_setupLock)
+		{
+			if (m_topics.add(topic))
+			{
+				changeBinding(topic, true); // throws CommunicationException
+			}
+		}
+	}
+	
+	@Override
+	public void unsubscribe(String topic) throws CommunicationException
+	{
+		expectNotClosed();
+		
+		synchronized (m_setupLock)
+		{
+			if (m_topics.remove(topic))
+			{
+				changeBinding(topic, false); // throws CommunicationException
+			}
+		}
+	}
+	
+	@Override
+	public String[] getTopics()
+	{
+		return m_topics.toArray(new String[0]);
+	}
+	
+	private void changeBinding(String topic, boolean bind) throws CommunicationException
+	{
+		// Expecting the caller to hold m_setupLock, so that the queue is not being set up
+		
+		// If not connected, the next connect will bind the current topics
+		if (!m_connSupposedlyConnected)
+		{
+			return;
+		}
+		
+		try
+		{
+			Channel channel = m_consumeChannel;
+			
+			if (channel == null)
+			{
+				throw new IOException("Not connected");
+			}
+			
+			if (bind)
+			{
+				channel.queueBind(m_queueName, m_amqpProperties.getExchange(), topic);
+				m_boundTopics.add(topic);
+			}
+			else
+			{
+				channel.queueUnbind(m_queueName, m_amqpProperties.getExchange(), topic);
+				m_boundTopics.remove(topic);
+			}
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			throw new CommunicationException(String.format("Failed to %s topic \"%s\": %s",
+					bind ? "bind" : "unbind", topic, e.getMessage()), e);
+		}
+	}
+	
+	@Override
+	public ReceivedMessage receive() throws CommunicationException
+	{
+		flushAcksIfDue();
+		
+		if (m_localBuffer != null)
+		{
+			// Messages already in the local buffer are available even if the connection has been lost
+			ReceivedMessage msg = m_localBuffer.poll();
+			
+			if (msg == null)
+			{
+				ensureConnected();
+			}
+			
+			return msg;
+		}
+		
+		ensureConnected();
+		
+		GetResponse getResponse = getFromQueue(); // throws CommunicationException
+		return getResponse == null ? null : createReceivedMessage(getResponse);
+	}
+	
+	@Override
+	public ReceivedMessage receive(long timeoutMillis) throws CommunicationException, InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		// Is a message already available?
+		ReceivedMessage msg = receive(); // throws CommunicationException
+		
+		if (msg != null || timeoutMillis <= 0)
+		{
+			return msg;
+		}
+		
+		if (m_localBuffer != null)
+		{
+			// The connection was opened in receive() if needed. That time counts
+			// towards the timeout.
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			return m_localBuffer.poll(Math.max(remainingMillis, 0));
+		}
+		
+		// Pulling. Polling more often right after the call keeps the latency low
+		// if the message arrives soon.
+		long pauseMillis = pollPauseMinMillis;
+		
+		while (true)
+		{
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			
+			if (remainingMillis <= 0)
+			{
+				return null;
+			}
+			
+			Thread.sleep(Math.min(pauseMillis, remainingMillis));
+			pauseMillis = Math.min(pauseMillis * 2, pollPauseMaxMillis);
+			
+			msg = receive(); // throws CommunicationException
+			
+			if (msg != null)
+			{
+				return msg;
+			}
+		}
+	}
+	
+	@Override
+	public void publish(String topic, BasicProperties props, byte[] msg) throws CommunicationException
+	{
+		// While the journal is active, messages must follow the journaled ones
+		if (m_journal != null && m_journal.isActive())
+		{
+			reconnectUnlessInBackground();
+			journal(topic, props, msg); // throws CommunicationException
+			return;
+		}
+		
+		try
+		{
+			ensureConnected(); // throws CommunicationException
+			
+			// This will not fail immediately after losing the connection.
+			// To know which messages the broker has received, enable publisher confirms.
+			getPublishChannel().publish(m_amqpProperties.getExchange(), topic, props, msg);
+		}
+		catch (CommunicationException e)
+		{
+			if (m_journal == null)
+			{
+				throw e;
+			}
+			
+			journal(topic, props, msg); // throws CommunicationException
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			if (m_journal == null)
+			{
+				throw new CommunicationException("Failed to send message: " + e.getMessage(), e);
+			}
+			
+			journal(topic, props, msg); // throws CommunicationException
+		}
+	}
+	
+	@Override
+	public void publishAll(String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent) throws CommunicationException
+	{
+		if (m_journal == null)
+		{
+			ensureConnected(); // throws CommunicationException
+		}
+		else if (m_journal.isActive())
+		{
+			reconnectUnlessInBackground();
+			journalAll(topics, props, msgs, sent, 0);
+			return;
+		}
+		else if (!tryEnsureConnected())
+		{
+			journalAll(topics, props, msgs, sent, 0);
+			return;
+		}
+		
+		try
+		{
+			getPublishChannel().publishAll(m_amqpProperties.getExchange(), topics, props, msgs, sent);
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			printError("Failed to send message: " + e.getMessage());
+		}
+		
+		if (m_journal != null)
+		{
+			// Journaling whatever was not published
+			for (int i = 0; i < sent.length; ++i)
+			{
+				if (!sent[i])
+				{
+					journalAll(topics, props, msgs, sent, i);
+					break;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public int getJournaledCount()
+	{
+		return m_journal == null ? 0 : m_journal.getCount();
+	}
+	
+	@Override
+	public boolean awaitConfirms(long timeoutMillis) throws InterruptedException
+	{
+		PublishChannel[] publishChannels = m_publishChannels;
+		
+		if (publishChannels == null)
+		{
+			return true;
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		for (PublishChannel pc : publishChannels)
+		{
+			PublishConfirmTracker confirmTracker = pc.getConfirmTracker();
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			
+			if (confirmTracker != null && !confirmTracker.awaitConfirms(remainingMillis))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public int getUnconfirmedCount()
+	{
+		PublishChannel[] publishChannels = m_publishChannels;
+		int count = 0;
+		
+		if (publishChannels != null)
+		{
+			for (PublishChannel pc : publishChannels)
+			{
+				PublishConfirmTracker confirmTracker = pc.getConfirmTracker();
+				count += confirmTracker == null ? 0 : confirmTracker.getUnconfirmedCount();
+			}
+		}
+		
+		return count;
+	}
+	
+	@Override
+	public long getFailedConfirmCount()
+	{
+		return m_failedConfirmCount.get();
+	}
+	
+	private PublishChannel getPublishChannel() throws CommunicationException
+	{
+		PublishChannel[] publishChannels = m_publishChannels;
+		
+		if (publishChannels == null)
+		{
+			throw new CommunicationException("Not connected", null);
+		}
+		
+		// Each thread always uses the same channel. This keeps the messages of
+		// each thread in order, and the threads can mostly publish in parallel.
+		int index = (int)(Thread.currentThread().getId() % publishChannels.length);
+		return publishChannels[index];
+	}
+	
+	private void setUpConnection() throws CommunicationException
+	{
+		ConnectionFactory factory = new ConnectionFactory();
+		
+		// The connector recovers by itself. The recovery of the client library
+		// would run in parallel and re-create the connection a second time.
+		factory.setAutomaticRecoveryEnabled(false);
+		
+		try
+		{
+			if (m_amqpProperties.getSecure())
+			{
+				// Due to calling this function, no certificate verification will be performed
+				factory.useSslProtocol();
+			}
+			
+			factory.setUri(m_amqpProperties.getUrl());
+		}
+		catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException e)
+		{
+			throw new CommunicationException("Connection setup failed: " + e.getMessage(), e);
+		}
+		
+		// Cleaning old connection-related objects if these exist
+		cleanConnectionRelatedObjects();
+		
+		try
+		{
+			// Opening a connection or using the shared one
+			boolean shared = m_amqpProperties.getShareConnection();
+			final Connection connection = shared ?
+					SharedConnectionRegistry.acquire(m_amqpProperties.getUrl(), factory) : factory.newConnection();
+			ShutdownListener connShutdownListener = createShutdownListener(connection, null);
+			
+			synchronized (m_connLock)
+			{
+				m_connection = connection;
+				m_connectionShared = shared;
+				m_connShutdownListener = connShutdownListener;
+			}
+			
+			// Adding a shutdown listener for the connection
+			connection.addShutdownListener(connShutdownListener);
+			
+			// Creating the channel for receiving
+			Channel consumeChannel = connection.createChannel();
+			consumeChannel.addShutdownListener(createShutdownListener(connection, null));
+			
+			synchronized (m_connLock)
+			{
+				m_consumeChannel = consumeChannel;
+			}
+			
+			// Creating the channels for publishing
+			PublishChannel[] publishChannels = new PublishChannel[m_amqpProperties.getPublishChannelCount()];
+			
+			for (int i = 0; i < publishChannels.length; ++i)
+			{
+				Channel channel = connection.createChannel();
+				
+				// Enabling publisher confirms if requested
+				PublishConfirmTracker confirmTracker = null;
+				
+				if (m_amqpProperties.getPublisherConfirms())
+				{
+					confirmTracker = new PublishConfirmTracker(m_amqpProperties.getMaxUnconfirmed(), m_failedConfirmCount);
+					channel.confirmSelect();
+					channel.addConfirmListener(confirmTracker);
+				}
+				
+				channel.addShutdownListener(createShutdownListener(connection, confirmTracker));
+				publishChannels[i] = new PublishChannel(channel, confirmTracker);
+			}
+			
+			synchronized (m_connLock)
+			{
+				m_publishChannels = publishChannels;
+			}
+			
+			// Declaring the desired exchange
+			consumeChannel.exchangeDeclare(m_amqpProperties.getExchange(), "topic",
+			m_amqpProperties.getExchangeDurable(), m_amqpProperties.getExchangeAutoDelete(), null);
+		}
+		catch (TimeoutException | IOException e)
+		{
+			handleConnectError(e); // throws CommunicationException
+		}
+	}
+	
+	private ShutdownListener createShutdownListener(final Connection connection, final PublishConfirmTracker confirmTracker)
+	{
+		return new ShutdownListener()
+		{				
+			@Override
+			public void shutdownCompleted(ShutdownSignalException cause)
+			{
+				// Unconfirmed messages are lost with the channel
+				if (confirmTracker != null)
+				{
+					confirmTracker.channelClosed();
+				}
+				
+				// Connection lost! Losing any channel is handled the same way.
+				synchronized (m_connLock)
+				{
+					// The signal may come from a connection already replaced
+					if (m_connection != connection)
+					{
+						return;
+					}
+					
+					if (m_connSupposedlyConnected)
+					{
+						m_connLostNanos = System.nanoTime();
+					}
+					
+					m_connSupposedlyConnected = false;
+					
+					// Re-connect immediately unless the user closed the connection
+					if (m_amqpProperties.getAutoReconnect() && !cause.isInitiatedByApplication())
+					{
+						scheduleReconnect(0);
+					}
+				}
+			}
+		};
+	}
+	
+	private void setUpQueue() throws CommunicationException
+	{
+		// Expecting the caller to hold m_setupLock
+		
+		String explicitName = m_amqpProperties.getQueueName(); // If empty, the name will be generated
+
+        try
+        {
+	        Channel channel = m_consumeChannel;
+	        String queueName = explicitName;
+	
+	        if (explicitName.isEmpty())
+	        {
+	        	// If the previous queue could not be deleted, it may still exist
+	        	deleteGeneratedSharedQueue(m_connection);
+	        	
+	        	// Creating a queue
+	        	boolean durable = false; // The queue does not survive a broker restart
+	        	boolean exclusive = true; // Exclusive to this app, delete on exit
+	        	boolean autoDelete = true; // Delete the queue if no consumer uses it
+	        	queueName = channel.queueDeclare(explicitName, durable, exclusive, autoDelete, null).getQueue();
+	        	m_boundTopics.clear();
+	        	
+	        	synchronized (m_connLock)
+	        	{
+	        		m_generatedSharedQueue = m_connectionShared ? queueName : null;
+	        	}
+	        }
+	        else if (!queueExists(explicitName)) // throws IOException
+	        {
+	        	// Creating a named queue. It outlives the connection, so that messages
+	        	// arriving while disconnected remain there.
+	        	boolean durable = m_amqpProperties.getQueueDurable();
+	        	boolean exclusive = false;
+	        	boolean autoDelete = false;
+	        	channel.queueDeclare(explicitName, durable, exclusive, autoDelete, null);
+	        	m_boundTopics.clear();
+	        }
+	        // Otherwise, reusing the queue. If this object bound it earlier, the bindings remain.
+	        // Bindings from earlier runs are unknown to this object, so these remain too.
+			
+			bindTopics(channel, queueName); // throws IOException
+			m_queueName = queueName;
+			
+			if (m_ackBatcher != null)
+			{
+				// Any pending acknowledgements were lost with the previous channel
+				m_ackGeneration = m_ackBatcher.setChannel(channel);
+			}
+			
+			if (m_localBuffer != null)
+			{
+				// A named queue outlives the channel, so the broker delivers the
+				// unacknowledged messages again. Otherwise, the leftovers are unique.
+				int bufferGeneration = m_localBuffer.startGeneration(!explicitName.isEmpty());
+				startConsumer(channel, queueName, m_ackGeneration, bufferGeneration);
+			}
+        }
+        catch (IOException e)
+        {
+			throw new CommunicationException("Failed to set up message queue: " + e.getMessage(), e);
+		}
+	}
+	
+	private boolean queueExists(String queueName) throws IOException
+	{
+		Connection connection = m_connection;
+		
+		if (connection == null)
+		{
+			throw new IOException("Not connected");
+		}
+		
+		// If the queue does not exist, the broker closes the channel. Therefore,
+		// checking with a temporary channel.
+		Channel channel = connection.createChannel();
+		
+		try
+		{
+			channel.queueDeclarePassive(queueName);
+			return true;
+		}
+		catch (IOException e)
+		{
+			// Any problem with the connection itself will show up in the next call
+			return false;
+		}
+		finally
+		{
+			closeChannel(channel);
+		}
+	}
+	
+	private void bindTopics(Channel channel, String queueName) throws IOException
+	{
+		// Expecting the caller to hold m_setupLock
+		
+		long startNanos = System.nanoTime();
+		
+		// Topics unsubscribed while disconnected. Unbinding is rare, so it is not pipelined.
+		ArrayList<String> unbound = new ArrayList<>();
+		
+		for (String t : m_boundTopics)
+		{
+			if (!m_topics.contains(t))
+			{
+				channel.queueUnbind(queueName, m_amqpProperties.getExchange(), t);
+				unbound.add(t);
+			}
+		}
+		
+		m_boundTopics.removeAll(unbound);
+		
+		// Binding the queue to topics. The binds are pipelined without waiting for
+		// each reply, which would take a network round trip per topic.
+		ArrayList<String> bound = new ArrayList<>();
+		
+		for (String t : m_topics)
+		{
+			if (!m_boundTopics.contains(t))
+			{
+				channel.queueBindNoWait(queueName, m_amqpProperties.getExchange(), t, null);
+				bound.add(t);
+			}
+		}
+		
+		if (!bound.isEmpty())
+		{
+			// The broker processes the methods of a channel in order. Therefore, once this
+			// replies, every bind has succeeded. If any failed, the broker has closed the
+			// channel and this throws.
+			channel.queueDeclarePassive(queueName);
+			m_boundTopics.addAll(bound);
+		}
+		
+		m_metrics.recordBind(System.nanoTime() - startNanos);
+	}
+	
+	@Override
+	public void receiveInto(List<ReceivedMessage> messages, int maxCount) throws CommunicationException
+	{
+		flushAcksIfDue();
+		
+		if (m_localBuffer != null)
+		{
+			m_localBuffer.drainTo(messages, maxCount);
+			
+			if (messages.isEmpty())
+			{
+				ensureConnected();
+			}
+			
+			return;
+		}
+		
+		ensureConnected();
+		
+		while (messages.size() < maxCount)
+		{
+			GetResponse getResponse = getFromQueue(); // throws CommunicationException
+			
+			if (getResponse == null)
+			{
+				break;
+			}
+			
+			messages.add(createReceivedMessage(getResponse));
+			
+			// The response tells how many messages remain in the queue.
+			// If none, do not waste a round trip just to get an empty response.
+			if (getResponse.getMessageCount() < 1)
+			{
+				break;
+			}
+		}
+	}
+	
+	private GetResponse getFromQueue() throws CommunicationException
+	{
+		boolean autoAck = m_ackBatcher == null;
+		
+		try
+		{
+			Channel channel = m_consumeChannel;
+			
+			if (channel == null)
+			{
+				throw new IOException("Not connected");
+			}
+			
+			long startNanos = System.nanoTime();
+			GetResponse response = channel.basicGet(m_queueName, autoAck);
+			m_metrics.recordGet(System.nanoTime() - startNanos);
+			return response;
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			throw new CommunicationException("Failed to get message from queue: " + e.getMessage(), e);
+		}
+	}
+	
+	private ReceivedMessage createReceivedMessage(GetResponse getResponse)
+	{
+		if (m_ackBatcher != null)
+		{
+			long deliveryTag = AckBatcher.toUserTag(m_ackGeneration, getResponse.getEnvelope().getDeliveryTag());
+			return new ReceivedMessage(getResponse.getEnvelope().getRoutingKey(), getResponse.getProps(),
+					getResponse.getBody(), System.currentTimeMillis(), deliveryTag);
+		}
+		
+		return new ReceivedMessage(getResponse.getEnvelope().getRoutingKey(), getResponse.getProps(),
+				getResponse.getBody(), System.currentTimeMillis());
+	}
+	
+	@Override
+	public void ackUpTo(long deliveryTag) throws CommunicationException
+	{
+		if (m_ackBatcher == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			m_ackBatcher.ackUpTo(deliveryTag);
+		}
+		catch (IOException e)
+		{
+			throw new CommunicationException("Failed to acknowledge: " + e.getMessage(), e);
+		}
+	}
+	
+	@Override
+	public void flushAcks() throws CommunicationException
+	{
+		if (m_ackBatcher == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			m_ackBatcher.flush();
+		}
+		catch (IOException e)
+		{
+			throw new CommunicationException("Failed to acknowledge: " + e.getMessage(), e);
+		}
+	}
+	
+	private void flushAcksIfDue()
+	{
+		if (m_ackBatcher == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			m_ackBatcher.flushIfDue();
+		}
+		catch (IOException e)
+		{
+			// The channel has closed, so receiving will fail as well
+		}
+	}
+	
+	private void startConsumer(Channel channel, String queueName, final int ackGeneration, final int bufferGeneration) throws IOException
+	{
+		// The broker delivers at most this many messages without acknowledgement.
+		// This bounds the local buffer, which never makes delivering wait.
+		// If the buffer is bounded by bytes, it spills instead, so there is no limit.
+		boolean boundedByBytes = m_amqpProperties.getReceiveBufferMaxBytes() > 0;
+		channel.basicQos(boundedByBytes ? 0 : m_amqpProperties.getPrefetchCount());
+		
+		boolean autoAck = false; // The local buffer or the user acknowledges
+		
+		channel.basicConsume(queueName, autoAck, new DefaultConsumer(channel)
+		{
+			@Override
+			public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body)
+			{
+				// This runs in the consumer thread of the AMQP client
+				long now = System.currentTimeMillis();
+				
+				if (m_ackBatcher != null)
+				{
+					long deliveryTag = AckBatcher.toUserTag(ackGeneration, envelope.getDeliveryTag());
+					m_localBuffer.put(new ReceivedMessage(envelope.getRoutingKey(), properties, body, now, deliveryTag), bufferGeneration);
+				}
+				else
+				{
+					m_localBuffer.put(new ReceivedMessage(envelope.getRoutingKey(), properties, body, now,
+							envelope.getDeliveryTag(), getChannel()), bufferGeneration);
+				}
+			}
+		});
+	}
+	
+	private void journal(String topic, BasicProperties props, byte[] msg) throws CommunicationException
+	{
+		try
+		{
+			if (!m_journal.append(topic, props, msg)) // throws IOException
+			{
+				throw new CommunicationException("Failed to send message: the outbound journal is full", null);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CommunicationException("Failed to journal message: " + e.getMessage(), e);
+		}
+		
+		m_metrics.recordJournaled();
+		
+		synchronized (m_connLock)
+		{
+			// Once reconnected, the journal is drained. Without background
+			// reconnects, the next send or receive reconnects in the caller thread.
+			if (m_connSupposedlyConnected)
+			{
+				scheduleDrain(0);
+			}
+			else if (m_amqpProperties.getAutoReconnect())
+			{
+				scheduleReconnect(0);
+			}
+		}
+	}
+	
+	private void reconnectUnlessInBackground()
+	{
+		// While the journal is active, sending does not otherwise try to connect.
+		// Once connected, the journal is drained in the background.
+		if (!m_amqpProperties.getAutoReconnect())
+		{
+			tryEnsureConnected();
+		}
+	}
+	
+	private void journalAll(String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent, int start)
+	{
+		for (int i = start; i < msgs.length; ++i)
+		{
+			try
+			{
+				journal(topics[i], props[i], msgs[i]); // throws CommunicationException
+				sent[i] = true;
+			}
+			catch (CommunicationException e)
+			{
+				printError(e.getMessage());
+				break;
+			}
+		}
+	}
+	
+	private boolean tryEnsureConnected()
+	{
+		try
+		{
+			ensureConnected(); // throws CommunicationException
+			return true;
+		}
+		catch (CommunicationException e)
+		{
+			return false;
+		}
+	}
+	
+	private void scheduleDrain(long delayMillis)
+	{
+		// Expecting the caller to hold m_connLock
+		
+		if (m_objectAlreadyClosed || m_drainPending)
+		{
+			return;
+		}
+		
+		if (m_drainExecutor == null)
+		{
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					// A daemon thread does not prevent the JVM from exiting
+					Thread thread = new Thread(r, "AmqpTopicConnectorSync-journal");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			
+			// Closing cancels a drain that has not started yet
+			executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+			m_drainExecutor = executor;
+		}
+		
+		m_drainPending = true;
+		
+		m_drainExecutor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				drainJournal();
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private void drainJournal()
+	{
+		synchronized (m_connLock)
+		{
+			m_drainPending = false;
+		}
+		
+		Connection connection = m_connection;
+		
+		if (connection == null)
+		{
+			// Draining starts again once reconnected
+			return;
+		}
+		
+		int drainRate = m_amqpProperties.getJournalDrainRate();
+		int batchSize = drainRate > 0 ? Math.min(drainRate, journalDrainBatchSize) : journalDrainBatchSize;
+		long startNanos = System.nanoTime();
+		long drainedCount = 0;
+		Channel channel = null;
+		
+		try
+		{
+			// A channel of its own, so that confirms can be awaited without
+			// affecting the publish channels
+			channel = connection.createChannel(); // throws IOException
+			channel.confirmSelect(); // throws IOException
+			
+			while (!m_objectAlreadyClosed)
+			{
+				long batchStartNanos = System.nanoTime();
+				List<OutboundJournal.Entry> batch = m_journal.take(batchSize);
+				
+				if (batch.isEmpty())
+				{
+					// The journal has been deactivated
+					break;
+				}
+				
+				try
+				{
+					for (OutboundJournal.Entry entry : batch)
+					{
+						channel.basicPublish(m_amqpProperties.getExchange(), entry.getTopic(), entry.getProperties(), entry.getBody());
+					}
+					
+					channel.waitForConfirmsOrDie(journalConfirmTimeoutMillis);
+					m_journal.confirm(batch);
+				}
+				catch (IOException | TimeoutException | InterruptedException | ShutdownSignalException e)
+				{
+					// If the broker received some of these, these will be duplicated
+					m_journal.putBack(batch);
+					throw e;
+				}
+				
+				m_metrics.recordDrained(batch.size(), System.nanoTime() - batchStartNanos);
+				drainedCount += batch.size();
+				
+				if (drainRate > 0)
+				{
+					long aheadNanos = startNanos + drainedCount * 1000000000L / drainRate - System.nanoTime();
+					
+					if (aheadNanos > 0)
+					{
+						TimeUnit.NANOSECONDS.sleep(aheadNanos);
+					}
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// The connector is closing
+		}
+		catch (IOException | TimeoutException | ShutdownSignalException e)
+		{
+			printError("Failed to publish the outbound journal: " + e.getMessage());
+			
+			synchronized (m_connLock)
+			{
+				// If the connection has been lost, draining starts again once reconnected
+				if (m_connSupposedlyConnected)
+				{
+					scheduleDrain(reconnectDelayMinMillis);
+				}
+			}
+		}
+		finally
+		{
+			closeChannel(channel);
+		}
+	}
+	
+	private void ensureConnected() throws CommunicationException
+	{
+		// Checking without locking first, because this is called all the time
+		if (m_connSupposedlyConnected) return;
+		
+		synchronized (m_connLock)
+		{
+			if (m_connSupposedlyConnected) return;
+			
+			// With background reconnect, the caller does not wait for the reconnect
+			// but fails immediately. The first connect happens in the caller thread, though.
+			if (m_amqpProperties.getAutoReconnect() && m_hasConnected)
+			{
+				scheduleReconnect(0); // in case the previous attempt is over
+				throw new CommunicationException("Connection lost, reconnecting in the background", null);
+			}
+		}
+		
+		open(); // throws CommunicationException
+	}
+	
+	private void scheduleReconnect(final long delayMillis)
+	{
+		// Expecting the caller to hold m_connLock
+		
+		if (m_objectAlreadyClosed || m_reconnectPending)
+		{
+			return;
+		}
+		
+		if (m_reconnectExecutor == null)
+		{
+			m_reconnectExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					// A daemon thread does not prevent the JVM from exiting
+					Thread thread = new Thread(r, "AmqpTopicConnectorSync-reconnect");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		m_reconnectPending = true;
+		
+		m_reconnectExecutor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				reconnectInBackground(delayMillis);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private void reconnectInBackground(long previousDelayMillis)
+	{
+		synchronized (m_connLock)
+		{
+			m_reconnectPending = false;
+		}
+		
+		try
+		{
+			// This does nothing if the user has reconnected in the meantime
+			open(); // throws CommunicationException
+		}
+		catch (CommunicationException | RuntimeException e)
+		{
+			if (m_objectAlreadyClosed)
+			{
+				return;
+			}
+			
+			// Trying again later
+			long delayMillis = Math.min(Math.max(previousDelayMillis * 2, reconnectDelayMinMillis), reconnectDelayMaxMillis);
+			printError(String.format("Reconnect failed, retrying in %d ms: %s", delayMillis, e.getMessage()));
+			
+			synchronized (m_connLock)
+			{
+				scheduleReconnect(delayMillis);
+			}
+		}
+	}
+	
+	private void expectNotClosed() throws RuntimeException
+	{
+		if (m_objectAlreadyClosed)
+		{
+			throw new RuntimeException("Cannot use connector because the user has closed it");
+		}
+	}
+	
+	private void handleConnectError(Exception e) throws CommunicationException
+	{
+		String msgStart = "Failed to create AmqpConnector";
+		String errMsg = String.format("%s: %s: %s", msgStart, e.getClass().getSimpleName(), e.getMessage());
+		printError(errMsg);
+		
+		if (e.getCause() != null)
+		{
+			Throwable cause = e.getCause();
+			printError("-- Error cause: " + cause.getMessage());
+		}
+		
+		throw new CommunicationException(msgStart, e);
+	}
+	
+	private void printError(String msg)
+	{
+		String fullMsg = getMessageForPrint("ERR", msg);
+		System.err.println(fullMsg);
+	}
+	
+	private String getMessageForPrint(String tag, String msg)
+	{
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+		String timeString = LocalTime.now().format(formatter);
+		return String.format("%s [AmqpTopicConnectorSync] (%s) %s", timeString, tag, msg);
+	}
+	
+	private void cleanConnectionRelatedObjects()
+	{
+		Connection connection = null;
+		boolean connectionShared = false;
+		ShutdownListener connShutdownListener = null;
+		Channel consumeChannel = null;
+		PublishChannel[] publishChannels = null;
+		
+		synchronized (m_connLock)
+		{
+			connection = m_connection;
+			connectionShared = m_connectionShared;
+			connShutdownListener = m_connShutdownListener;
+			consumeChannel = m_consumeChannel;
+			publishChannels = m_publishChannels;
+			m_connection = null;
+			m_connShutdownListener = null;
+			m_consumeChannel = null;
+			m_publishChannels = null;
+			m_connSupposedlyConnected = false;
+		}
+		
+		// Cleaning up AMQP resources
+		closeChannel(consumeChannel);
+		
+		if (publishChannels != null)
+		{
+			for (PublishChannel pc : publishChannels)
+			{
+				closeChannel(pc.getChannel());
+			}
+		}
+		
+		if (connection == null)
+		{
+			return;
+		}
+		
+		if (connectionShared)
+		{
+			// Other connectors may still use the connection
+			deleteGeneratedSharedQueue(connection);
+			connection.removeShutdownListener(connShutdownListener);
+			SharedConnectionRegistry.release(connection);
+			return;
+		}
+		
+		try
+		{
+			// Cleaning up AMQP resources
+			connection.close();
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			// No can do!
+		}
+	}
+	
+	private void deleteGeneratedSharedQueue(Connection connection)
+	{
+		// Expecting the caller to hold m_setupLock
+		
+		if (m_generatedSharedQueue == null || connection == null)
+		{
+			return;
+		}
+		
+		Channel channel = null;
+		
+		try
+		{
+			// A channel of its own, because the consume channel may be closed already
+			channel = connection.createChannel();
+			channel.queueDelete(m_generatedSharedQueue);
+			m_generatedSharedQueue = null;
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			// If the connection has been lost, so has the queue. Otherwise,
+			// deleting is tried again when the next queue is created.
+		}
+		finally
+		{
+			closeChannel(channel);
+		}
+	}
+	
+	private void closeChannel(Channel channel)
+	{
+		try
+		{
+			if (channel != null)
+			{
+				channel.close();
+			}
+		}
+		catch (ShutdownSignalException | IOException | TimeoutException e)
+		{
+			// No can do!
+		}
+	}
+}
@@ -0,0 +1,147 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reusable buffers for message bodies. The buffers are in size
+ * classes of powers of two, so that a buffer fits any body up to its size.
+ * Each class retains a limited amount of free buffers; anything beyond that
+ * is left to the garbage collector. Bodies larger than the largest class get
+ * a buffer of their own that is not pooled. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class BufferPool
+{
+	// Constants
+	// The smallest and the largest size class as powers of two
+	private static final int minClassBits = 6; // 64 bytes
+	private static final int maxClassBits = 20; // 1 MiB
+	
+	// Each size class retains at most this many bytes of free buffers, but at least a few buffers
+	private static final int maxRetainedBytesPerClass = 4 * 1024 * 1024;
+	private static final int minRetainedPerClass = 4;
+	
+	/**
+	 * The free buffers of a size class.
+	 */
+	private static class SizeClass
+	{
+		final int bufferSize;
+		final int maxRetained;
+		final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+		
+		// The size of the queue is not constant time, so it is counted separately
+		final AtomicInteger freeCount = new AtomicInteger(0);
+		
+		SizeClass(int size)
+		{
+			bufferSize = size;
+			maxRetained = Math.max(minRetainedPerClass, maxRetainedBytesPerClass / size);
+		}
+	}
+	
+	private final SizeClass[] m_classes = new SizeClass[maxClassBits - minClassBits + 1];
+	private final ConnectorMetrics m_metrics;
+	
+	
+	/**
+	 * Constructor.
+	 * @param metrics Metrics to record buffer allocations to.
+	 */
+	BufferPool(ConnectorMetrics metrics)
+	{
+		m_metrics = metrics;
+		
+		for (int i = 0; i < m_classes.length; ++i)
+		{
+			m_classes[i] = new SizeClass(1 << (minClassBits + i));
+		}
+	}
+	
+	/**
+	 * Gets a buffer. The buffer can be longer than requested, and its content is undefined.
+	 * @param length The minimum length.
+	 * @return Buffer.
+	 */
+	byte[] acquire(int length)
+	{
+		int index = getClassIndex(length);
+		
+		if (index < 0)
+		{
+			m_metrics.recordBufferAllocated();
+			return new byte[length];
+		}
+		
+		SizeClass sizeClass = m_classes[index];
+		byte[] buffer = sizeClass.free.poll();
+		
+		if (buffer != null)
+		{
+			sizeClass.freeCount.decrementAndGet();
+			m_metrics.recordBufferReused();
+			return buffer;
+		}
+		
+		m_metrics.recordBufferAllocated();
+		return new byte[sizeClass.bufferSize];
+	}
+	
+	/**
+	 * Returns a buffer to the pool. The buffer must no longer be used after this.
+	 * @param buffer Buffer that was acquired from this pool.
+	 */
+	void release(byte[] buffer)
+	{
+		m_metrics.recordBufferReleased();
+		
+		int index = getClassIndex(buffer.length);
+		
+		// An oversize buffer is not pooled
+		if (index < 0 || m_classes[index].bufferSize != buffer.length)
+		{
+			return;
+		}
+		
+		SizeClass sizeClass = m_classes[index];
+		
+		// If enough buffers are free already, the garbage collector takes this one
+		if (sizeClass.freeCount.incrementAndGet() > sizeClass.maxRetained)
+		{
+			sizeClass.freeCount.decrementAndGet();
+			return;
+		}
+		
+		sizeClass.free.offer(buffer);
+	}
+	
+	/**
+	 * Gets the size class for a length.
+	 * @param length Length in bytes.
+	 * @return Index of the class, or -1 if larger than the largest class.
+	 */
+	static int getClassIndex(int length)
+	{
+		if (length <= 1 << minClassBits)
+		{
+			return 0;
+		}
+		
+		// The count of bits needed for the largest index of the buffer
+		int bits = 32 - Integer.numberOfLeadingZeros(length - 1);
+		return bits > maxClassBits ? -1 : bits - minClassBits;
+	}
+}
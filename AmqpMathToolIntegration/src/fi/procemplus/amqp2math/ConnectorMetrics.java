@@ -0,0 +1,379 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a connector. The counters are striped, so that
+ * threads sending and receiving in parallel do not contend. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class ConnectorMetrics
+{
+	// Constants
+	// With wildcard subscriptions, the count of routing keys is not known in advance.
+	// Beyond this count, the metrics of any further routing keys are combined.
+	static final int maxTopicCount = 1000;
+	static final String otherTopicsName = "(other)";
+	static final int maxPeerCount = 1000;
+	
+	private final TopicMetrics m_total = new TopicMetrics();
+	private final ConcurrentHashMap<String, TopicMetrics> m_topics = new ConcurrentHashMap<>();
+	
+	// For each sender, the smallest difference between the arrival and the send time in microseconds
+	private final ConcurrentHashMap<String, AtomicLong> m_peerMinDelays = new ConcurrentHashMap<>();
+	
+	private final LongAdder m_emptyPollCount = new LongAdder();
+	private final LongAdder m_sendFailureCount = new LongAdder();
+	private final LongAdder m_receiveFailureCount = new LongAdder();
+	private final LongAdder m_reconnectCount = new LongAdder();
+	private final LatencyHistogram m_reconnectDuration = new LatencyHistogram();
+	private final LatencyHistogram m_getLatency = new LatencyHistogram();
+	private final LatencyHistogram m_bindDuration = new LatencyHistogram();
+	private final LongAdder m_buffersAllocated = new LongAdder();
+	private final LongAdder m_buffersReused = new LongAdder();
+	private final LongAdder m_buffersReleased = new LongAdder();
+	private final LongAdder m_spilledCount = new LongAdder();
+	private final LongAdder m_spilledBytes = new LongAdder();
+	private final LongAdder m_journaledCount = new LongAdder();
+	private final LongAdder m_drainedCount = new LongAdder();
+	private final LongAdder m_drainNanos = new LongAdder();
+	private final LongAdder m_bytesBeforeCompression = new LongAdder();
+	private final LongAdder m_bytesAfterCompression = new LongAdder();
+	private final LatencyHistogram m_compressDuration = new LatencyHistogram();
+	private final LatencyHistogram m_decompressDuration = new LatencyHistogram();
+	
+	private final long m_createdTime = System.currentTimeMillis();
+	
+	
+	/**
+	 * Records a sent message.
+	 * @param topic Topic.
+	 * @param byteCount The size of the body.
+	 * @param nanos How long publishing took, or a negative value if not measured.
+	 */
+	void recordSent(String topic, int byteCount, long nanos)
+	{
+		m_total.recordSent(byteCount, nanos);
+		getTopicMetrics(topic).recordSent(byteCount, nanos);
+	}
+	
+	/**
+	 * Records a received message. If the message has tracing headers, this also
+	 * records the end-to-end latency.
+	 * @param msg Message.
+	 */
+	void recordReceived(ReceivedMessage msg)
+	{
+		int byteCount = msg.getBodyLength();
+		TopicMetrics topicMetrics = getTopicMetrics(msg.getRoutingKey());
+		m_total.recordReceived(byteCount);
+		topicMetrics.recordReceived(byteCount);
+		
+		long sendTime = msg.getSendTime();
+		
+		if (sendTime < 0)
+		{
+			return;
+		}
+		
+		long delayMicros = HighResolutionClock.currentTimeMicros() - sendTime;
+		m_total.recordEndToEnd(delayMicros);
+		topicMetrics.recordEndToEnd(delayMicros);
+		
+		String senderId = msg.getSenderId();
+		
+		if (senderId != null)
+		{
+			recordPeerDelay(senderId, delayMicros);
+		}
+	}
+	
+	/**
+	 * Records a received message that was dropped locally before the user got it.
+	 * @param routingKey Routing key.
+	 */
+	void recordDropped(String routingKey)
+	{
+		m_total.recordDropped();
+		getTopicMetrics(routingKey).recordDropped();
+	}
+	
+	/**
+	 * Records an attempt to receive when nothing had been received.
+	 */
+	void recordEmptyPoll()
+	{
+		m_emptyPollCount.increment();
+	}
+	
+	/**
+	 * Records a failure to send.
+	 */
+	void recordSendFailure()
+	{
+		m_sendFailureCount.increment();
+	}
+	
+	/**
+	 * Records a failure to receive.
+	 */
+	void recordReceiveFailure()
+	{
+		m_receiveFailureCount.increment();
+	}
+	
+	/**
+	 * Records a round trip to get a message from the broker.
+	 * @param nanos Duration.
+	 */
+	void recordGet(long nanos)
+	{
+		m_getLatency.recordNanos(nanos);
+	}
+	
+	/**
+	 * Records a reconnect.
+	 * @param nanos The time from losing the connection to reconnecting.
+	 */
+	void recordReconnect(long nanos)
+	{
+		m_reconnectCount.increment();
+		m_reconnectDuration.recordNanos(nanos);
+	}
+	
+	/**
+	 * Records binding the queue to all topics when (re)connecting.
+	 * @param nanos Duration.
+	 */
+	void recordBind(long nanos)
+	{
+		m_bindDuration.recordNanos(nanos);
+	}
+	
+	/**
+	 * Records a pooled buffer that had to be allocated because none was free.
+	 */
+	void recordBufferAllocated()
+	{
+		m_buffersAllocated.increment();
+	}
+	
+	/**
+	 * Records a pooled buffer that was reused.
+	 */
+	void recordBufferReused()
+	{
+		m_buffersReused.increment();
+	}
+	
+	/**
+	 * Records a pooled buffer that was released.
+	 */
+	void recordBufferReleased()
+	{
+		m_buffersReleased.increment();
+	}
+	
+	/**
+	 * Records a message whose body was spilled from the local receive buffer to a file.
+	 * @param byteCount The length of the body.
+	 */
+	void recordSpilled(int byteCount)
+	{
+		m_spilledCount.increment();
+		m_spilledBytes.add(byteCount);
+	}
+	
+	/**
+	 * Records a message appended to the outbound journal.
+	 */
+	void recordJournaled()
+	{
+		m_journaledCount.increment();
+	}
+	
+	/**
+	 * Records messages published and confirmed from the outbound journal.
+	 * @param count Count of messages.
+	 * @param nanos Duration in nanoseconds.
+	 */
+	void recordDrained(int count, long nanos)
+	{
+		m_drainedCount.add(count);
+		m_drainNanos.add(nanos);
+	}
+	
+	/**
+	 * Records an attempt to compress a sent message.
+	 * @param rawBytes The length before compression.
+	 * @param sentBytes The length sent, which equals the raw length if not worth compressing.
+	 * @param nanos Duration in nanoseconds.
+	 */
+	void recordCompressed(int rawBytes, int sentBytes, long nanos)
+	{
+		m_bytesBeforeCompression.add(rawBytes);
+		m_bytesAfterCompression.add(sentBytes);
+		m_compressDuration.recordNanos(nanos);
+	}
+	
+	/**
+	 * Records the decompression of a received message.
+	 * @param nanos Duration in nanoseconds.
+	 */
+	void recordDecompressed(long nanos)
+	{
+		m_decompressDuration.recordNanos(nanos);
+	}
+	
+	/**
+	 * Takes a snapshot of the metrics. Any values recorded during the snapshot
+	 * may or may not be included.
+	 * @return Snapshot.
+	 */
+	ConnectorStatistics snapshot()
+	{
+		ArrayList<TopicStatistics> topics = new ArrayList<>(m_topics.size());
+		
+		for (Map.Entry<String, TopicMetrics> entry : m_topics.entrySet())
+		{
+			topics.add(entry.getValue().snapshot(entry.getKey()));
+		}
+		
+		// Sorting by sender ID
+		TreeMap<String, Long> peers = new TreeMap<>();
+		
+		for (Map.Entry<String, AtomicLong> entry : m_peerMinDelays.entrySet())
+		{
+			peers.put(entry.getKey(), entry.getValue().get());
+		}
+		
+		String[] peerIds = peers.keySet().toArray(new String[peers.size()]);
+		long[] peerOffsets = new long[peerIds.length];
+		
+		for (int i = 0; i < peerIds.length; ++i)
+		{
+			peerOffsets[i] = peers.get(peerIds[i]);
+		}
+		
+		return new ConnectorStatistics(m_createdTime, System.currentTimeMillis(), m_total.snapshot(null), topics,
+				m_emptyPollCount.sum(), m_sendFailureCount.sum(), m_receiveFailureCount.sum(),
+				m_reconnectCount.sum(), m_reconnectDuration.snapshot(), m_getLatency.snapshot(),
+				m_bindDuration.snapshot(), m_buffersAllocated.sum(), m_buffersReused.sum(), m_buffersReleased.sum(),
+				m_spilledCount.sum(), m_spilledBytes.sum(), m_journaledCount.sum(), m_drainedCount.sum(),
+				m_drainNanos.sum(), m_bytesBeforeCompression.sum(), m_bytesAfterCompression.sum(),
+				m_compressDuration.snapshot(), m_decompressDuration.snapshot(), peerIds, peerOffsets);
+	}
+	
+	private void recordPeerDelay(String senderId, long delayMicros)
+	{
+		AtomicLong minDelay = m_peerMinDelays.get(senderId);
+		
+		if (minDelay == null)
+		{
+			if (m_peerMinDelays.size() >= maxPeerCount)
+			{
+				return;
+			}
+			
+			AtomicLong created = new AtomicLong(delayMicros);
+			minDelay = m_peerMinDelays.putIfAbsent(senderId, created);
+			
+			if (minDelay == null)
+			{
+				return;
+			}
+		}
+		
+		// Only contended when the minimum shrinks
+		long min = minDelay.get();
+		
+		while (delayMicros < min && !minDelay.compareAndSet(min, delayMicros))
+		{
+			min = minDelay.get();
+		}
+	}
+	
+	private TopicMetrics getTopicMetrics(String topic)
+	{
+		TopicMetrics metrics = m_topics.get(topic);
+		
+		if (metrics != null)
+		{
+			return metrics;
+		}
+		
+		// The limit can be exceeded by a few if threads add topics in parallel
+		String key = m_topics.size() < maxTopicCount ? topic : otherTopicsName;
+		metrics = new TopicMetrics();
+		TopicMetrics existing = m_topics.putIfAbsent(key, metrics);
+		return existing != null ? existing : metrics;
+	}
+	
+	
+	/**
+	 * The metrics of a single topic.
+	 */
+	private static class TopicMetrics
+	{
+		private final LongAdder m_sentCount = new LongAdder();
+		private final LongAdder m_sentBytes = new LongAdder();
+		private final LongAdder m_receivedCount = new LongAdder();
+		private final LongAdder m_receivedBytes = new LongAdder();
+		private final LongAdder m_droppedCount = new LongAdder();
+		private final LatencyHistogram m_publishLatency = new LatencyHistogram();
+		private final LatencyHistogram m_endToEndLatency = new LatencyHistogram();
+		
+		
+		void recordSent(int byteCount, long nanos)
+		{
+			m_sentCount.increment();
+			m_sentBytes.add(byteCount);
+			
+			if (nanos >= 0)
+			{
+				m_publishLatency.recordNanos(nanos);
+			}
+		}
+		
+		void recordReceived(int byteCount)
+		{
+			m_receivedCount.increment();
+			m_receivedBytes.add(byteCount);
+		}
+		
+		void recordDropped()
+		{
+			m_droppedCount.increment();
+		}
+		
+		void recordEndToEnd(long micros)
+		{
+			m_endToEndLatency.recordMicros(micros);
+		}
+		
+		TopicStatistics snapshot(String topic)
+		{
+			return new TopicStatistics(topic, m_sentCount.sum(), m_sentBytes.sum(),
+					m_receivedCount.sum(), m_receivedBytes.sum(), m_droppedCount.sum(), m_publishLatency.snapshot(),
+					m_endToEndLatency.snapshot());
+		}
+	}
+}
@@ -0,0 +1,513 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the statistics of a connector. To get one, call
+ * AmqpTopicConnectorSync.getStatistics(). The counts are totals since the
+ * connector was created; to get rates, subtract an earlier snapshot and
+ * divide by the difference of the snapshot times. The method toString()
+ * exports the snapshot as text with one "name=value" line per item.
+ * @author Petri Kannisto
+ */
+public class ConnectorStatistics
+{
+	private final long m_startTime;
+	private final long m_snapshotTime;
+	private final TopicStatistics m_total;
+	private final TopicStatistics[] m_topics;
+	private final long m_emptyPollCount;
+	private final long m_sendFailureCount;
+	private final long m_receiveFailureCount;
+	private final long m_reconnectCount;
+	private final HistogramSnapshot m_reconnectDuration;
+	private final HistogramSnapshot m_brokerGetLatency;
+	private final HistogramSnapshot m_bindDuration;
+	private final long m_buffersAllocated;
+	private final long m_buffersReused;
+	private final long m_buffersReleased;
+	private final long m_spilledCount;
+	private final long m_spilledBytes;
+	private final long m_journaledCount;
+	private final long m_drainedCount;
+	private final long m_drainNanos;
+	private final long m_bytesBeforeCompression;
+	private final long m_bytesAfterCompression;
+	private final HistogramSnapshot m_compressDuration;
+	private final HistogramSnapshot m_decompressDuration;
+	private final String[] m_peerIds;
+	private final long[] m_peerClockOffsets;
+	
+	
+	/**
+	 * Constructor.
+	 * @param startTime When the connector was created, in milliseconds since the Unix epoch.
+	 * @param snapshotTime When the snapshot was taken, in milliseconds since the Unix epoch.
+	 * @param total The statistics of all topics combined.
+	 * @param topics The statistics of each topic.
+	 * @param emptyPollCount Empty poll count.
+	 * @param sendFailureCount Send failure count.
+	 * @param receiveFailureCount Receive failure count.
+	 * @param reconnectCount Reconnect count.
+	 * @param reconnectDuration Reconnect durations.
+	 * @param brokerGetLatency Latency of getting a message from the broker.
+	 * @param bindDuration Durations of binding the queue to all topics.
+	 * @param buffersAllocated Count of pooled buffers allocated.
+	 * @param buffersReused Count of pooled buffers reused.
+	 * @param buffersReleased Count of pooled buffers released.
+	 * @param spilledCount Count of messages spilled from the local receive buffer.
+	 * @param spilledBytes Bytes spilled from the local receive buffer.
+	 * @param journaledCount Count of messages appended to the outbound journal.
+	 * @param drainedCount Count of messages published from the outbound journal.
+	 * @param drainNanos Time spent publishing from the outbound journal in nanoseconds.
+	 * @param bytesBeforeCompression Bytes of sent messages that compression was applied to.
+	 * @param bytesAfterCompression The same bytes as sent after compression.
+	 * @param compressDuration Durations of compressing a sent message.
+	 * @param decompressDuration Durations of decompressing a received message.
+	 * @param peerIds The IDs of the senders, in alphabetical order.
+	 * @param peerClockOffsets The clock offset estimate of each sender in microseconds.
+	 */
+	ConnectorStatistics(long startTime, long snapshotTime, TopicStatistics total, List<TopicStatistics> topics,
+			long emptyPollCount, long sendFailureCount, long receiveFailureCount, long reconnectCount,
+			HistogramSnapshot reconnectDuration, HistogramSnapshot brokerGetLatency,
+			HistogramSnapshot bindDuration, long buffersAllocated, long buffersReused, long buffersReleased,
+			long spilledCount, long spilledBytes, long journaledCount, long drainedCount, long drainNanos,
+			long bytesBeforeCompression, long bytesAfterCompression, HistogramSnapshot compressDuration,
+			HistogramSnapshot decompressDuration, String[] peerIds, long[] peerClockOffsets)
+	{
+		// Sorting by topic makes the export easy to compare
+		Collections.sort(topics, new Comparator<TopicStatistics>()
+		{
+			@Override
+			public int compare(TopicStatistics a, TopicStatistics b)
+			{
+				return a.getTopic().compareTo(b.getTopic());
+			}
+		});
+		
+		m_startTime = startTime;
+		m_snapshotTime = snapshotTime;
+		m_total = total;
+		m_topics = topics.toArray(new TopicStatistics[topics.size()]);
+		m_emptyPollCount = emptyPollCount;
+		m_sendFailureCount = sendFailureCount;
+		m_receiveFailureCount = receiveFailureCount;
+		m_reconnectCount = reconnectCount;
+		m_reconnectDuration = reconnectDuration;
+		m_brokerGetLatency = brokerGetLatency;
+		m_bindDuration = bindDuration;
+		m_buffersAllocated = buffersAllocated;
+		m_buffersReused = buffersReused;
+		m_buffersReleased = buffersReleased;
+		m_spilledCount = spilledCount;
+		m_spilledBytes = spilledBytes;
+		m_journaledCount = journaledCount;
+		m_drainedCount = drainedCount;
+		m_drainNanos = drainNanos;
+		m_bytesBeforeCompression = bytesBeforeCompression;
+		m_bytesAfterCompression = bytesAfterCompression;
+		m_compressDuration = compressDuration;
+		m_decompressDuration = decompressDuration;
+		m_peerIds = peerIds;
+		m_peerClockOffsets = peerClockOffsets;
+	}
+	
+	/**
+	 * Returns when the connector was created.
+	 * @return Time as milliseconds since the Unix epoch.
+	 */
+	public long getStartTime()
+	{
+		return m_startTime;
+	}
+	
+	/**
+	 * Returns when the snapshot was taken.
+	 * @return Time as milliseconds since the Unix epoch.
+	 */
+	public long getSnapshotTime()
+	{
+		return m_snapshotTime;
+	}
+	
+	/**
+	 * Returns the count of sent messages.
+	 * @return Count.
+	 */
+	public long getMessagesSent()
+	{
+		return m_total.getMessagesSent();
+	}
+	
+	/**
+	 * Returns the count of sent bytes in message bodies.
+	 * @return Count.
+	 */
+	public long getBytesSent()
+	{
+		return m_total.getBytesSent();
+	}
+	
+	/**
+	 * Returns the count of received messages.
+	 * @return Count.
+	 */
+	public long getMessagesReceived()
+	{
+		return m_total.getMessagesReceived();
+	}
+	
+	/**
+	 * Returns the count of received bytes in message bodies.
+	 * @return Count.
+	 */
+	public long getBytesReceived()
+	{
+		return m_total.getBytesReceived();
+	}
+	
+	/**
+	 * Returns the count of received messages that were dropped locally before
+	 * the user retrieved them. See TopicStatistics.getMessagesDropped().
+	 * @return Count.
+	 */
+	public long getMessagesDropped()
+	{
+		return m_total.getMessagesDropped();
+	}
+	
+	/**
+	 * Returns how long it took to send single messages.
+	 * @return Latency histogram.
+	 */
+	public HistogramSnapshot getPublishLatency()
+	{
+		return m_total.getPublishLatency();
+	}
+	
+	/**
+	 * Returns the end-to-end latency of received messages with tracing headers.
+	 * See TopicStatistics.getEndToEndLatency().
+	 * @return Latency histogram.
+	 */
+	public HistogramSnapshot getEndToEndLatency()
+	{
+		return m_total.getEndToEndLatency();
+	}
+	
+	/**
+	 * Returns the IDs of the connectors that have sent messages with tracing headers.
+	 * The same index refers to the same sender in getPeerClockOffsetsMicros().
+	 * @return Sender IDs in alphabetical order.
+	 */
+	public String[] getPeerIds()
+	{
+		return m_peerIds.clone();
+	}
+	
+	/**
+	 * Returns an estimate of the clock offset of each sender, i.e., how much
+	 * the clock of this receiver is ahead of that of the sender. The estimate
+	 * is the smallest observed difference between the arrival and the send time.
+	 * Therefore, it also includes the smallest transit time, and it is accurate
+	 * to the extent that some messages pass with almost no delay. If two peers
+	 * trace in both directions, the actual offset is about half the difference of
+	 * their estimates for each other. To get the delay in excess of the fastest
+	 * transit, subtract the estimate from the end-to-end latency.
+	 * @return Offsets in microseconds.
+	 */
+	public long[] getPeerClockOffsetsMicros()
+	{
+		return m_peerClockOffsets.clone();
+	}
+	
+	/**
+	 * Returns the count of attempts to receive when nothing had been received.
+	 * @return Count.
+	 */
+	public long getEmptyPollCount()
+	{
+		return m_emptyPollCount;
+	}
+	
+	/**
+	 * Returns the count of failures to send.
+	 * @return Count.
+	 */
+	public long getSendFailureCount()
+	{
+		return m_sendFailureCount;
+	}
+	
+	/**
+	 * Returns the count of failures to receive.
+	 * @return Count.
+	 */
+	public long getReceiveFailureCount()
+	{
+		return m_receiveFailureCount;
+	}
+	
+	/**
+	 * Returns the count of reconnects after losing the connection.
+	 * @return Count.
+	 */
+	public long getReconnectCount()
+	{
+		return m_reconnectCount;
+	}
+	
+	/**
+	 * Returns the time from losing the connection to reconnecting.
+	 * @return Duration histogram.
+	 */
+	public HistogramSnapshot getReconnectDuration()
+	{
+		return m_reconnectDuration;
+	}
+	
+	/**
+	 * Returns how long it took to get a message (or an empty response)
+	 * from the broker. Only applies if messages are pulled rather than
+	 * delivered by a push-based consumer.
+	 * @return Latency histogram.
+	 */
+	public HistogramSnapshot getBrokerGetLatency()
+	{
+		return m_brokerGetLatency;
+	}
+	
+	/**
+	 * Returns how long it took to bind the queue to all topics each time
+	 * the connector (re)connected. This dominates the connect time if there are
+	 * many topics. Only applies if communicating through a broker.
+	 * @return Duration histogram.
+	 */
+	public HistogramSnapshot getBindDuration()
+	{
+		return m_bindDuration;
+	}
+	
+	/**
+	 * Returns the count of message buffers that had to be allocated because the
+	 * pool had no free buffer. Only applies if pooled buffers are enabled (see
+	 * AmqpPropsManager). If the pool works well, this stops growing once the
+	 * pool has warmed up.
+	 * @return Count.
+	 */
+	public long getBuffersAllocated()
+	{
+		return m_buffersAllocated;
+	}
+	
+	/**
+	 * Returns the count of message buffers reused from the pool.
+	 * @return Count.
+	 */
+	public long getBuffersReused()
+	{
+		return m_buffersReused;
+	}
+	
+	/**
+	 * Returns the count of message buffers released back to the pool. The
+	 * difference of acquired (allocated and reused) and released buffers is
+	 * the count of messages not released yet.
+	 * @return Count.
+	 */
+	public long getBuffersReleased()
+	{
+		return m_buffersReleased;
+	}
+	
+	/**
+	 * Returns the count of messages whose body was spilled to a file, because
+	 * the local receive buffer had exceeded its memory budget. Only applies if
+	 * the budget has been set (see AmqpPropsManager).
+	 * @return Count.
+	 */
+	public long getMessagesSpilled()
+	{
+		return m_spilledCount;
+	}
+	
+	/**
+	 * Returns the bytes of the message bodies spilled to a file.
+	 * @return Bytes.
+	 */
+	public long getBytesSpilled()
+	{
+		return m_spilledBytes;
+	}
+	
+	/**
+	 * Returns the count of messages appended to the outbound journal, because
+	 * the broker was unreachable. Only applies if the journal is enabled (see
+	 * AmqpPropsManager). These are also included in the sent counts.
+	 * @return Count.
+	 */
+	public long getMessagesJournaled()
+	{
+		return m_journaledCount;
+	}
+	
+	/**
+	 * Returns the count of messages published from the outbound journal and
+	 * confirmed by the broker.
+	 * @return Count.
+	 */
+	public long getMessagesDrained()
+	{
+		return m_drainedCount;
+	}
+	
+	/**
+	 * Returns the rate of publishing from the outbound journal while draining it.
+	 * @return Messages per second, or 0 if nothing has been drained.
+	 */
+	public double getDrainRate()
+	{
+		return m_drainNanos == 0 ? 0 : m_drainedCount * 1e9 / m_drainNanos;
+	}
+	
+	/**
+	 * Returns the compression ratio of sent messages, i.e., the bytes before
+	 * compression divided by the bytes sent. Only messages that compression
+	 * applies to are included (see AmqpPropsManager), also those sent
+	 * uncompressed because compressing did not make them smaller.
+	 * @return Ratio, or 1 if nothing has been compressed.
+	 */
+	public double getCompressionRatio()
+	{
+		return m_bytesAfterCompression == 0 ? 1 : (double)m_bytesBeforeCompression / m_bytesAfterCompression;
+	}
+	
+	/**
+	 * Returns the bytes of sent messages before compression. Only messages that
+	 * compression applies to are included.
+	 * @return Bytes.
+	 */
+	public long getBytesBeforeCompression()
+	{
+		return m_bytesBeforeCompression;
+	}
+	
+	/**
+	 * Returns the bytes of sent messages after compression. Only messages that
+	 * compression applies to are included.
+	 * @return Bytes.
+	 */
+	public long getBytesAfterCompression()
+	{
+		return m_bytesAfterCompression;
+	}
+	
+	/**
+	 * Returns the durations of compressing a sent message, i.e., the CPU cost
+	 * of compression in the sending thread.
+	 * @return Histogram.
+	 */
+	public HistogramSnapshot getCompressDuration()
+	{
+		return m_compressDuration;
+	}
+	
+	/**
+	 * Returns the durations of decompressing a received message.
+	 * @return Histogram.
+	 */
+	public HistogramSnapshot getDecompressDuration()
+	{
+		return m_decompressDuration;
+	}
+	
+	/**
+	 * Returns the topics that have statistics. For received messages, the
+	 * topic is the routing key. If there are very many, the rest are combined
+	 * under the name "(other)".
+	 * @return Topics in alphabetical order.
+	 */
+	public String[] getTopics()
+	{
+		String[] topics = new String[m_topics.length];
+		
+		for (int i = 0; i < topics.length; ++i)
+		{
+			topics[i] = m_topics[i].getTopic();
+		}
+		
+		return topics;
+	}
+	
+	/**
+	 * Returns the statistics of a topic.
+	 * @param topic Topic.
+	 * @return Statistics, or null if the topic has had no messages.
+	 */
+	public TopicStatistics getTopicStatistics(String topic)
+	{
+		for (TopicStatistics t : m_topics)
+		{
+			if (t.getTopic().equals(topic))
+			{
+				return t;
+			}
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("start_time=").append(m_startTime).append('\n');
+		builder.append("snapshot_time=").append(m_snapshotTime).append('\n');
+		builder.append("total=").append(m_total).append('\n');
+		builder.append("empty_polls=").append(m_emptyPollCount).append('\n');
+		builder.append("send_failures=").append(m_sendFailureCount).append('\n');
+		builder.append("receive_failures=").append(m_receiveFailureCount).append('\n');
+		builder.append("reconnects=").append(m_reconnectCount).append('\n');
+		builder.append("reconnect_duration={").append(m_reconnectDuration).append("}\n");
+		builder.append("broker_get_latency={").append(m_brokerGetLatency).append("}\n");
+		builder.append("bind_duration={").append(m_bindDuration).append("}\n");
+		builder.append("buffers_allocated=").append(m_buffersAllocated).append('\n');
+		builder.append("buffers_reused=").append(m_buffersReused).append('\n');
+		builder.append("buffers_released=").append(m_buffersReleased).append('\n');
+		builder.append("messages_spilled=").append(m_spilledCount).append('\n');
+		builder.append("bytes_spilled=").append(m_spilledBytes).append('\n');
+		builder.append("messages_journaled=").append(m_journaledCount).append('\n');
+		builder.append("messages_drained=").append(m_drainedCount).append('\n');
+		builder.append("drain_rate=").append(String.format("%.1f", getDrainRate())).append('\n');
+		builder.append("compression_ratio=").append(String.format("%.2f", getCompressionRatio())).append('\n');
+		builder.append("compress_duration={").append(m_compressDuration).append("}\n");
+		builder.append("decompress_duration={").append(m_decompressDuration).append("}\n");
+		
+		for (TopicStatistics t : m_topics)
+		{
+			builder.append("topic[").append(t.getTopic()).append("]=").append(t).append('\n');
+		}
+		
+		for (int i = 0; i < m_peerIds.length; ++i)
+		{
+			builder.append("peer_clock_offset_us[").append(m_peerIds[i]).append("]=").append(m_peerClockOffsets[i]).append('\n');
+		}
+		
+		return builder.toString();
+	}
+}
@@ -0,0 +1,155 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the wall-clock time in microseconds. Before Java 9, the system clock
+ * only has a resolution of milliseconds, or about 15.6 ms on Windows. Therefore,
+ * the time is extrapolated from a millisecond timestamp with System.nanoTime().
+ * If the two drift apart, e.g., because the system clock is adjusted, the time
+ * is anchored again. The caller never waits for this; a coarse anchor is used
+ * until a precise one has been taken in the background. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class HighResolutionClock
+{
+	// Constants
+	// If the extrapolated time differs from the system clock by more than this,
+	// a new anchor is taken. Because the system clock can lag by its resolution,
+	// this must clearly exceed the coarsest resolution, or the clock would be
+	// anchored again at every check.
+	private static final long maxDriftMicros = 50 * 1000;
+	private static final long checkIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+	
+	// The anchor. Replaced as a whole, so that readers always see a consistent pair.
+	// The first anchor is precise, which takes up to one tick of the system clock once.
+	private static volatile Anchor s_anchor = Anchor.takePrecise();
+	
+	
+	/**
+	 * Returns the current time.
+	 * @return Time as microseconds since the Unix epoch.
+	 */
+	static long currentTimeMicros()
+	{
+		Anchor anchor = s_anchor;
+		long nanos = System.nanoTime();
+		long micros = anchor.m_micros + (nanos - anchor.m_nanos) / 1000;
+		
+		if (nanos - anchor.m_lastCheckNanos > checkIntervalNanos)
+		{
+			// Benign race: another thread may check at the same time
+			anchor.m_lastCheckNanos = nanos;
+			long wallMicros = System.currentTimeMillis() * 1000;
+			
+			if (Math.abs(micros - wallMicros) > maxDriftMicros)
+			{
+				Anchor coarse = new Anchor(wallMicros, nanos);
+				s_anchor = coarse;
+				refineInBackground(coarse);
+				return wallMicros;
+			}
+		}
+		
+		return micros;
+	}
+	
+	private static void refineInBackground(final Anchor coarse)
+	{
+		// One thread refines at a time, so frequent adjustments of the
+		// system clock do not start a thread each
+		Refiner.executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (s_anchor != coarse)
+				{
+					// Anchored again meanwhile; a later task refines that anchor
+					return;
+				}
+				
+				Anchor precise = Anchor.takePrecise();
+				
+				// Benign race: if the clock is anchored again meanwhile,
+				// either anchor is valid
+				if (s_anchor == coarse)
+				{
+					s_anchor = precise;
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Holds the thread that refines anchors. It is created once needed.
+	 */
+	private static class Refiner
+	{
+		static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				// A daemon thread does not prevent the JVM from exiting
+				Thread thread = new Thread(r, "HighResolutionClock-anchor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	
+	/**
+	 * A pair of a millisecond timestamp and a nanosecond counter taken at the same time.
+	 */
+	private static class Anchor
+	{
+		private final long m_micros;
+		private final long m_nanos;
+		private volatile long m_lastCheckNanos;
+		
+		
+		Anchor(long micros, long nanos)
+		{
+			m_micros = micros;
+			m_nanos = nanos;
+			m_lastCheckNanos = nanos;
+		}
+		
+		/**
+		 * Takes an anchor at the start of a millisecond rather than anywhere
+		 * within one. This waits for the system clock to tick.
+		 * @return Anchor.
+		 */
+		static Anchor takePrecise()
+		{
+			long millis = System.currentTimeMillis();
+			long nextMillis = millis;
+			
+			while (nextMillis == millis)
+			{
+				nextMillis = System.currentTimeMillis();
+			}
+			
+			return new Anchor(nextMillis * 1000, System.nanoTime());
+		}
+	}
+}
@@ -0,0 +1,140 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+/**
+ * An immutable snapshot of a latency histogram. Each bucket covers a power
+ * of two in microseconds, so the percentiles are upper bounds that can be up
+ * to twice the actual value.
+ * @author Petri Kannisto
+ */
+public class HistogramSnapshot
+{
+	private final long[] m_counts;
+	private final long m_totalCount;
+	private final long m_sumMicros;
+	private final long m_maxMicros;
+	
+	
+	/**
+	 * Constructor.
+	 * @param counts The count of each bucket.
+	 * @param sumMicros The sum of the values in microseconds.
+	 * @param maxMicros The largest value in microseconds.
+	 */
+	HistogramSnapshot(long[] counts, long sumMicros, long maxMicros)
+	{
+		long total = 0;
+		
+		for (long c : counts)
+		{
+			total += c;
+		}
+		
+		m_counts = counts;
+		m_totalCount = total;
+		m_sumMicros = sumMicros;
+		m_maxMicros = maxMicros;
+	}
+	
+	/**
+	 * Returns the count of recorded values.
+	 * @return Count.
+	 */
+	public long getCount()
+	{
+		return m_totalCount;
+	}
+	
+	/**
+	 * Returns the mean of the recorded values.
+	 * @return Mean in microseconds, or 0 if nothing has been recorded.
+	 */
+	public double getMeanMicros()
+	{
+		return m_totalCount == 0 ? 0 : (double)m_sumMicros / m_totalCount;
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 * @return Value in microseconds.
+	 */
+	public long getMaxMicros()
+	{
+		return m_maxMicros;
+	}
+	
+	/**
+	 * Returns an upper bound for the value at the given percentile.
+	 * @param percentile Percentile, e.g., 99.9.
+	 * @return Value in microseconds, or 0 if nothing has been recorded.
+	 */
+	public long getPercentileMicros(double percentile)
+	{
+		if (m_totalCount == 0)
+		{
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * m_totalCount));
+		long cumulative = 0;
+		
+		for (int i = 0; i < m_counts.length; ++i)
+		{
+			cumulative += m_counts[i];
+			
+			if (cumulative >= rank)
+			{
+				// The upper bound is exclusive, whereas the max is inclusive
+				return Math.min(LatencyHistogram.getBucketUpperBound(i) - 1, m_maxMicros);
+			}
+		}
+		
+		return m_maxMicros;
+	}
+	
+	/**
+	 * Returns the upper bounds of the buckets. The same index refers to the
+	 * same bucket as in getBucketCounts().
+	 * @return Upper bounds in microseconds (exclusive). The last is Long.MAX_VALUE.
+	 */
+	public long[] getBucketUpperBoundsMicros()
+	{
+		long[] bounds = new long[m_counts.length];
+		
+		for (int i = 0; i < bounds.length; ++i)
+		{
+			bounds[i] = LatencyHistogram.getBucketUpperBound(i);
+		}
+		
+		return bounds;
+	}
+	
+	/**
+	 * Returns the count of values in each bucket.
+	 * @return Counts.
+	 */
+	public long[] getBucketCounts()
+	{
+		return m_counts.clone();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d mean_us=%.1f p50_us=%d p99_us=%d p999_us=%d max_us=%d",
+				m_totalCount, getMeanMicros(), getPercentileMicros(50), getPercentileMicros(99),
+				getPercentileMicros(99.9), m_maxMicros);
+	}
+}
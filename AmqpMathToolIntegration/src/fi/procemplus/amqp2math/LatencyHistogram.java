@@ -0,0 +1,102 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets. Each bucket covers a power of two
+ * in microseconds, so recording a value costs a couple of instructions and
+ * an uncontended increment. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class LatencyHistogram
+{
+	// Bucket i counts values below 2^i microseconds (and at least 2^(i-1)).
+	// The last bucket counts everything larger.
+	static final int bucketCount = 32;
+	
+	private final LongAdder[] m_counts = new LongAdder[bucketCount];
+	private final LongAdder m_sumMicros = new LongAdder();
+	private final AtomicLong m_maxMicros = new AtomicLong(0);
+	
+	
+	/**
+	 * Constructor.
+	 */
+	LatencyHistogram()
+	{
+		for (int i = 0; i < bucketCount; ++i)
+		{
+			m_counts[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records a value.
+	 * @param nanos Latency in nanoseconds.
+	 */
+	void recordNanos(long nanos)
+	{
+		recordMicros(nanos / 1000);
+	}
+	
+	/**
+	 * Records a value.
+	 * @param value Latency in microseconds. Negative values are recorded as 0.
+	 */
+	void recordMicros(long value)
+	{
+		long micros = Math.max(value, 0);
+		int index = Math.min(64 - Long.numberOfLeadingZeros(micros), bucketCount - 1);
+		
+		m_counts[index].increment();
+		m_sumMicros.add(micros);
+		
+		// Only contended when the maximum grows
+		long max = m_maxMicros.get();
+		
+		while (micros > max && !m_maxMicros.compareAndSet(max, micros))
+		{
+			max = m_maxMicros.get();
+		}
+	}
+	
+	/**
+	 * Takes a snapshot. Values recorded during the snapshot may or may not be included.
+	 * @return Snapshot.
+	 */
+	HistogramSnapshot snapshot()
+	{
+		long[] counts = new long[bucketCount];
+		
+		for (int i = 0; i < bucketCount; ++i)
+		{
+			counts[i] = m_counts[i].sum();
+		}
+		
+		return new HistogramSnapshot(counts, m_sumMicros.sum(), m_maxMicros.get());
+	}
+	
+	/**
+	 * Returns the upper bound of a bucket.
+	 * @param index Bucket index.
+	 * @return Upper bound in microseconds (exclusive), or Long.MAX_VALUE for the last bucket.
+	 */
+	static long getBucketUpperBound(int index)
+	{
+		return index == bucketCount - 1 ? Long.MAX_VALUE : 1L << index;
+	}
+}
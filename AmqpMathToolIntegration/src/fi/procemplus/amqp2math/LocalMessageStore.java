@@ -0,0 +1,263 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds received messages in a local queue per routing key. This lets the user
+ * retrieve the messages of one topic without going through the others. Each
+ * queue has a capacity; when it is full, the oldest message is dropped. For
+ * conflated topics, the capacity is 1, so that a new message supersedes the
+ * previous one. The messages are numbered in the order of arrival, so that they
+ * can also be retrieved regardless of topic in the original order. The class
+ * is thread-safe.
+ * @author Petri Kannisto
+ */
+class LocalMessageStore
+{
+	// Constants
+	// Conflation is cached up to this count of routing keys
+	private static final int conflatedCacheMaxSize = 10000;
+	
+	private final int m_capacityPerTopic;
+	private final List<String> m_conflatedPatterns;
+	private final ConnectorMetrics m_metrics;
+	
+	// The queues by routing key. Empty queues are removed.
+	private final HashMap<String, ArrayDeque<StoredMessage>> m_queues = new HashMap<>();
+	
+	// Whether each routing key is conflated, so that the patterns need not be matched every time
+	private final HashMap<String, Boolean> m_conflatedCache = new HashMap<>();
+	
+	// These are synchronized with the lock of this object. The count is volatile,
+	// so that it can be checked without locking.
+	private volatile int m_count = 0;
+	private int m_conflatedCount = 0;
+	private long m_nextSequence = 0;
+	
+	
+	/**
+	 * Constructor.
+	 * @param capacityPerTopic The capacity of each queue.
+	 * @param conflatedPatterns Topic patterns whose routing keys only keep the latest message.
+	 * @param metrics Metrics to record dropped messages to.
+	 */
+	LocalMessageStore(int capacityPerTopic, String[] conflatedPatterns, ConnectorMetrics metrics)
+	{
+		m_capacityPerTopic = capacityPerTopic;
+		m_conflatedPatterns = Arrays.asList(conflatedPatterns.clone());
+		m_metrics = metrics;
+	}
+	
+	/**
+	 * Returns whether any topics are conflated.
+	 * @return True if conflated, otherwise false.
+	 */
+	boolean hasConflatedTopics()
+	{
+		return !m_conflatedPatterns.isEmpty();
+	}
+	
+	/**
+	 * Returns the capacity of each queue of a routing key that is not conflated.
+	 * @return Capacity in messages.
+	 */
+	int getCapacityPerTopic()
+	{
+		return m_capacityPerTopic;
+	}
+	
+	/**
+	 * Returns whether the store has messages of routing keys that are not conflated.
+	 * @return True if such messages exist, otherwise false.
+	 */
+	synchronized boolean hasUnconflatedMessages()
+	{
+		return m_count > m_conflatedCount;
+	}
+	
+	/**
+	 * Returns whether the store is empty. This needs no locking.
+	 * @return True if empty, otherwise false.
+	 */
+	boolean isEmpty()
+	{
+		return m_count == 0;
+	}
+	
+	/**
+	 * Adds a message. If the queue of the routing key is full, the oldest
+	 * message of the queue is dropped. The queue of a conflated routing key
+	 * is always full with one message.
+	 * @param msg Message.
+	 */
+	synchronized void add(ReceivedMessage msg)
+	{
+		String key = msg.getRoutingKey();
+		ArrayDeque<StoredMessage> queue = m_queues.get(key);
+		
+		if (queue == null)
+		{
+			queue = new ArrayDeque<>();
+			m_queues.put(key, queue);
+		}
+		
+		boolean conflated = isConflated(key);
+		
+		if (queue.size() >= (conflated ? 1 : m_capacityPerTopic))
+		{
+			// If the body is pooled, its buffer can be reused
+			queue.pollFirst().message.release();
+			--m_count;
+			m_metrics.recordDropped(key);
+		}
+		else if (conflated)
+		{
+			++m_conflatedCount;
+		}
+		
+		queue.addLast(new StoredMessage(m_nextSequence++, msg));
+		++m_count;
+	}
+	
+	/**
+	 * Retrieves the oldest message of a routing key.
+	 * @param routingKey Routing key.
+	 * @return Message, or null if there is none.
+	 */
+	synchronized ReceivedMessage poll(String routingKey)
+	{
+		ArrayDeque<StoredMessage> queue = m_queues.get(routingKey);
+		return queue == null ? null : pollFrom(routingKey, queue);
+	}
+	
+	/**
+	 * Returns the count of messages of a routing key.
+	 * @param routingKey Routing key.
+	 * @return Count.
+	 */
+	synchronized int getCount(String routingKey)
+	{
+		ArrayDeque<StoredMessage> queue = m_queues.get(routingKey);
+		return queue == null ? 0 : queue.size();
+	}
+	
+	/**
+	 * Retrieves the message that arrived first, regardless of routing key.
+	 * This takes time in proportion to the count of routing keys that have messages.
+	 * @return Message, or null if the store is empty.
+	 */
+	synchronized ReceivedMessage pollOldest()
+	{
+		String oldestKey = null;
+		ArrayDeque<StoredMessage> oldestQueue = null;
+		long oldestSequence = Long.MAX_VALUE;
+		
+		for (Map.Entry<String, ArrayDeque<StoredMessage>> e : m_queues.entrySet())
+		{
+			long sequence = e.getValue().peekFirst().sequence;
+			
+			if (sequence < oldestSequence)
+			{
+				oldestSequence = sequence;
+				oldestKey = e.getKey();
+				oldestQueue = e.getValue();
+			}
+		}
+		
+		return oldestQueue == null ? null : pollFrom(oldestKey, oldestQueue);
+	}
+	
+	/**
+	 * Retrieves messages in the order of arrival, regardless of routing key.
+	 * @param messages The list where to add the messages.
+	 * @param maxCount The maximum size of the list.
+	 */
+	synchronized void drainOldest(List<ReceivedMessage> messages, int maxCount)
+	{
+		while (messages.size() < maxCount && m_count > 0)
+		{
+			messages.add(pollOldest());
+		}
+	}
+	
+	private boolean isConflated(String routingKey)
+	{
+		// Expecting the caller to hold the lock of this object
+		Boolean cached = m_conflatedCache.get(routingKey);
+		
+		if (cached != null)
+		{
+			return cached;
+		}
+		
+		boolean conflated = false;
+		
+		for (String pattern : m_conflatedPatterns)
+		{
+			if (TopicMatcher.matches(pattern, routingKey))
+			{
+				conflated = true;
+				break;
+			}
+		}
+		
+		if (m_conflatedCache.size() < conflatedCacheMaxSize)
+		{
+			m_conflatedCache.put(routingKey, conflated);
+		}
+		
+		return conflated;
+	}
+	
+	private ReceivedMessage pollFrom(String routingKey, ArrayDeque<StoredMessage> queue)
+	{
+		// Expecting the caller to hold the lock of this object
+		StoredMessage entry = queue.pollFirst();
+		
+		if (queue.isEmpty())
+		{
+			m_queues.remove(routingKey);
+		}
+		
+		if (isConflated(routingKey))
+		{
+			--m_conflatedCount;
+		}
+		
+		--m_count;
+		return entry.message;
+	}
+	
+	
+	/**
+	 * A message with its arrival sequence number.
+	 */
+	private static class StoredMessage
+	{
+		final long sequence;
+		final ReceivedMessage message;
+		
+		
+		StoredMessage(long seq, ReceivedMessage msg)
+		{
+			sequence = seq;
+			message = msg;
+		}
+	}
+}
@@ -0,0 +1,438 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * A bounded local buffer for messages delivered by a push-based consumer.
+ * The consumer thread of the AMQP client fills the buffer, and the user
+ * dequeues from it without any round trip to the broker. Dequeued messages
+ * are acknowledged in batches, which lets the broker deliver more, unless the
+ * user acknowledges them manually. The buffer is bounded either by message
+ * count, through the prefetch count of the consumer, or by the bytes of the
+ * bodies held in the heap. In the latter case, bodies beyond the budget are
+ * spilled to a memory-mapped file and read back when dequeued, so nothing is
+ * dropped. Either way, the consumer thread never waits.
+ * @author Petri Kannisto
+ */
+class LocalReceiveBuffer
+{
+	/**
+	 * A buffered message. If the body has been spilled, the message has an
+	 * empty body, and the location tells where the body is. The generation
+	 * identifies the consume channel that delivered the message.
+	 */
+	private static class Entry
+	{
+		final ReceivedMessage message;
+		final SpillFile.Location spilled;
+		final int generation;
+		
+		Entry(ReceivedMessage msg, SpillFile.Location loc, int gen)
+		{
+			message = msg;
+			spilled = loc;
+			generation = gen;
+		}
+	}
+	
+	// The messages in the order of delivery. These are synchronized with m_lock.
+	// The count is volatile, so that it can be checked without locking.
+	private final ArrayDeque<Entry> m_queue = new ArrayDeque<>();
+	private final ReentrantLock m_lock = new ReentrantLock();
+	private final Condition m_notEmpty = m_lock.newCondition();
+	private volatile int m_count = 0;
+	
+	// The generation of the current consume channel, and the oldest generation
+	// whose messages are kept. These are synchronized with m_lock.
+	private int m_generation = 0;
+	private int m_oldestKeptGeneration = 0;
+	
+	// If bounded by bytes, the budget for the bodies in the heap, the bytes
+	// currently in the heap, and the file for the rest. Otherwise, the file is null.
+	private final long m_maxHeapBytes;
+	private long m_heapBytes = 0;
+	private final SpillFile m_spill;
+	
+	private final ConnectorMetrics m_metrics;
+	
+	// How many dequeued messages can remain unacknowledged before acknowledging
+	private final int m_ackBatchSize;
+	
+	// Whether dequeued messages are acknowledged by this object
+	private final boolean m_ackOnDequeue;
+	
+	// Acknowledgement state. These are synchronized with m_ackLock.
+	private final Object m_ackLock = new Object();
+	private Channel m_pendingAckChannel = null;
+	private long m_pendingAckTag = 0;
+	private int m_pendingAckCount = 0;
+	
+	
+	/**
+	 * Constructor.
+	 * @param capacity Capacity in messages if bounded by count. This should equal
+	 * the prefetch count of the consumer, which enforces it. Acknowledgements
+	 * are batched accordingly.
+	 * @param maxHeapBytes Budget for the bodies in the heap, or 0 to bound by count instead.
+	 * @param ackOnDequeue Whether to acknowledge messages once dequeued. Otherwise,
+	 * the user acknowledges them.
+	 * @param metrics Metrics to record spilled messages to.
+	 */
+	LocalReceiveBuffer(int capacity, long maxHeapBytes, boolean ackOnDequeue, ConnectorMetrics metrics)
+	{
+		m_maxHeapBytes = maxHeapBytes;
+		m_spill = maxHeapBytes > 0 ? new SpillFile() : null;
+		m_metrics = metrics;
+		m_ackBatchSize = Math.max(1, capacity / 2);
+		m_ackOnDequeue = ackOnDequeue;
+	}
+	
+	/**
+	 * Starts buffering the deliveries of a new consume channel. Call this
+	 * before the consumer of the channel starts.
+	 * @param discardPrevious Whether to discard the messages delivered on the
+	 * previous channels. This is necessary if the queue outlives the channel,
+	 * because the broker then delivers these unacknowledged messages again.
+	 * @return The generation of the channel to pass to put().
+	 */
+	int startGeneration(boolean discardPrevious)
+	{
+		m_lock.lock();
+		
+		try
+		{
+			++m_generation;
+			
+			if (discardPrevious)
+			{
+				m_oldestKeptGeneration = m_generation;
+				discardOlderGenerations();
+			}
+			
+			return m_generation;
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+	}
+	
+	/**
+	 * Adds a message to the buffer. Called from the consumer thread.
+	 * @param msg Message.
+	 * @param generation The generation of the channel that delivered the message.
+	 */
+	void put(ReceivedMessage msg, int generation)
+	{
+		m_lock.lock();
+		
+		try
+		{
+			// A late delivery from a channel whose messages are redelivered
+			if (generation < m_oldestKeptGeneration)
+			{
+				return;
+			}
+			
+			if (m_spill == null)
+			{
+				// This never waits, because the dispatch thread is shared by every
+				// channel of the connection. The prefetch count bounds the buffer,
+				// except that leftovers from a previous channel may exceed it for a
+				// while after a reconnect.
+				m_queue.addLast(new Entry(msg, null, generation));
+			}
+			else
+			{
+				m_queue.addLast(createEntry(msg, generation));
+			}
+			
+			++m_count;
+			m_notEmpty.signal();
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+	}
+	
+	/**
+	 * Takes a message from the buffer.
+	 * @return Message or null if the buffer is empty.
+	 */
+	ReceivedMessage poll()
+	{
+		// Checking without locking first, because the buffer is often empty
+		if (m_count == 0)
+		{
+			return null;
+		}
+		
+		ReceivedMessage msg = null;
+		m_lock.lock();
+		
+		try
+		{
+			msg = pollEntry();
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+		
+		if (msg != null && m_ackOnDequeue)
+		{
+			acknowledge(msg);
+		}
+		
+		return msg;
+	}
+	
+	/**
+	 * Takes a message from the buffer, waiting until one is available or the timeout expires.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return Message or null if the timeout expired.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	ReceivedMessage poll(long timeoutMillis) throws InterruptedException
+	{
+		ReceivedMessage msg = null;
+		long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		m_lock.lockInterruptibly();
+		
+		try
+		{
+			while (m_queue.isEmpty())
+			{
+				if (remainingNanos <= 0)
+				{
+					return null;
+				}
+				
+				remainingNanos = m_notEmpty.awaitNanos(remainingNanos);
+			}
+			
+			msg = pollEntry();
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+		
+		if (m_ackOnDequeue)
+		{
+			acknowledge(msg);
+		}
+		
+		return msg;
+	}
+	
+	/**
+	 * Takes up to the given count of messages from the buffer.
+	 * @param target The list where to add the messages.
+	 * @param maxCount Maximum count.
+	 */
+	void drainTo(List<ReceivedMessage> target, int maxCount)
+	{
+		while (target.size() < maxCount)
+		{
+			ReceivedMessage msg = poll();
+			
+			if (msg == null)
+			{
+				break;
+			}
+			
+			target.add(msg);
+		}
+	}
+	
+	/**
+	 * Returns whether the buffer is empty.
+	 * @return True if empty, otherwise false.
+	 */
+	boolean isEmpty()
+	{
+		return m_count == 0;
+	}
+	
+	/**
+	 * Discards everything in the buffer and deletes any spill files.
+	 */
+	void close()
+	{
+		m_lock.lock();
+		
+		try
+		{
+			m_queue.clear();
+			m_count = 0;
+			m_heapBytes = 0;
+			
+			if (m_spill != null)
+			{
+				m_spill.close();
+			}
+		}
+		finally
+		{
+			m_lock.unlock();
+		}
+	}
+	
+	private Entry createEntry(ReceivedMessage msg, int generation)
+	{
+		// Expecting the caller to hold m_lock
+		
+		int length = msg.getBodyLength();
+		
+		// A message is never spilled into an otherwise empty buffer,
+		// because it would be read back right away
+		if (m_heapBytes + length <= m_maxHeapBytes || m_queue.isEmpty())
+		{
+			m_heapBytes += length;
+			return new Entry(msg, null, generation);
+		}
+		
+		try
+		{
+			SpillFile.Location location = m_spill.append(msg.getBody()); // throws IOException
+			m_metrics.recordSpilled(length);
+			return new Entry(msg.withBody(new byte[0]), location, generation);
+		}
+		catch (IOException e)
+		{
+			// Exceeding the budget is better than losing the message
+			m_heapBytes += length;
+			return new Entry(msg, null, generation);
+		}
+	}
+	
+	private void discardOlderGenerations()
+	{
+		// Expecting the caller to hold m_lock
+		
+		Iterator<Entry> iterator = m_queue.iterator();
+		
+		while (iterator.hasNext())
+		{
+			Entry entry = iterator.next();
+			
+			if (entry.generation >= m_oldestKeptGeneration)
+			{
+				continue;
+			}
+			
+			iterator.remove();
+			--m_count;
+			
+			if (entry.spilled != null)
+			{
+				m_spill.discard(entry.spilled);
+			}
+			else if (m_spill != null)
+			{
+				m_heapBytes -= entry.message.getBodyLength();
+			}
+		}
+	}
+	
+	private ReceivedMessage pollEntry()
+	{
+		// Expecting the caller to hold m_lock
+		
+		Entry entry = m_queue.pollFirst();
+		
+		if (entry == null)
+		{
+			return null;
+		}
+		
+		--m_count;
+		
+		if (entry.spilled != null)
+		{
+			return entry.message.withBody(m_spill.read(entry.spilled));
+		}
+		
+		if (m_spill != null)
+		{
+			m_heapBytes -= entry.message.getBodyLength();
+		}
+		
+		return entry.message;
+	}
+	
+	private void acknowledge(ReceivedMessage msg)
+	{
+		synchronized (m_ackLock)
+		{
+			// Delivery tags are channel specific
+			if (m_pendingAckChannel != null && m_pendingAckChannel != msg.getDeliveryChannel())
+			{
+				flushAcks();
+			}
+			
+			// With multiple threads dequeuing, the messages may get here in a
+			// slightly different order. Acknowledging up to the highest tag is
+			// still right, because the lower ones have been dequeued as well.
+			m_pendingAckChannel = msg.getDeliveryChannel();
+			m_pendingAckTag = Math.max(m_pendingAckTag, msg.getChannelDeliveryTag());
+			++m_pendingAckCount;
+			
+			// Acknowledge when enough have been dequeued or when the buffer
+			// has become empty. Otherwise, the broker would wait for acks
+			// instead of sending more.
+			if (m_pendingAckCount >= m_ackBatchSize || m_count == 0)
+			{
+				flushAcks();
+			}
+		}
+	}
+	
+	private void flushAcks()
+	{
+		// Expecting the caller to hold m_ackLock
+		
+		try
+		{
+			// Acknowledge all dequeued messages at once. This works because
+			// the messages are dequeued in the order of delivery.
+			// If the channel has closed, the broker has already requeued the
+			// messages, and there is nothing to acknowledge.
+			if (m_pendingAckChannel != null && m_pendingAckChannel.isOpen())
+			{
+				m_pendingAckChannel.basicAck(m_pendingAckTag, true);
+			}
+		}
+		catch (ShutdownSignalException | IOException e)
+		{
+			// No can do! The channel has closed.
+		}
+		
+		m_pendingAckChannel = null;
+		m_pendingAckTag = 0;
+		m_pendingAckCount = 0;
+	}
+}
@@ -0,0 +1,197 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * An in-process topic exchange. The routing follows the semantics of an AMQP
+ * topic exchange. Exchanges are identified by name within the JVM, so all
+ * loopback connectors with the same exchange name communicate with each other.
+ * @author Petri Kannisto
+ */
+class LoopbackExchange
+{
+	// Constants
+	// Routes are cached for at most this many routing keys
+	private static final int routeCacheMaxSize = 10000;
+	
+	/**
+	 * The bindings and the routes resolved with them. This is immutable
+	 * except for the route cache. Changing bindings replaces the object,
+	 * so that a route cached with old bindings is never used with new ones.
+	 */
+	private static class Routing
+	{
+		final List<Binding> bindings;
+		final ConcurrentHashMap<String, LoopbackQueue[]> routeCache = new ConcurrentHashMap<>();
+		
+		Routing(List<Binding> b)
+		{
+			bindings = b;
+		}
+	}
+	
+	/**
+	 * Binds a queue with a topic pattern.
+	 */
+	private static class Binding
+	{
+		final LoopbackQueue queue;
+		final String pattern;
+		
+		Binding(LoopbackQueue q, String p)
+		{
+			queue = q;
+			pattern = p;
+		}
+	}
+	
+	// The exchanges by name
+	private static final ConcurrentHashMap<String, LoopbackExchange> s_exchanges = new ConcurrentHashMap<>();
+	
+	private volatile Routing m_routing = new Routing(Collections.<Binding>emptyList());
+	
+	
+	private LoopbackExchange()
+	{
+		// Use get() to create instances
+	}
+	
+	/**
+	 * Gets the exchange with the given name. If none exists, one is created.
+	 * @param name Exchange name.
+	 * @return Exchange.
+	 */
+	static LoopbackExchange get(String name)
+	{
+		LoopbackExchange exchange = s_exchanges.get(name);
+		
+		if (exchange == null)
+		{
+			LoopbackExchange created = new LoopbackExchange();
+			exchange = s_exchanges.putIfAbsent(name, created);
+			
+			if (exchange == null)
+			{
+				exchange = created;
+			}
+		}
+		
+		return exchange;
+	}
+	
+	/**
+	 * Binds a queue to a topic pattern.
+	 * @param queue Queue.
+	 * @param pattern Topic pattern.
+	 */
+	synchronized void bind(LoopbackQueue queue, String pattern)
+	{
+		ArrayList<Binding> bindings = new ArrayList<>(m_routing.bindings);
+		bindings.add(new Binding(queue, pattern));
+		m_routing = new Routing(bindings);
+	}
+	
+	/**
+	 * Removes the binding of a queue to a topic pattern.
+	 * @param queue Queue.
+	 * @param pattern Topic pattern.
+	 */
+	synchronized void unbind(LoopbackQueue queue, String pattern)
+	{
+		ArrayList<Binding> bindings = new ArrayList<>(m_routing.bindings.size());
+		
+		for (Binding b : m_routing.bindings)
+		{
+			if (b.queue != queue || !b.pattern.equals(pattern))
+			{
+				bindings.add(b);
+			}
+		}
+		
+		m_routing = new Routing(bindings);
+	}
+	
+	/**
+	 * Removes all the bindings of a queue.
+	 * @param queue Queue.
+	 */
+	synchronized void unbindAll(LoopbackQueue queue)
+	{
+		ArrayList<Binding> bindings = new ArrayList<>(m_routing.bindings.size());
+		
+		for (Binding b : m_routing.bindings)
+		{
+			if (b.queue != queue)
+			{
+				bindings.add(b);
+			}
+		}
+		
+		m_routing = new Routing(bindings);
+	}
+	
+	/**
+	 * Delivers a message to each queue bound with a matching pattern.
+	 * The message is discarded if no queue matches.
+	 * @param routingKey Routing key.
+	 * @param props Message properties.
+	 * @param body Message body.
+	 */
+	void publish(String routingKey, BasicProperties props, byte[] body)
+	{
+		Routing routing = m_routing;
+		LoopbackQueue[] queues = routing.routeCache.get(routingKey);
+		
+		if (queues == null)
+		{
+			queues = resolveRoute(routing.bindings, routingKey);
+			
+			if (routing.routeCache.size() < routeCacheMaxSize)
+			{
+				routing.routeCache.put(routingKey, queues);
+			}
+		}
+		
+		long now = System.currentTimeMillis();
+		
+		for (LoopbackQueue q : queues)
+		{
+			// Each queue gets a copy of its own like from a broker, so that neither
+			// another receiver nor the sender reusing its array affects the body
+			q.offer(new ReceivedMessage(routingKey, props, body.clone(), now));
+		}
+	}
+	
+	private LoopbackQueue[] resolveRoute(List<Binding> bindings, String routingKey)
+	{
+		// Each queue gets the message only once even if multiple bindings match
+		ArrayList<LoopbackQueue> queues = new ArrayList<>();
+		
+		for (Binding b : bindings)
+		{
+			if (!queues.contains(b.queue) && TopicMatcher.matches(b.pattern, routingKey))
+			{
+				queues.add(b.queue);
+			}
+		}
+		
+		return queues.toArray(new LoopbackQueue[queues.size()]);
+	}
+}
@@ -0,0 +1,125 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A queue of an in-process exchange. Enqueuing and dequeuing are lock-free.
+ * Only a receiver that waits for a message takes a lock.
+ * @author Petri Kannisto
+ */
+class LoopbackQueue
+{
+	private final ConcurrentLinkedQueue<ReceivedMessage> m_queue = new ConcurrentLinkedQueue<>();
+	
+	// Receivers waiting for a message. Enqueuing only notifies if there are any.
+	private final AtomicInteger m_waiterCount = new AtomicInteger(0);
+	private final Object m_waitLock = new Object();
+	
+	
+	/**
+	 * Adds a message to the queue.
+	 * @param msg Message.
+	 */
+	void offer(ReceivedMessage msg)
+	{
+		m_queue.offer(msg);
+		
+		if (m_waiterCount.get() > 0)
+		{
+			synchronized (m_waitLock)
+			{
+				m_waitLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Takes a message from the queue.
+	 * @return Message or null if the queue is empty.
+	 */
+	ReceivedMessage poll()
+	{
+		return m_queue.poll();
+	}
+	
+	/**
+	 * Takes a message from the queue, waiting until one is available or the timeout expires.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return Message or null if the timeout expired.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	ReceivedMessage poll(long timeoutMillis) throws InterruptedException
+	{
+		ReceivedMessage msg = m_queue.poll();
+		
+		if (msg != null || timeoutMillis <= 0)
+		{
+			return msg;
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		// The waiter is registered before checking the queue again, so that
+		// a message enqueued meanwhile will notify.
+		m_waiterCount.incrementAndGet();
+		
+		try
+		{
+			synchronized (m_waitLock)
+			{
+				while ((msg = m_queue.poll()) == null)
+				{
+					long remainingNanos = deadline - System.nanoTime();
+					
+					if (remainingNanos <= 0)
+					{
+						return null;
+					}
+					
+					TimeUnit.NANOSECONDS.timedWait(m_waitLock, remainingNanos);
+				}
+				
+				return msg;
+			}
+		}
+		finally
+		{
+			m_waiterCount.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Takes up to the given count of messages from the queue.
+	 * @param target The list where to add the messages.
+	 * @param maxCount Maximum count.
+	 */
+	void drainTo(List<ReceivedMessage> target, int maxCount)
+	{
+		while (target.size() < maxCount)
+		{
+			ReceivedMessage msg = m_queue.poll();
+			
+			if (msg == null)
+			{
+				break;
+			}
+			
+			target.add(msg);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Transports messages within the JVM without a broker. The transport uses
+ * an in-process topic exchange with the name of the AMQP exchange. Publishing
+ * is synchronous, so there is never anything unconfirmed.
+ * @author Petri Kannisto
+ */
+class LoopbackTransport implements MessageTransport
+{
+	private final AmqpPropsManager m_amqpProperties;
+	
+	// The topics being listened to. Binding changes are synchronized with the lock of this object.
+	private final CopyOnWriteArraySet<String> m_topics;
+	
+	private final LoopbackQueue m_queue = new LoopbackQueue();
+	
+	// The exchange. Null until opened. Assigned with the lock of this object.
+	private volatile LoopbackExchange m_exchange = null;
+	
+	private volatile boolean m_objectAlreadyClosed = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param amqpProps Connection properties. Only the exchange name is used.
+	 * @param topics Topics to listen to.
+	 */
+	LoopbackTransport(AmqpPropsManager amqpProps, List<String> topics)
+	{
+		m_amqpProperties = amqpProps;
+		m_topics = new CopyOnWriteArraySet<>(topics);
+	}
+	
+	@Override
+	public void open()
+	{
+		if (m_exchange != null) return;
+		
+		synchronized (this)
+		{
+			if (m_objectAlreadyClosed)
+			{
+				throw new RuntimeException("Cannot use connector because the user has closed it");
+			}
+			
+			if (m_exchange != null) return;
+			
+			LoopbackExchange exchange = LoopbackExchange.get(m_amqpProperties.getExchange());
+			
+			for (String t : m_topics)
+			{
+				exchange.bind(m_queue, t);
+			}
+			
+			m_exchange = exchange;
+		}
+	}
+	
+	@Override
+	public synchronized void close()
+	{
+		m_objectAlreadyClosed = true;
+		
+		if (m_exchange != null)
+		{
+			m_exchange.unbindAll(m_queue);
+		}
+	}
+	
+	@Override
+	public synchronized void subscribe(String topic)
+	{
+		if (m_topics.add(topic) && m_exchange != null && !m_objectAlreadyClosed)
+		{
+			m_exchange.bind(m_queue, topic);
+		}
+	}
+	
+	@Override
+	public synchronized void unsubscribe(String topic)
+	{
+		if (m_topics.remove(topic) && m_exchange != null)
+		{
+			m_exchange.unbind(m_queue, topic);
+		}
+	}
+	
+	@Override
+	public String[] getTopics()
+	{
+		return m_topics.toArray(new String[0]);
+	}
+	
+	@Override
+	public ReceivedMessage receive()
+	{
+		open();
+		return m_queue.poll();
+	}
+	
+	@Override
+	public ReceivedMessage receive(long timeoutMillis) throws InterruptedException
+	{
+		open();
+		return m_queue.poll(timeoutMillis);
+	}
+	
+	@Override
+	public void receiveInto(List<ReceivedMessage> messages, int maxCount)
+	{
+		open();
+		m_queue.drainTo(messages, maxCount);
+	}
+	
+	@Override
+	public void publish(String topic, BasicProperties props, byte[] msg)
+	{
+		open();
+		
+		// The exchange copies the body for each queue
+		m_exchange.publish(topic, props, msg);
+	}
+	
+	@Override
+	public void publishAll(String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent)
+	{
+		for (int i = 0; i < msgs.length; ++i)
+		{
+			publish(topics[i], props[i], msgs[i]);
+			sent[i] = true;
+		}
+	}
+	
+	@Override
+	public int getJournaledCount()
+	{
+		// The exchange is always reachable
+		return 0;
+	}
+	
+	@Override
+	public void ackUpTo(long deliveryTag)
+	{
+		// Nothing to acknowledge without a broker
+	}
+	
+	@Override
+	public void flushAcks()
+	{
+		// Nothing to acknowledge without a broker
+	}
+	
+	@Override
+	public boolean awaitConfirms(long timeoutMillis)
+	{
+		return true;
+	}
+	
+	@Override
+	public int getUnconfirmedCount()
+	{
+		return 0;
+	}
+	
+	@Override
+	public long getFailedConfirmCount()
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,145 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.List;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Moves messages between the connector and the other participants. The
+ * transport subscribes to the topics of the connector. Each method opens
+ * the transport if it is not open yet, except for subscribing and
+ * unsubscribing, which only take effect when the transport opens next.
+ * @author Petri Kannisto
+ */
+interface MessageTransport
+{
+	/**
+	 * Opens the transport if not open.
+	 * @throws CommunicationException Thrown if opening fails.
+	 */
+	void open() throws CommunicationException;
+	
+	/**
+	 * Closes the transport. After this, the transport can no longer be used.
+	 */
+	void close();
+	
+	/**
+	 * Starts listening to a topic. If the transport is open, the topic is bound
+	 * immediately. In any case, it is bound whenever the transport (re)opens.
+	 * @param topic Topic pattern.
+	 * @throws CommunicationException Thrown if binding fails. The topic remains
+	 * subscribed and will be bound when the transport reopens.
+	 */
+	void subscribe(String topic) throws CommunicationException;
+	
+	/**
+	 * Stops listening to a topic. Messages already received are not affected.
+	 * @param topic Topic pattern.
+	 * @throws CommunicationException Thrown if unbinding fails. The topic is no
+	 * longer subscribed and will not be bound when the transport reopens.
+	 */
+	void unsubscribe(String topic) throws CommunicationException;
+	
+	/**
+	 * Gets the topics currently listened to.
+	 * @return Topic patterns.
+	 */
+	String[] getTopics();
+	
+	/**
+	 * Gets a received message without waiting.
+	 * @return Message or null if nothing has been received.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	ReceivedMessage receive() throws CommunicationException;
+	
+	/**
+	 * Gets a received message, waiting until one arrives or the timeout expires.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return Message or null if nothing was received before the timeout.
+	 * @throws CommunicationException Thrown if communication fails.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	ReceivedMessage receive(long timeoutMillis) throws CommunicationException, InterruptedException;
+	
+	/**
+	 * Gets received messages without waiting.
+	 * @param messages The list where to add the messages.
+	 * @param maxCount The maximum size of the list.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	void receiveInto(List<ReceivedMessage> messages, int maxCount) throws CommunicationException;
+	
+	/**
+	 * Publishes a message.
+	 * @param topic Topic.
+	 * @param props Message properties.
+	 * @param msg Message.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	void publish(String topic, BasicProperties props, byte[] msg) throws CommunicationException;
+	
+	/**
+	 * Publishes multiple messages in order. If publishing fails, the remaining
+	 * messages are not published.
+	 * @param topics Topics.
+	 * @param props Message properties. The same index refers to the same message.
+	 * @param msgs Messages.
+	 * @param sent For each message, this will indicate whether it was published.
+	 * @throws CommunicationException Thrown if the transport cannot be opened.
+	 */
+	void publishAll(String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent) throws CommunicationException;
+	
+	/**
+	 * Gets the count of messages held in the outbound journal, waiting to be published.
+	 * @return Count, or 0 if the journal is not enabled.
+	 */
+	int getJournaledCount();
+	
+	/**
+	 * Acknowledges all received messages up to the given delivery tag. Only
+	 * applies if manual acknowledgement is enabled; otherwise, this does nothing.
+	 * @param deliveryTag Delivery tag.
+	 * @throws CommunicationException Thrown if sending the acknowledgement fails.
+	 */
+	void ackUpTo(long deliveryTag) throws CommunicationException;
+	
+	/**
+	 * Sends any pending acknowledgement to the broker.
+	 * @throws CommunicationException Thrown if sending the acknowledgement fails.
+	 */
+	void flushAcks() throws CommunicationException;
+	
+	/**
+	 * Waits until all published messages have been confirmed or the timeout expires.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return True if nothing remains unconfirmed, otherwise false.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	boolean awaitConfirms(long timeoutMillis) throws InterruptedException;
+	
+	/**
+	 * Gets the count of published messages not yet confirmed.
+	 * @return Unconfirmed count.
+	 */
+	int getUnconfirmedCount();
+	
+	/**
+	 * Gets the total count of published messages that were rejected or lost before a confirm.
+	 * @return Failed count.
+	 */
+	long getFailedConfirmCount();
+}
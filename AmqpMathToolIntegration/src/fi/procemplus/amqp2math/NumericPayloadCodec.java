@@ -0,0 +1,144 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes and decodes numeric arrays as message bodies. The values are
+ * written back to back in little-endian byte order without any header.
+ * The element type is indicated with the content type of the message.
+ * @author Petri Kannisto
+ */
+class NumericPayloadCodec
+{
+	// Content types
+	static final String contentTypeFloat64 = "application/x-procemplus-float64le";
+	static final String contentTypeFloat32 = "application/x-procemplus-float32le";
+	static final String contentTypeInt64 = "application/x-procemplus-int64le";
+	static final String contentTypeInt32 = "application/x-procemplus-int32le";
+	
+	
+	private NumericPayloadCodec()
+	{
+		// Static members only
+	}
+	
+	
+	// *** Encoding ***
+	
+	static byte[] encode(double[] values)
+	{
+		ByteBuffer buffer = allocate(values.length * Double.BYTES);
+		buffer.asDoubleBuffer().put(values);
+		return buffer.array();
+	}
+	
+	static byte[] encode(float[] values)
+	{
+		ByteBuffer buffer = allocate(values.length * Float.BYTES);
+		buffer.asFloatBuffer().put(values);
+		return buffer.array();
+	}
+	
+	static byte[] encode(long[] values)
+	{
+		ByteBuffer buffer = allocate(values.length * Long.BYTES);
+		buffer.asLongBuffer().put(values);
+		return buffer.array();
+	}
+	
+	static byte[] encode(int[] values)
+	{
+		ByteBuffer buffer = allocate(values.length * Integer.BYTES);
+		buffer.asIntBuffer().put(values);
+		return buffer.array();
+	}
+	
+	
+	// *** Decoding ***
+	
+	static double[] decodeDoubles(byte[] body)
+	{
+		return decodeDoubles(ByteBuffer.wrap(body));
+	}
+	
+	static double[] decodeDoubles(ByteBuffer body)
+	{
+		double[] values = new double[getElementCount(body, Double.BYTES)];
+		littleEndian(body).asDoubleBuffer().get(values);
+		return values;
+	}
+	
+	static float[] decodeFloats(byte[] body)
+	{
+		return decodeFloats(ByteBuffer.wrap(body));
+	}
+	
+	static float[] decodeFloats(ByteBuffer body)
+	{
+		float[] values = new float[getElementCount(body, Float.BYTES)];
+		littleEndian(body).asFloatBuffer().get(values);
+		return values;
+	}
+	
+	static long[] decodeLongs(byte[] body)
+	{
+		return decodeLongs(ByteBuffer.wrap(body));
+	}
+	
+	static long[] decodeLongs(ByteBuffer body)
+	{
+		long[] values = new long[getElementCount(body, Long.BYTES)];
+		littleEndian(body).asLongBuffer().get(values);
+		return values;
+	}
+	
+	static int[] decodeInts(byte[] body)
+	{
+		return decodeInts(ByteBuffer.wrap(body));
+	}
+	
+	static int[] decodeInts(ByteBuffer body)
+	{
+		int[] values = new int[getElementCount(body, Integer.BYTES)];
+		littleEndian(body).asIntBuffer().get(values);
+		return values;
+	}
+	
+	
+	// *** Private functions ***
+	
+	private static ByteBuffer allocate(int size)
+	{
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static ByteBuffer littleEndian(ByteBuffer body)
+	{
+		// Duplicating, so that the position and byte order of the caller's buffer do not change
+		return body.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static int getElementCount(ByteBuffer body, int elementSize)
+	{
+		if (body.remaining() % elementSize != 0)
+		{
+			throw new IllegalArgumentException(String.format("Body length %d is not a multiple of %d",
+					body.remaining(), elementSize));
+		}
+		
+		return body.remaining() / elementSize;
+	}
+}
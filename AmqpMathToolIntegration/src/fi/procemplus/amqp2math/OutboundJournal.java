@@ -0,0 +1,221 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Holds outbound messages while they cannot be published, so that they can be
+ * published later in the same order. The bodies are appended to memory-mapped
+ * files (see SpillFile), whereas the topics and properties remain in the heap.
+ * The journal is active from the first message appended until a drain finds
+ * it empty. Meanwhile, new messages must be appended too, or they would
+ * overtake the journaled ones. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class OutboundJournal
+{
+	/**
+	 * A journaled message. The body is either in the heap or in the file.
+	 */
+	static class Entry
+	{
+		private final String m_topic;
+		private final BasicProperties m_properties;
+		private final int m_length;
+		private byte[] m_body;
+		private SpillFile.Location m_location;
+		
+		private Entry(String topic, BasicProperties props, int length)
+		{
+			m_topic = topic;
+			m_properties = props;
+			m_length = length;
+		}
+		
+		/**
+		 * Returns the topic.
+		 * @return Topic.
+		 */
+		String getTopic()
+		{
+			return m_topic;
+		}
+		
+		/**
+		 * Returns the message properties.
+		 * @return Properties.
+		 */
+		BasicProperties getProperties()
+		{
+			return m_properties;
+		}
+		
+		/**
+		 * Returns the body. Only available for an entry taken from the journal.
+		 * @return Body.
+		 */
+		byte[] getBody()
+		{
+			return m_body;
+		}
+	}
+	
+	private final long m_maxBytes;
+	
+	// These are synchronized with the lock of this object
+	private final ArrayDeque<Entry> m_entries = new ArrayDeque<>();
+	private final SpillFile m_file;
+	private long m_byteCount = 0;
+	
+	// The count of messages taken but neither confirmed nor put back yet
+	private int m_takenCount = 0;
+	
+	// Whether the journal is active. This can be checked without locking.
+	private volatile boolean m_active = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param maxBytes The maximum total length of the journaled bodies.
+	 */
+	OutboundJournal(long maxBytes)
+	{
+		m_maxBytes = maxBytes;
+		
+		// A small journal needs no larger files than its limit
+		m_file = new SpillFile((int)Math.min(maxBytes, SpillFile.defaultSegmentSize));
+	}
+	
+	/**
+	 * Returns whether the journal is active, i.e., whether messages must be
+	 * appended here rather than published.
+	 * @return True if active, otherwise false.
+	 */
+	boolean isActive()
+	{
+		return m_active;
+	}
+	
+	/**
+	 * Appends a message and activates the journal.
+	 * @param topic Topic.
+	 * @param props Message properties.
+	 * @param body Body.
+	 * @return True if appended, or false if the journal is full.
+	 * @throws IOException Thrown if writing the file fails.
+	 */
+	synchronized boolean append(String topic, BasicProperties props, byte[] body) throws IOException
+	{
+		if (m_byteCount + body.length > m_maxBytes)
+		{
+			return false;
+		}
+		
+		Entry entry = new Entry(topic, props, body.length);
+		entry.m_location = m_file.append(body); // throws IOException
+		m_entries.addLast(entry);
+		m_byteCount += body.length;
+		m_active = true;
+		return true;
+	}
+	
+	/**
+	 * Takes messages from the start of the journal. If the journal is empty
+	 * already, it is deactivated, and new messages can be published directly
+	 * again. Thus, the caller must confirm the previously taken messages (or
+	 * put them back) before taking again.
+	 * @param maxCount The maximum count of messages.
+	 * @return Messages in order. Empty if the journal is empty.
+	 */
+	synchronized List<Entry> take(int maxCount)
+	{
+		if (m_entries.isEmpty())
+		{
+			m_active = false;
+		}
+		
+		int count = Math.min(maxCount, m_entries.size());
+		ArrayList<Entry> taken = new ArrayList<>(count);
+		
+		for (int i = 0; i < count; ++i)
+		{
+			Entry entry = m_entries.pollFirst();
+			
+			if (entry.m_location != null)
+			{
+				entry.m_body = m_file.read(entry.m_location);
+				entry.m_location = null;
+			}
+			
+			m_byteCount -= entry.m_length;
+			taken.add(entry);
+		}
+		
+		m_takenCount += count;
+		return taken;
+	}
+	
+	/**
+	 * Returns taken messages to the start of the journal, because publishing
+	 * them failed. The bodies remain in the heap, which is fine for a few messages.
+	 * @param entries Messages in the order they were taken.
+	 */
+	synchronized void putBack(List<Entry> entries)
+	{
+		for (int i = entries.size() - 1; i >= 0; --i)
+		{
+			Entry entry = entries.get(i);
+			m_entries.addFirst(entry);
+			m_byteCount += entry.m_length;
+		}
+		
+		m_takenCount -= entries.size();
+	}
+	
+	/**
+	 * Tells that taken messages have been published and confirmed by the broker.
+	 * @param entries Messages.
+	 */
+	synchronized void confirm(List<Entry> entries)
+	{
+		m_takenCount -= entries.size();
+	}
+	
+	/**
+	 * Returns the count of journaled messages, including those taken but not
+	 * yet confirmed.
+	 * @return Count.
+	 */
+	synchronized int getCount()
+	{
+		return m_entries.size() + m_takenCount;
+	}
+	
+	/**
+	 * Discards all messages and deletes the files.
+	 */
+	synchronized void close()
+	{
+		m_entries.clear();
+		m_file.close();
+		m_byteCount = 0;
+		m_takenCount = 0;
+		m_active = false;
+	}
+}
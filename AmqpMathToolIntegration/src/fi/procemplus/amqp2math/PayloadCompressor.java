@@ -0,0 +1,172 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses message bodies. The compressed format is zlib
+ * (RFC 1950), which the content encoding "deflate" refers to. Only bodies of
+ * at least the threshold size on the selected topics are compressed, and only
+ * if that makes them smaller. Each thread has a compressor of its own, because
+ * creating one for every message would be costly. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class PayloadCompressor
+{
+	// Constants
+	/**
+	 * The content encoding of compressed messages.
+	 */
+	static final String encodingDeflate = "deflate";
+	
+	private final int m_level;
+	private final int m_threshold;
+	private final String[] m_topics;
+	private final ConnectorMetrics m_metrics;
+	
+	private final ThreadLocal<Deflater> m_deflater = new ThreadLocal<Deflater>()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater(m_level);
+		}
+	};
+	
+	private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>()
+	{
+		@Override
+		protected Inflater initialValue()
+		{
+			return new Inflater();
+		}
+	};
+	
+	
+	/**
+	 * Constructor.
+	 * @param level Compression level of Deflater.
+	 * @param threshold The minimum length of a body to compress.
+	 * @param topics Topic patterns to compress, or an empty array for all topics.
+	 * @param metrics Metrics to record compression to.
+	 */
+	PayloadCompressor(int level, int threshold, String[] topics, ConnectorMetrics metrics)
+	{
+		m_level = level;
+		m_threshold = threshold;
+		m_topics = topics;
+		m_metrics = metrics;
+	}
+	
+	/**
+	 * Compresses a body if it is worth it.
+	 * @param topic The topic of the message.
+	 * @param body Body.
+	 * @return Compressed body, or null if the body is not to be compressed.
+	 */
+	byte[] compress(String topic, byte[] body)
+	{
+		if (body.length < m_threshold || !appliesTo(topic))
+		{
+			return null;
+		}
+		
+		long startNanos = System.nanoTime();
+		Deflater deflater = m_deflater.get();
+		deflater.reset();
+		deflater.setInput(body);
+		deflater.finish();
+		
+		// Anything not smaller than the original is not worth sending
+		byte[] output = new byte[body.length];
+		int length = 0;
+		
+		while (!deflater.finished() && length < output.length)
+		{
+			length += deflater.deflate(output, length, output.length - length);
+		}
+		
+		boolean worthIt = deflater.finished() && length < body.length;
+		m_metrics.recordCompressed(body.length, worthIt ? length : body.length, System.nanoTime() - startNanos);
+		return worthIt ? Arrays.copyOf(output, length) : null;
+	}
+	
+	/**
+	 * Decompresses a body.
+	 * @param body Compressed body.
+	 * @param maxLength The maximum length of the decompressed body.
+	 * @param metrics Metrics to record decompression to.
+	 * @return Body.
+	 * @throws DataFormatException Thrown if the body is not valid compressed data.
+	 * @throws CommunicationException Thrown if the decompressed body would exceed the maximum length.
+	 */
+	static byte[] decompress(byte[] body, int maxLength, ConnectorMetrics metrics) throws DataFormatException, CommunicationException
+	{
+		long startNanos = System.nanoTime();
+		Inflater inf = inflater.get();
+		inf.reset();
+		inf.setInput(body);
+		
+		// Time series compress well, so starting from a few times the input
+		byte[] output = new byte[(int)Math.min(Math.max(64, body.length * 4L), maxLength)];
+		int length = 0;
+		
+		while (!inf.finished())
+		{
+			if (length == output.length)
+			{
+				// Otherwise, a tiny message could expand to exhaust the memory
+				if (length >= maxLength)
+				{
+					throw new CommunicationException("Decompressed message exceeds " + maxLength + " bytes", null);
+				}
+				
+				output = Arrays.copyOf(output, (int)Math.min(output.length * 2L, maxLength));
+			}
+			
+			int count = inf.inflate(output, length, output.length - length); // throws DataFormatException
+			
+			if (count == 0 && (inf.needsInput() || inf.needsDictionary()))
+			{
+				throw new DataFormatException("Truncated compressed data");
+			}
+			
+			length += count;
+		}
+		
+		metrics.recordDecompressed(System.nanoTime() - startNanos);
+		return length == output.length ? output : Arrays.copyOf(output, length);
+	}
+	
+	private boolean appliesTo(String topic)
+	{
+		if (m_topics.length == 0)
+		{
+			return true;
+		}
+		
+		for (String pattern : m_topics)
+		{
+			if (TopicMatcher.matches(pattern, topic))
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+}
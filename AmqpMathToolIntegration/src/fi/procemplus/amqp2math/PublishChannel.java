@@ -0,0 +1,157 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+
+/**
+ * A channel dedicated to publishing. Publishing is serialized per channel,
+ * so that publisher confirm sequence numbers match the order of publishing.
+ * To let multiple threads publish in parallel, use multiple channels.
+ * @author Petri Kannisto
+ */
+class PublishChannel
+{
+	private final Channel m_channel;
+	private final PublishConfirmTracker m_confirmTracker;
+	
+	
+	/**
+	 * Constructor.
+	 * @param channel Channel.
+	 * @param confirmTracker Confirm tracker or null if publisher confirms are not used.
+	 * The channel must already be in confirm mode.
+	 */
+	PublishChannel(Channel channel, PublishConfirmTracker confirmTracker)
+	{
+		m_channel = channel;
+		m_confirmTracker = confirmTracker;
+	}
+	
+	/**
+	 * Returns the channel.
+	 * @return Channel.
+	 */
+	Channel getChannel()
+	{
+		return m_channel;
+	}
+	
+	/**
+	 * Returns the confirm tracker.
+	 * @return Confirm tracker or null if publisher confirms are not used.
+	 */
+	PublishConfirmTracker getConfirmTracker()
+	{
+		return m_confirmTracker;
+	}
+	
+	/**
+	 * Publishes a message.
+	 * @param exchange Exchange.
+	 * @param topic Topic.
+	 * @param props Message properties.
+	 * @param msg Message.
+	 * @throws IOException Thrown if publishing fails.
+	 */
+	void publish(String exchange, String topic, BasicProperties props, byte[] msg) throws IOException
+	{
+		if (m_confirmTracker == null)
+		{
+			synchronized (this)
+			{
+				m_channel.basicPublish(exchange, topic, props, msg);
+			}
+			
+			return;
+		}
+		
+		reserveConfirm(); // throws IOException
+		
+		synchronized (this)
+		{
+			publishWithConfirm(exchange, topic, props, msg); // throws IOException
+		}
+	}
+	
+	/**
+	 * Publishes multiple messages back to back. Other threads cannot publish in between.
+	 * @param exchange Exchange.
+	 * @param topics Topics.
+	 * @param props Message properties. The same index refers to the same message.
+	 * @param msgs Messages.
+	 * @param sent For each message, this will indicate whether it was published.
+	 * @throws IOException Thrown if publishing fails. Any remaining messages are not published.
+	 */
+	synchronized void publishAll(String exchange, String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent)
+			throws IOException
+	{
+		for (int i = 0; i < msgs.length; ++i)
+		{
+			if (m_confirmTracker == null)
+			{
+				m_channel.basicPublish(exchange, topics[i], props[i], msgs[i]);
+			}
+			else
+			{
+				// Waiting for confirms while holding the lock is fine, because
+				// confirms arrive in another thread and need no lock
+				reserveConfirm(); // throws IOException
+				publishWithConfirm(exchange, topics[i], props[i], msgs[i]); // throws IOException
+			}
+			
+			sent[i] = true;
+		}
+	}
+	
+	private void reserveConfirm() throws IOException
+	{
+		// Waiting if there are too many unconfirmed messages
+		try
+		{
+			if (!m_confirmTracker.reserve())
+			{
+				throw new IOException("The channel has closed");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for publisher confirms");
+		}
+	}
+	
+	private void publishWithConfirm(String exchange, String topic, BasicProperties props, byte[] msg) throws IOException
+	{
+		// Expecting the caller to hold the lock of this object and a reservation
+		
+		// The message must be registered before publishing, because
+		// otherwise, the confirm might arrive first
+		long seqNo = m_channel.getNextPublishSeqNo();
+		m_confirmTracker.register(seqNo);
+		
+		try
+		{
+			m_channel.basicPublish(exchange, topic, props, msg);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			m_confirmTracker.cancel(seqNo);
+			throw e;
+		}
+	}
+}
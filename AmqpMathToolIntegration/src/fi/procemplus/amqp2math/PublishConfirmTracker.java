@@ -0,0 +1,226 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * Tracks the publisher confirms of one channel. The count of unconfirmed
+ * messages is limited, so that publishing waits if the broker falls behind.
+ * Because delivery tags are channel specific, each channel needs its own tracker.
+ * @author Petri Kannisto
+ */
+class PublishConfirmTracker implements ConfirmListener
+{
+	// The sequence numbers of unconfirmed messages
+	private final ConcurrentSkipListSet<Long> m_unconfirmed = new ConcurrentSkipListSet<>();
+	
+	// The size of the skip list is not constant time, so it is counted separately
+	private final AtomicInteger m_unconfirmedCount = new AtomicInteger(0);
+	
+	// Each unconfirmed message holds a permit
+	private final Semaphore m_window;
+	
+	// Counts messages that were either nacked or lost with the channel.
+	// This is shared with other trackers of the same connector.
+	private final AtomicLong m_failedCount;
+	
+	// This is used to wait until everything has been confirmed
+	private final Object m_confirmLock = new Object();
+	
+	private volatile boolean m_channelClosed = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param maxUnconfirmed Maximum count of unconfirmed messages.
+	 * @param failedCount Counter for messages that failed.
+	 */
+	PublishConfirmTracker(int maxUnconfirmed, AtomicLong failedCount)
+	{
+		m_window = new Semaphore(maxUnconfirmed);
+		m_failedCount = failedCount;
+	}
+	
+	/**
+	 * Reserves space for a message to be published. Waits if the count of
+	 * unconfirmed messages is at its maximum.
+	 * @return True if reserved, false if the channel has closed.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	boolean reserve() throws InterruptedException
+	{
+		if (m_channelClosed)
+		{
+			return false;
+		}
+		
+		m_window.acquire();
+		
+		if (m_channelClosed)
+		{
+			m_window.release();
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Registers a message that is about to be published. The message must
+	 * have been reserved first. Call this before publishing, because the confirm
+	 * can otherwise arrive before the registration.
+	 * @param seqNo The sequence number of the message on the channel.
+	 */
+	void register(long seqNo)
+	{
+		m_unconfirmed.add(seqNo);
+		m_unconfirmedCount.incrementAndGet();
+	}
+	
+	/**
+	 * Cancels the registration of a message that could not be published.
+	 * @param seqNo The sequence number of the message on the channel.
+	 */
+	void cancel(long seqNo)
+	{
+		if (m_unconfirmed.remove(seqNo))
+		{
+			m_unconfirmedCount.decrementAndGet();
+		}
+		
+		m_window.release();
+	}
+	
+	/**
+	 * To be called when the channel has closed. All unconfirmed messages
+	 * are considered lost, and any waiting publishers are released.
+	 */
+	void channelClosed()
+	{
+		m_channelClosed = true;
+		
+		int lostCount = removeConfirmed(m_unconfirmed);
+		m_failedCount.addAndGet(lostCount);
+		
+		// Let any waiting threads continue. These will notice the closed channel.
+		m_window.release(Integer.MAX_VALUE / 2);
+		notifyIfAllConfirmed();
+	}
+	
+	/**
+	 * Waits until all registered messages have been confirmed or the timeout expires.
+	 * @param timeoutMillis Timeout in milliseconds.
+	 * @return True if nothing remains unconfirmed, otherwise false.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	boolean awaitConfirms(long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		synchronized (m_confirmLock)
+		{
+			while (m_unconfirmedCount.get() > 0)
+			{
+				long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				
+				if (remainingMillis <= 0)
+				{
+					return false;
+				}
+				
+				m_confirmLock.wait(remainingMillis);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the count of messages that have not been confirmed yet.
+	 * @return Unconfirmed count.
+	 */
+	int getUnconfirmedCount()
+	{
+		return m_unconfirmedCount.get();
+	}
+	
+	@Override
+	public void handleAck(long deliveryTag, boolean multiple)
+	{
+		// This runs in the connection thread of the AMQP client
+		confirm(deliveryTag, multiple, false);
+	}
+	
+	@Override
+	public void handleNack(long deliveryTag, boolean multiple)
+	{
+		// This runs in the connection thread of the AMQP client
+		confirm(deliveryTag, multiple, true);
+	}
+	
+	private void confirm(long deliveryTag, boolean multiple, boolean failed)
+	{
+		int count = 0;
+		
+		if (multiple)
+		{
+			// Confirming everything up to the tag
+			count = removeConfirmed(m_unconfirmed.headSet(deliveryTag, true));
+		}
+		else if (m_unconfirmed.remove(deliveryTag))
+		{
+			m_unconfirmedCount.decrementAndGet();
+			count = 1;
+		}
+		
+		if (failed)
+		{
+			m_failedCount.addAndGet(count);
+		}
+		
+		m_window.release(count);
+		notifyIfAllConfirmed();
+	}
+	
+	private int removeConfirmed(NavigableSet<Long> confirmed)
+	{
+		int count = 0;
+		
+		while (confirmed.pollFirst() != null)
+		{
+			m_unconfirmedCount.decrementAndGet();
+			++count;
+		}
+		
+		return count;
+	}
+	
+	private void notifyIfAllConfirmed()
+	{
+		if (m_unconfirmedCount.get() < 1)
+		{
+			synchronized (m_confirmLock)
+			{
+				m_confirmLock.notifyAll();
+			}
+		}
+	}
+}
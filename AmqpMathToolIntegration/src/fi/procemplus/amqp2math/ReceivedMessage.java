@@ -8,10 +8,16 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2math;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
 
 /**
  * Represents a received message.
@@ -20,18 +26,109 @@ package fi.procemplus.amqp2math;
 public class ReceivedMessage
 {
 	private final String m_routingKey;
+	private final BasicProperties m_properties;
 	private final byte[] m_body;
 	
+	// If the body is in a pooled buffer, the buffer can be longer than the body.
+	// The pool is null if the body is not pooled.
+	private final int m_bodyLength;
+	private final BufferPool m_pool;
+	private final AtomicBoolean m_released;
+	private final long m_arrivalTime;
+	
+	// The delivery tag and the channel of delivery. Only set if the message
+	// must be acknowledged by the connector.
+	private long m_channelDeliveryTag = 0;
+	private Channel m_deliveryChannel = null;
+	
+	// The tag for the user to acknowledge the message with. Only set if the
+	// message must be acknowledged by the user.
+	private long m_deliveryTag = -1;
+	
 	
 	/**
 	 * Constructor.
 	 * @param rkey Routing key.
+	 * @param props Message properties. Can be null.
 	 * @param body Message body.
+	 * @param arrival Arrival time as milliseconds since the Unix epoch.
 	 */
-	ReceivedMessage(String rkey, byte[] body)
+	ReceivedMessage(String rkey, BasicProperties props, byte[] body, long arrival)
 	{
 		m_routingKey = rkey;
+		m_properties = props;
 		m_body = body;
+		m_arrivalTime = arrival;
+		m_bodyLength = body.length;
+		m_pool = null;
+		m_released = null;
+	}
+	
+	/**
+	 * Constructor for a copy of a message with another body.
+	 * @param source The message to copy.
+	 * @param body Body. If pooled, this can be longer than the body.
+	 * @param length The length of the body.
+	 * @param pool The pool the body is from, or null if not pooled.
+	 */
+	private ReceivedMessage(ReceivedMessage source, byte[] body, int length, BufferPool pool)
+	{
+		this(source, source.m_properties, body, length, pool);
+	}
+	
+	/**
+	 * Constructor for a copy of a message with other properties and another body.
+	 * @param source The message to copy.
+	 * @param props Message properties. Can be null.
+	 * @param body Body. If pooled, this can be longer than the body.
+	 * @param length The length of the body.
+	 * @param pool The pool the body is from, or null if not pooled.
+	 */
+	private ReceivedMessage(ReceivedMessage source, BasicProperties props, byte[] body, int length, BufferPool pool)
+	{
+		m_routingKey = source.m_routingKey;
+		m_properties = props;
+		m_arrivalTime = source.m_arrivalTime;
+		m_channelDeliveryTag = source.m_channelDeliveryTag;
+		m_deliveryChannel = source.m_deliveryChannel;
+		m_deliveryTag = source.m_deliveryTag;
+		
+		m_body = body;
+		m_bodyLength = length;
+		m_pool = pool;
+		m_released = pool == null ? null : new AtomicBoolean(false);
+	}
+	
+	/**
+	 * Constructor for a message that must be acknowledged.
+	 * @param rkey Routing key.
+	 * @param props Message properties. Can be null.
+	 * @param body Message body.
+	 * @param arrival Arrival time as milliseconds since the Unix epoch.
+	 * @param tag Delivery tag.
+	 * @param channel The channel the message was delivered on.
+	 */
+	ReceivedMessage(String rkey, BasicProperties props, byte[] body, long arrival, long tag, Channel channel)
+	{
+		this(rkey, props, body, arrival);
+		
+		m_channelDeliveryTag = tag;
+		m_deliveryChannel = channel;
+	}
+	
+	/**
+	 * Constructor for a message that the user must acknowledge.
+	 * @param rkey Routing key.
+	 * @param props Message properties. Can be null.
+	 * @param body Message body.
+	 * @param arrival Arrival time as milliseconds since the Unix epoch.
+	 * @param deliveryTag Tag for the user to acknowledge the message with.
+	 */
+	ReceivedMessage(String rkey, BasicProperties props, byte[] body, long arrival, long deliveryTag)
+	{
+		this(rkey, props, body, arrival);
+		
+		m_deliveryTag = deliveryTag;
 	}
 	
 	/**
@@ -44,11 +141,255 @@ public class ReceivedMessage
 	}
 	
 	/**
-	 * Returns the message body.
+	 * Returns the message body. If pooled buffers are enabled (see
+	 * AmqpPropsManager), this returns a copy; use getBodyBuffer() to avoid copying.
 	 * @return Message body.
+	 * @throws IllegalStateException Thrown if the message has been released.
 	 */
 	public byte[] getBody()
 	{
-		return m_body;
+		if (m_pool == null)
+		{
+			return m_body;
+		}
+		
+		expectNotReleased();
+		return Arrays.copyOf(m_body, m_bodyLength);
+	}
+	
+	/**
+	 * Returns a read-only view of the message body. This never copies the body.
+	 * If pooled buffers are enabled, the view is only valid until release() is called.
+	 * @return Message body.
+	 * @throws IllegalStateException Thrown if the message has been released.
+	 */
+	public ByteBuffer getBodyBuffer()
+	{
+		expectNotReleased();
+		return ByteBuffer.wrap(m_body, 0, m_bodyLength).slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Returns the length of the message body.
+	 * @return Length in bytes.
+	 */
+	public int getBodyLength()
+	{
+		return m_bodyLength;
+	}
+	
+	/**
+	 * Returns the buffer of the body to the pool for reuse by later messages.
+	 * Only applies if pooled buffers are enabled (see AmqpPropsManager);
+	 * otherwise, this does nothing. After this, the body can no longer be
+	 * accessed, and any view from getBodyBuffer() must no longer be used.
+	 * Calling this more than once does nothing. If a message is never released,
+	 * the garbage collector takes its buffer as usual.
+	 */
+	public void release()
+	{
+		if (m_pool != null && m_released.compareAndSet(false, true))
+		{
+			m_pool.release(m_body);
+		}
+	}
+	
+	/**
+	 * Returns the content encoding of the message. Compressed messages are
+	 * decompressed automatically, so this is only set if the encoding is unknown
+	 * or the body could not be decoded.
+	 * @return Content encoding or null if not set.
+	 */
+	public String getContentEncoding()
+	{
+		return m_properties == null ? null : m_properties.getContentEncoding();
+	}
+	
+	/**
+	 * Returns the content type of the message.
+	 * @return Content type or null if not set.
+	 */
+	public String getContentType()
+	{
+		return m_properties == null ? null : m_properties.getContentType();
+	}
+	
+	/**
+	 * Returns the message body as an array of doubles. The message must have been
+	 * sent with AmqpTopicConnectorSync.sendDoubles() or otherwise in the same format.
+	 * @return Values.
+	 * @throws IllegalStateException Thrown if the content type indicates another format.
+	 */
+	public double[] getBodyAsDoubles()
+	{
+		expectContentType(NumericPayloadCodec.contentTypeFloat64);
+		return NumericPayloadCodec.decodeDoubles(getBodyBuffer());
+	}
+	
+	/**
+	 * Returns the message body as an array of floats. The message must have been
+	 * sent with AmqpTopicConnectorSync.sendFloats() or otherwise in the same format.
+	 * @return Values.
+	 * @throws IllegalStateException Thrown if the content type indicates another format.
+	 */
+	public float[] getBodyAsFloats()
+	{
+		expectContentType(NumericPayloadCodec.contentTypeFloat32);
+		return NumericPayloadCodec.decodeFloats(getBodyBuffer());
+	}
+	
+	/**
+	 * Returns the message body as an array of longs. The message must have been
+	 * sent with AmqpTopicConnectorSync.sendLongs() or otherwise in the same format.
+	 * @return Values.
+	 * @throws IllegalStateException Thrown if the content type indicates another format.
+	 */
+	public long[] getBodyAsLongs()
+	{
+		expectContentType(NumericPayloadCodec.contentTypeInt64);
+		return NumericPayloadCodec.decodeLongs(getBodyBuffer());
+	}
+	
+	/**
+	 * Returns the message body as an array of ints. The message must have been
+	 * sent with AmqpTopicConnectorSync.sendInts() or otherwise in the same format.
+	 * @return Values.
+	 * @throws IllegalStateException Thrown if the content type indicates another format.
+	 */
+	public int[] getBodyAsInts()
+	{
+		expectContentType(NumericPayloadCodec.contentTypeInt32);
+		return NumericPayloadCodec.decodeInts(getBodyBuffer());
+	}
+	
+	/**
+	 * Returns the time when the message was retrieved from the broker.
+	 * @return Arrival time as milliseconds since the Unix epoch.
+	 */
+	public long getArrivalTime()
+	{
+		return m_arrivalTime;
+	}
+	
+	/**
+	 * Returns the time when the message was sent. Only available if the sender
+	 * enabled tracing headers (see AmqpPropsManager.setTraceHeaders()).
+	 * @return Send time as microseconds since the Unix epoch in the clock of
+	 * the sender, or -1 if not available.
+	 */
+	public long getSendTime()
+	{
+		return TraceHeaders.getLong(m_properties, TraceHeaders.sendTimeHeader);
+	}
+	
+	/**
+	 * Returns the sequence number of the message. Each sending connector numbers
+	 * its messages from 1 onwards, so a gap reveals a message that was lost or
+	 * failed to send. Only available if the sender enabled tracing headers.
+	 * @return Sequence number, or -1 if not available.
+	 */
+	public long getSequenceNumber()
+	{
+		return TraceHeaders.getLong(m_properties, TraceHeaders.sequenceHeader);
+	}
+	
+	/**
+	 * Returns the ID of the sending connector (see AmqpTopicConnectorSync.getSenderId()).
+	 * Only available if the sender enabled tracing headers.
+	 * @return Sender ID, or null if not available.
+	 */
+	public String getSenderId()
+	{
+		return TraceHeaders.getString(m_properties, TraceHeaders.senderHeader);
+	}
+	
+	/**
+	 * Returns the delivery tag to acknowledge the message with (see
+	 * AmqpTopicConnectorSync.ackUpTo()). Only available if manual
+	 * acknowledgement is enabled (see AmqpPropsManager). The tags of later
+	 * messages are greater.
+	 * @return Delivery tag, or -1 if the message needs no acknowledgement.
+	 */
+	public long getDeliveryTag()
+	{
+		return m_deliveryTag;
+	}
+	
+	/**
+	 * Returns the delivery tag that the broker assigned in the channel of delivery.
+	 * @return Delivery tag, or 0 if not applicable.
+	 */
+	long getChannelDeliveryTag()
+	{
+		return m_channelDeliveryTag;
+	}
+	
+	/**
+	 * Returns the channel the message was delivered on.
+	 * @return Channel, or null if not applicable.
+	 */
+	Channel getDeliveryChannel()
+	{
+		return m_deliveryChannel;
+	}
+	
+	/**
+	 * Copies the message so that the body is in a buffer from the pool.
+	 * @param pool Pool.
+	 * @return Copy, or this object if the body is pooled already.
+	 */
+	ReceivedMessage toPooled(BufferPool pool)
+	{
+		if (m_pool != null)
+		{
+			return this;
+		}
+		
+		byte[] body = pool.acquire(m_bodyLength);
+		System.arraycopy(m_body, 0, body, 0, m_bodyLength);
+		return new ReceivedMessage(this, body, m_bodyLength, pool);
+	}
+	
+	/**
+	 * Copies the message with another body. The copy is not pooled.
+	 * @param body Body.
+	 * @return Copy.
+	 */
+	ReceivedMessage withBody(byte[] body)
+	{
+		return new ReceivedMessage(this, body, body.length, null);
+	}
+	
+	/**
+	 * Copies the message with the decoded body and without the content encoding.
+	 * The copy is not pooled.
+	 * @param body Decoded body.
+	 * @return Copy.
+	 */
+	ReceivedMessage withDecodedBody(byte[] body)
+	{
+		BasicProperties props = m_properties.builder().contentEncoding(null).build();
+		return new ReceivedMessage(this, props, body, body.length, null);
+	}
+	
+	private void expectNotReleased()
+	{
+		if (m_released != null && m_released.get())
+		{
+			throw new IllegalStateException("The message has been released");
+		}
+	}
+	
+	private void expectContentType(String expected)
+	{
+		// A message without a content type is accepted, because
+		// other senders may not set it
+		String contentType = getContentType();
+		
+		if (contentType != null && !contentType.equals(expected))
+		{
+			throw new IllegalStateException(String.format("Content type is \"%s\", expected \"%s\"",
+					contentType, expected));
+		}
 	}
 }
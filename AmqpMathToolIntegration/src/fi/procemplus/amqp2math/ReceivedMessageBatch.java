@@ -0,0 +1,100 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.List;
+
+/**
+ * Represents multiple received messages in a columnar form. That is, the
+ * routing keys, bodies and arrival timestamps are each in their own array,
+ * and the same index refers to the same message in each array. This form
+ * is easy to process in Matlab with a single call across the Java bridge.
+ * @author Petri Kannisto
+ */
+public class ReceivedMessageBatch
+{
+	private final String[] m_routingKeys;
+	private final byte[][] m_bodies;
+	private final long[] m_timestamps;
+	private final long[] m_deliveryTags;
+	
+	
+	/**
+	 * Constructor.
+	 * @param messages Messages in the order of reception.
+	 */
+	ReceivedMessageBatch(List<ReceivedMessage> messages)
+	{
+		int count = messages.size();
+		
+		m_routingKeys = new String[count];
+		m_bodies = new byte[count][];
+		m_timestamps = new long[count];
+		m_deliveryTags = new long[count];
+		
+		for (int i = 0; i < count; ++i)
+		{
+			ReceivedMessage msg = messages.get(i);
+			m_routingKeys[i] = msg.getRoutingKey();
+			m_bodies[i] = msg.getBody();
+			m_timestamps[i] = msg.getArrivalTime();
+			m_deliveryTags[i] = msg.getDeliveryTag();
+		}
+	}
+	
+	/**
+	 * Returns the count of messages.
+	 * @return Message count. This is 0 if nothing was received.
+	 */
+	public int getCount()
+	{
+		return m_routingKeys.length;
+	}
+	
+	/**
+	 * Returns the routing keys.
+	 * @return Routing keys.
+	 */
+	public String[] getRoutingKeys()
+	{
+		return m_routingKeys;
+	}
+	
+	/**
+	 * Returns the message bodies.
+	 * @return Message bodies.
+	 */
+	public byte[][] getBodies()
+	{
+		return m_bodies;
+	}
+	
+	/**
+	 * Returns the arrival timestamps.
+	 * @return Arrival timestamps as milliseconds since the Unix epoch.
+	 */
+	public long[] getArrivalTimes()
+	{
+		return m_timestamps;
+	}
+	
+	/**
+	 * Returns the delivery tags to acknowledge the messages with. Only available
+	 * if manual acknowledgement is enabled (see ReceivedMessage.getDeliveryTag()).
+	 * @return Delivery tags. Each is -1 if the message needs no acknowledgement.
+	 */
+	public long[] getDeliveryTags()
+	{
+		return m_deliveryTags;
+	}
+}
@@ -0,0 +1,92 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A connector that replays a log recorded with
+ * AmqpTopicConnectorSync.startRecording() instead of communicating through a
+ * broker. The API is the same, so a script can run against a recording
+ * without changes. The messages become available at their original timing
+ * relative to the first message, at a multiple of that speed, or as fast as
+ * possible. The timing starts when the connector is first used. The replayed
+ * messages keep their original arrival times. Sent messages are discarded.
+ * The log is read through memory-mapped files. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+public class ReplayTopicConnector extends AmqpTopicConnectorSync
+{
+	// Constants
+	/**
+	 * The speed to replay at the original timing.
+	 */
+	public static final double originalSpeed = 1;
+	
+	/**
+	 * The speed to replay as fast as possible.
+	 */
+	public static final double asFastAsPossible = 0;
+	
+	private final ReplayTransport m_replay;
+	
+	
+	/**
+	 * Constructor.
+	 * @param amqpProps Properties. Only those affecting the local processing of
+	 * messages apply, such as the per-topic queues; the connection is ignored.
+	 * @param topics Topics to replay. Messages of other topics are skipped.
+	 * @param path The path of the log.
+	 * @param speed The speed relative to the original timing, e.g., 10 for ten
+	 * times faster, or 0 for as fast as possible. Must not be negative.
+	 * @throws IOException Thrown if the log cannot be read.
+	 */
+	public ReplayTopicConnector(AmqpPropsManager amqpProps, String[] topics, String path, double speed) throws IOException
+	{
+		// This constructor overload exists because it presumably helps utilisation in Matlab.
+		this(amqpProps, Arrays.asList(topics), path, speed);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param amqpProps Properties. Only those affecting the local processing of
+	 * messages apply, such as the per-topic queues; the connection is ignored.
+	 * @param topics Topics to replay. Messages of other topics are skipped.
+	 * @param path The path of the log.
+	 * @param speed The speed relative to the original timing, e.g., 10 for ten
+	 * times faster, or 0 for as fast as possible. Must not be negative.
+	 * @throws IOException Thrown if the log cannot be read.
+	 */
+	public ReplayTopicConnector(AmqpPropsManager amqpProps, List<String> topics, String path, double speed) throws IOException
+	{
+		this(amqpProps, new ReplayTransport(path, speed, topics)); // throws IOException
+	}
+	
+	private ReplayTopicConnector(AmqpPropsManager amqpProps, ReplayTransport replay)
+	{
+		super(amqpProps, replay);
+		m_replay = replay;
+	}
+	
+	/**
+	 * Returns whether every message of the replayed topics has been served
+	 * from the log. Messages may still remain in the local per-topic queues.
+	 * @return True if complete, otherwise false.
+	 */
+	public boolean isReplayComplete()
+	{
+		return m_replay.isComplete();
+	}
+}
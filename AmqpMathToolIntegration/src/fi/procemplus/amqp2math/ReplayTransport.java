@@ -0,0 +1,304 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Serves messages from a recorded log (see TrafficRecorder) instead of
+ * communicating with other participants. Each message becomes available
+ * once the time since the replay started reaches the time since the first
+ * recorded message, divided by the speed. Messages of topics not listened to
+ * are skipped. Published messages are discarded.
+ * @author Petri Kannisto
+ */
+class ReplayTransport implements MessageTransport
+{
+	private final TrafficLogReader m_log;
+	private final double m_speed;
+	private final CopyOnWriteArraySet<String> m_topics;
+	
+	// These are synchronized with the lock of this object
+	private int m_nextIndex = 0;
+	private long m_startNanos = 0;
+	private boolean m_started = false;
+	
+	private volatile boolean m_closed = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param path The path of the log.
+	 * @param speed The speed relative to the original timing, or 0 for as fast as possible.
+	 * @param topics Topics to listen to.
+	 * @throws IOException Thrown if the log cannot be read.
+	 */
+	ReplayTransport(String path, double speed, List<String> topics) throws IOException
+	{
+		if (speed < 0 || Double.isNaN(speed))
+		{
+			throw new IllegalArgumentException("Replay speed must not be negative");
+		}
+		
+		m_log = new TrafficLogReader(path); // throws IOException
+		m_speed = speed;
+		m_topics = new CopyOnWriteArraySet<>(topics);
+	}
+	
+	@Override
+	public synchronized void open()
+	{
+		expectNotClosed();
+		
+		// The timing starts when the replay is first used
+		if (!m_started)
+		{
+			m_startNanos = System.nanoTime();
+			m_started = true;
+		}
+	}
+	
+	@Override
+	public synchronized void close()
+	{
+		m_closed = true;
+		m_log.close();
+		
+		// Waking up any waiting receivers
+		notifyAll();
+	}
+	
+	@Override
+	public void subscribe(String topic)
+	{
+		m_topics.add(topic);
+	}
+	
+	@Override
+	public void unsubscribe(String topic)
+	{
+		m_topics.remove(topic);
+	}
+	
+	@Override
+	public String[] getTopics()
+	{
+		return m_topics.toArray(new String[0]);
+	}
+	
+	@Override
+	public synchronized ReceivedMessage receive() throws CommunicationException
+	{
+		open();
+		skipUnsubscribed();
+		
+		if (m_nextIndex >= m_log.getCount() || getNanosUntilDue(m_nextIndex) > 0)
+		{
+			return null;
+		}
+		
+		return readNext(); // throws CommunicationException
+	}
+	
+	@Override
+	public synchronized ReceivedMessage receive(long timeoutMillis) throws CommunicationException, InterruptedException
+	{
+		open();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		while (true)
+		{
+			skipUnsubscribed();
+			long remainingNanos = deadline - System.nanoTime();
+			
+			if (m_nextIndex >= m_log.getCount())
+			{
+				// Nothing will ever arrive, but the caller expects the timeout to be waited
+				if (remainingNanos > 0)
+				{
+					TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+				}
+				
+				return null;
+			}
+			
+			long untilDueNanos = getNanosUntilDue(m_nextIndex);
+			
+			if (untilDueNanos <= 0)
+			{
+				return readNext(); // throws CommunicationException
+			}
+			
+			if (remainingNanos <= 0)
+			{
+				return null;
+			}
+			
+			// Waiting releases the lock, so the replay can be closed meanwhile
+			TimeUnit.NANOSECONDS.timedWait(this, Math.min(untilDueNanos, remainingNanos));
+			expectNotClosed();
+		}
+	}
+	
+	@Override
+	public synchronized void receiveInto(List<ReceivedMessage> messages, int maxCount) throws CommunicationException
+	{
+		while (messages.size() < maxCount)
+		{
+			ReceivedMessage msg = receive(); // throws CommunicationException
+			
+			if (msg == null)
+			{
+				break;
+			}
+			
+			messages.add(msg);
+		}
+	}
+	
+	@Override
+	public void publish(String topic, BasicProperties props, byte[] msg)
+	{
+		// Nobody listens to a replay
+		expectNotClosed();
+	}
+	
+	@Override
+	public void publishAll(String[] topics, BasicProperties[] props, byte[][] msgs, boolean[] sent)
+	{
+		expectNotClosed();
+		
+		for (int i = 0; i < sent.length; ++i)
+		{
+			sent[i] = true;
+		}
+	}
+	
+	@Override
+	public int getJournaledCount()
+	{
+		return 0;
+	}
+	
+	@Override
+	public void ackUpTo(long deliveryTag)
+	{
+		// Nothing to acknowledge in a replay
+	}
+	
+	@Override
+	public void flushAcks()
+	{
+		// Nothing to acknowledge in a replay
+	}
+	
+	@Override
+	public boolean awaitConfirms(long timeoutMillis)
+	{
+		return true;
+	}
+	
+	@Override
+	public int getUnconfirmedCount()
+	{
+		return 0;
+	}
+	
+	@Override
+	public long getFailedConfirmCount()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Returns whether every message in the log has been served or skipped.
+	 * @return True if complete, otherwise false.
+	 */
+	synchronized boolean isComplete()
+	{
+		skipUnsubscribed();
+		return m_nextIndex >= m_log.getCount();
+	}
+	
+	private void skipUnsubscribed()
+	{
+		// Expecting the caller to hold the lock of this object
+		
+		while (m_nextIndex < m_log.getCount())
+		{
+			try
+			{
+				if (isSubscribed(m_log.readRoutingKey(m_nextIndex))) // throws IOException
+				{
+					return;
+				}
+			}
+			catch (IOException e)
+			{
+				// An unreadable message is skipped
+			}
+			
+			++m_nextIndex;
+		}
+	}
+	
+	private boolean isSubscribed(String routingKey)
+	{
+		for (String pattern : m_topics)
+		{
+			if (TopicMatcher.matches(pattern, routingKey))
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private long getNanosUntilDue(int index)
+	{
+		if (m_speed == 0)
+		{
+			return 0;
+		}
+		
+		long sinceFirstMillis = m_log.getArrivalTime(index) - m_log.getArrivalTime(0);
+		long dueNanos = m_startNanos + (long)(TimeUnit.MILLISECONDS.toNanos(sinceFirstMillis) / m_speed);
+		return dueNanos - System.nanoTime();
+	}
+	
+	private ReceivedMessage readNext() throws CommunicationException
+	{
+		try
+		{
+			return m_log.read(m_nextIndex++); // throws IOException
+		}
+		catch (IOException e)
+		{
+			throw new CommunicationException("Failed to read the log: " + e.getMessage(), e);
+		}
+	}
+	
+	private void expectNotClosed() throws RuntimeException
+	{
+		if (m_closed)
+		{
+			throw new RuntimeException("Cannot use connector because the user has closed it");
+		}
+	}
+}
@@ -0,0 +1,169 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeoutException;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Shares connections between connector objects. There is one connection per
+ * broker URL, and each connector creates its own channels on it. The
+ * connection is reference counted and closed once the last user releases it.
+ * @author Petri Kannisto
+ */
+class SharedConnectionRegistry
+{
+	/**
+	 * A shared connection and the count of its users. While the connection
+	 * is being created, the connection is null, and other users wait.
+	 */
+	private static class Entry
+	{
+		Connection connection = null;
+		int referenceCount = 1;
+	}
+	
+	// The shared connections by URL. Synchronized with the class object,
+	// which is also notified whenever a connection attempt finishes.
+	private static final HashMap<String, Entry> s_connections = new HashMap<>();
+	
+	
+	private SharedConnectionRegistry()
+	{
+		// Static members only
+	}
+	
+	/**
+	 * Gets the shared connection for the URL. If there is none or if it has closed,
+	 * a new connection is created. If another user is creating the connection,
+	 * this waits for it. Connecting does not block the users of other URLs.
+	 * Each acquire must be followed by a release.
+	 * @param url The URL the connection factory has been configured with.
+	 * @param factory Connection factory.
+	 * @return Connection.
+	 * @throws IOException Thrown if connecting fails or the thread is interrupted while waiting.
+	 * @throws TimeoutException Thrown if connecting times out.
+	 */
+	static Connection acquire(String url, ConnectionFactory factory) throws IOException, TimeoutException
+	{
+		Entry placeholder = new Entry();
+		
+		synchronized (SharedConnectionRegistry.class)
+		{
+			while (true)
+			{
+				Entry entry = s_connections.get(url);
+				
+				// The users of any closed connection will release it later. Until then,
+				// it remains in their hands only.
+				if (entry == null || (entry.connection != null && !entry.connection.isOpen()))
+				{
+					s_connections.put(url, placeholder);
+					break;
+				}
+				
+				if (entry.connection != null)
+				{
+					++entry.referenceCount;
+					return entry.connection;
+				}
+				
+				try
+				{
+					// Another user is connecting. If that fails, this one tries.
+					SharedConnectionRegistry.class.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the shared connection");
+				}
+			}
+		}
+		
+		// Connecting outside the lock, because it can take as long as the connection timeout
+		Connection connection = null;
+		
+		try
+		{
+			connection = factory.newConnection(); // throws IOException, TimeoutException
+			return connection;
+		}
+		finally
+		{
+			synchronized (SharedConnectionRegistry.class)
+			{
+				if (connection != null)
+				{
+					placeholder.connection = connection;
+				}
+				else
+				{
+					s_connections.remove(url);
+				}
+				
+				SharedConnectionRegistry.class.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Releases a connection acquired earlier. If this was the last user, the
+	 * connection is closed.
+	 * @param connection Connection.
+	 */
+	static void release(Connection connection)
+	{
+		boolean lastUser = true;
+		
+		synchronized (SharedConnectionRegistry.class)
+		{
+			for (Entry entry : s_connections.values())
+			{
+				if (entry.connection != connection)
+				{
+					continue;
+				}
+				
+				--entry.referenceCount;
+				lastUser = entry.referenceCount < 1;
+				
+				if (lastUser)
+				{
+					s_connections.values().remove(entry);
+				}
+				
+				break;
+			}
+		}
+		
+		// If not found, the connection was replaced after it had closed
+		if (lastUser)
+		{
+			try
+			{
+				connection.close();
+			}
+			catch (ShutdownSignalException | IOException e)
+			{
+				// No can do!
+			}
+		}
+	}
+}
@@ -0,0 +1,223 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Holds message bodies outside the heap in memory-mapped temporary files.
+ * The bodies are appended to a segment file until it is full, after which
+ * a new segment is started. Because the bodies are read back in the order
+ * they were written, a segment is deleted as soon as everything in it has
+ * been read. The operating system pages the files in and out as needed, so
+ * the memory use of the JVM remains predictable. The class is not
+ * thread-safe; the caller synchronizes.
+ * @author Petri Kannisto
+ */
+class SpillFile
+{
+	// Constants
+	// The default size of each segment file. A larger body gets a segment of its own.
+	static final int defaultSegmentSize = 64 * 1024 * 1024;
+	
+	/**
+	 * A segment file.
+	 */
+	private static class Segment
+	{
+		final File file;
+		MappedByteBuffer buffer;
+		int writePosition = 0;
+		int unreadCount = 0;
+		
+		Segment(File f, MappedByteBuffer b)
+		{
+			file = f;
+			buffer = b;
+		}
+	}
+	
+	/**
+	 * The location of a body in the segments.
+	 */
+	static class Location
+	{
+		private final Segment m_segment;
+		private final int m_position;
+		private final int m_length;
+		
+		private Location(Segment segment, int position, int length)
+		{
+			m_segment = segment;
+			m_position = position;
+			m_length = length;
+		}
+	}
+	
+	private final int m_segmentSize;
+	
+	// The segments with unread bodies in the order of writing. The last one is written to.
+	private final ArrayDeque<Segment> m_segments = new ArrayDeque<>();
+	private int m_unreadCount = 0;
+	
+	
+	/**
+	 * Constructor. The segments have the default size.
+	 */
+	SpillFile()
+	{
+		this(defaultSegmentSize);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param segmentSize The size of each segment file. A larger body gets a segment of its own.
+	 */
+	SpillFile(int segmentSize)
+	{
+		m_segmentSize = segmentSize;
+	}
+	
+	
+	/**
+	 * Appends a body.
+	 * @param body Body.
+	 * @return The location of the body.
+	 * @throws IOException Thrown if a segment file cannot be created.
+	 */
+	Location append(byte[] body) throws IOException
+	{
+		Segment segment = m_segments.peekLast();
+		
+		if (segment == null || segment.buffer.capacity() - segment.writePosition < body.length)
+		{
+			// An empty segment would never be read again
+			if (segment != null && segment.unreadCount == 0)
+			{
+				m_segments.removeLast();
+				dispose(segment);
+			}
+			
+			segment = createSegment(Math.max(m_segmentSize, body.length));
+			m_segments.addLast(segment);
+		}
+		
+		Location location = new Location(segment, segment.writePosition, body.length);
+		segment.buffer.position(segment.writePosition);
+		segment.buffer.put(body);
+		segment.writePosition += body.length;
+		++segment.unreadCount;
+		++m_unreadCount;
+		return location;
+	}
+	
+	/**
+	 * Reads a body. Each body must be read or discarded exactly once.
+	 * @param location The location of the body.
+	 * @return Body.
+	 */
+	byte[] read(Location location)
+	{
+		Segment segment = location.m_segment;
+		byte[] body = new byte[location.m_length];
+		segment.buffer.position(location.m_position);
+		segment.buffer.get(body);
+		release(segment);
+		return body;
+	}
+	
+	/**
+	 * Discards a body without reading it. Each body must be read or discarded exactly once.
+	 * @param location The location of the body.
+	 */
+	void discard(Location location)
+	{
+		release(location.m_segment);
+	}
+	
+	/**
+	 * Returns whether no unread body remains.
+	 * @return True if empty, otherwise false.
+	 */
+	boolean isEmpty()
+	{
+		return m_unreadCount == 0;
+	}
+	
+	private void release(Segment segment)
+	{
+		--m_unreadCount;
+		
+		if (--segment.unreadCount == 0)
+		{
+			if (segment == m_segments.peekLast())
+			{
+				// Everything has been read, so writing can start over
+				segment.writePosition = 0;
+			}
+			else
+			{
+				m_segments.remove(segment);
+				dispose(segment);
+			}
+		}
+	}
+	
+	/**
+	 * Deletes all segment files. Any unread bodies are lost.
+	 */
+	void close()
+	{
+		for (Segment s : m_segments)
+		{
+			dispose(s);
+		}
+		
+		m_segments.clear();
+		m_unreadCount = 0;
+	}
+	
+	private static Segment createSegment(int size) throws IOException
+	{
+		File file = File.createTempFile("amqp2math-spill-", ".tmp");
+		
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			// The mapping remains valid after closing the file
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			return new Segment(file, buffer);
+		}
+		catch (IOException e)
+		{
+			file.delete();
+			throw e;
+		}
+	}
+	
+	private static void dispose(Segment segment)
+	{
+		// A mapped file cannot be deleted in all operating systems until
+		// the garbage collector has unmapped it
+		segment.buffer = null;
+		
+		if (!segment.file.delete())
+		{
+			segment.file.deleteOnExit();
+		}
+	}
+}
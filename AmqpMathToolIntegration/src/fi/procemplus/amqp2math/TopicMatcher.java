@@ -0,0 +1,91 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+/**
+ * Matches routing keys against topic patterns like an AMQP topic exchange.
+ * A pattern consists of words separated by dots. The word "*" matches
+ * exactly one word, and "#" matches zero or more words.
+ * @author Petri Kannisto
+ */
+class TopicMatcher
+{
+	private static final String wildcardOne = "*";
+	private static final String wildcardAny = "#";
+	
+	
+	private TopicMatcher()
+	{
+		// Static members only
+	}
+	
+	/**
+	 * Returns whether the routing key matches the pattern.
+	 * @param pattern Pattern.
+	 * @param routingKey Routing key.
+	 * @return True if matches, otherwise false.
+	 */
+	static boolean matches(String pattern, String routingKey)
+	{
+		// Without wildcards, only an exact match is possible
+		if (pattern.indexOf('*') < 0 && pattern.indexOf('#') < 0)
+		{
+			return pattern.equals(routingKey);
+		}
+		
+		return matchFrom(pattern.split("\\.", -1), 0, routingKey.split("\\.", -1), 0);
+	}
+	
+	private static boolean matchFrom(String[] pattern, int patternIndex, String[] words, int wordIndex)
+	{
+		while (patternIndex < pattern.length)
+		{
+			String p = pattern[patternIndex];
+			
+			if (p.equals(wildcardAny))
+			{
+				// Nothing after "#" means anything will match
+				if (patternIndex == pattern.length - 1)
+				{
+					return true;
+				}
+				
+				// Trying to match the rest of the pattern after skipping 0...n words
+				for (int i = wordIndex; i <= words.length; ++i)
+				{
+					if (matchFrom(pattern, patternIndex + 1, words, i))
+					{
+						return true;
+					}
+				}
+				
+				return false;
+			}
+			
+			if (wordIndex >= words.length)
+			{
+				return false;
+			}
+			
+			if (!p.equals(wildcardOne) && !p.equals(words[wordIndex]))
+			{
+				return false;
+			}
+			
+			++patternIndex;
+			++wordIndex;
+		}
+		
+		return wordIndex == words.length;
+	}
+}
@@ -0,0 +1,142 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+/**
+ * An immutable snapshot of the statistics of a single topic.
+ * @author Petri Kannisto
+ */
+public class TopicStatistics
+{
+	private final String m_topic;
+	private final long m_messagesSent;
+	private final long m_bytesSent;
+	private final long m_messagesReceived;
+	private final long m_bytesReceived;
+	private final long m_messagesDropped;
+	private final HistogramSnapshot m_publishLatency;
+	private final HistogramSnapshot m_endToEndLatency;
+	
+	
+	/**
+	 * Constructor.
+	 * @param topic Topic, or null for the total of all topics.
+	 * @param messagesSent Sent message count.
+	 * @param bytesSent Sent byte count.
+	 * @param messagesReceived Received message count.
+	 * @param bytesReceived Received byte count.
+	 * @param messagesDropped Dropped message count.
+	 * @param publishLatency Publish latency.
+	 * @param endToEndLatency End-to-end latency of received messages.
+	 */
+	TopicStatistics(String topic, long messagesSent, long bytesSent, long messagesReceived, long bytesReceived,
+			long messagesDropped, HistogramSnapshot publishLatency, HistogramSnapshot endToEndLatency)
+	{
+		m_topic = topic;
+		m_messagesSent = messagesSent;
+		m_bytesSent = bytesSent;
+		m_messagesReceived = messagesReceived;
+		m_bytesReceived = bytesReceived;
+		m_messagesDropped = messagesDropped;
+		m_publishLatency = publishLatency;
+		m_endToEndLatency = endToEndLatency;
+	}
+	
+	/**
+	 * Returns the topic. For received messages, this is the routing key.
+	 * @return Topic, or null if the statistics cover all topics.
+	 */
+	public String getTopic()
+	{
+		return m_topic;
+	}
+	
+	/**
+	 * Returns the count of sent messages.
+	 * @return Count.
+	 */
+	public long getMessagesSent()
+	{
+		return m_messagesSent;
+	}
+	
+	/**
+	 * Returns the count of sent bytes in message bodies.
+	 * @return Count.
+	 */
+	public long getBytesSent()
+	{
+		return m_bytesSent;
+	}
+	
+	/**
+	 * Returns the count of received messages.
+	 * @return Count.
+	 */
+	public long getMessagesReceived()
+	{
+		return m_messagesReceived;
+	}
+	
+	/**
+	 * Returns the count of received bytes in message bodies.
+	 * @return Count.
+	 */
+	public long getBytesReceived()
+	{
+		return m_bytesReceived;
+	}
+	
+	/**
+	 * Returns the count of received messages that were dropped locally before
+	 * the user retrieved them, because a local per-topic queue was full or because
+	 * a newer message superseded them in a conflated topic.
+	 * @return Count.
+	 */
+	public long getMessagesDropped()
+	{
+		return m_messagesDropped;
+	}
+	
+	/**
+	 * Returns how long it took to send single messages. Sending multiple
+	 * messages at once is not included.
+	 * @return Latency histogram.
+	 */
+	public HistogramSnapshot getPublishLatency()
+	{
+		return m_publishLatency;
+	}
+	
+	/**
+	 * Returns the time from sending to receiving, i.e., from when the sender
+	 * called a send method to when the message was retrieved here. Only covers
+	 * messages with tracing headers (see AmqpPropsManager.setTraceHeaders()).
+	 * The sender and the receiver use their own clocks, so any offset between the
+	 * clocks is included (see ConnectorStatistics.getPeerClockOffsetsMicros()).
+	 * Negative values are recorded as 0.
+	 * @return Latency histogram.
+	 */
+	public HistogramSnapshot getEndToEndLatency()
+	{
+		return m_endToEndLatency;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format("messages_sent=%d bytes_sent=%d messages_received=%d bytes_received=%d messages_dropped=%d publish_latency={%s} end_to_end_latency={%s}",
+				m_messagesSent, m_bytesSent, m_messagesReceived, m_bytesReceived, m_messagesDropped, m_publishLatency, m_endToEndLatency);
+	}
+}
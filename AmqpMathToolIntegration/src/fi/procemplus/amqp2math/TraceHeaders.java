@@ -0,0 +1,96 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * The message headers for end-to-end latency tracing. The sender stamps each
+ * message with the send time, a sequence number and its ID, and the receiver
+ * reads them from the message properties.
+ * @author Petri Kannisto
+ */
+class TraceHeaders
+{
+	// Constants
+	static final String sendTimeHeader = "x-procemplus-send-time-us";
+	static final String sequenceHeader = "x-procemplus-seq";
+	static final String senderHeader = "x-procemplus-sender";
+	
+	
+	private TraceHeaders()
+	{
+		// Only static members
+	}
+	
+	/**
+	 * Adds the tracing headers to message properties.
+	 * @param props Message properties. These are not modified.
+	 * @param senderId The ID of the sender.
+	 * @param sequenceNumber Sequence number.
+	 * @param sendTimeMicros Send time as microseconds since the Unix epoch.
+	 * @return New message properties.
+	 */
+	static BasicProperties stamp(BasicProperties props, String senderId, long sequenceNumber, long sendTimeMicros)
+	{
+		Map<String, Object> original = props.getHeaders();
+		HashMap<String, Object> headers = original == null ? new HashMap<String, Object>(4) : new HashMap<>(original);
+		headers.put(sendTimeHeader, sendTimeMicros);
+		headers.put(sequenceHeader, sequenceNumber);
+		headers.put(senderHeader, senderId);
+		
+		return props.builder()
+				.headers(headers)
+				.build();
+	}
+	
+	/**
+	 * Reads a numeric header.
+	 * @param props Message properties. Can be null.
+	 * @param name Header name.
+	 * @return Value, or -1 if not available.
+	 */
+	static long getLong(BasicProperties props, String name)
+	{
+		Object value = getHeader(props, name);
+		
+		// Any integer type is accepted, because other senders may use a narrower one
+		return value instanceof Number ? ((Number)value).longValue() : -1;
+	}
+	
+	/**
+	 * Reads a string header.
+	 * @param props Message properties. Can be null.
+	 * @param name Header name.
+	 * @return Value, or null if not available.
+	 */
+	static String getString(BasicProperties props, String name)
+	{
+		// The AMQP client reads strings as LongString objects
+		Object value = getHeader(props, name);
+		return value == null ? null : value.toString();
+	}
+	
+	private static Object getHeader(BasicProperties props, String name)
+	{
+		if (props == null || props.getHeaders() == null)
+		{
+			return null;
+		}
+		
+		return props.getHeaders().get(name);
+	}
+}
@@ -0,0 +1,252 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Reads a log written by TrafficRecorder. Both files are memory-mapped. The
+ * index is mapped as a whole, whereas the data file is mapped in windows, so
+ * that logs larger than the address space of a single mapping can be read.
+ * The class is not thread-safe; the caller synchronizes.
+ * @author Petri Kannisto
+ */
+class TrafficLogReader
+{
+	// Constants
+	// The size of each window of the data file. A larger message gets a window of its own.
+	private static final int windowSize = 64 * 1024 * 1024;
+	
+	private final long m_dataLength;
+	private final MappedByteBuffer m_index;
+	private final int m_count;
+	private final FileChannel m_dataChannel;
+	
+	// The currently mapped window of the data file
+	private MappedByteBuffer m_window = null;
+	private long m_windowStart = 0;
+	
+	
+	/**
+	 * Constructor.
+	 * @param path The path of the data file.
+	 * @throws IOException Thrown if the log cannot be read or is not a valid log.
+	 */
+	TrafficLogReader(String path) throws IOException
+	{
+		// The mappings remain valid after closing the index file
+		try (RandomAccessFile indexFile = new RandomAccessFile(path + TrafficRecorder.indexExtension, "r"))
+		{
+			long indexLength = indexFile.length();
+			m_index = indexFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexLength);
+		}
+		
+		RandomAccessFile dataFile = new RandomAccessFile(path, "r");
+		m_dataChannel = dataFile.getChannel();
+		m_dataLength = dataFile.length();
+		
+		try
+		{
+			if (m_index.capacity() < TrafficRecorder.headerLength || m_index.getInt(0) != TrafficRecorder.indexMagic ||
+					m_dataLength < TrafficRecorder.headerLength || readDataInt(0) != TrafficRecorder.dataMagic)
+			{
+				throw new IOException("Not a valid traffic log: " + path);
+			}
+		}
+		catch (IOException e)
+		{
+			dataFile.close();
+			throw e;
+		}
+		
+		// If the recording was cut short, the last index entries may point to
+		// messages that are missing or incomplete in the data file
+		int count = (m_index.capacity() - TrafficRecorder.headerLength) / TrafficRecorder.indexEntryLength;
+		
+		while (count > 0 && !isComplete(count - 1)) // throws IOException
+		{
+			--count;
+		}
+		
+		m_count = count;
+	}
+	
+	/**
+	 * Returns the count of messages.
+	 * @return Count.
+	 */
+	int getCount()
+	{
+		return m_count;
+	}
+	
+	/**
+	 * Returns the arrival time of a message without reading the data.
+	 * @param index The index of the message.
+	 * @return Arrival time as milliseconds since the Unix epoch.
+	 */
+	long getArrivalTime(int index)
+	{
+		return m_index.getLong(getIndexPosition(index) + 8);
+	}
+	
+	/**
+	 * Reads a message.
+	 * @param index The index of the message.
+	 * @return Message.
+	 * @throws IOException Thrown if reading fails.
+	 */
+	ReceivedMessage read(int index) throws IOException
+	{
+		int position = mapMessage(index); // throws IOException
+		long arrival = m_window.getLong(position);
+		position += 8;
+		
+		int routingKeyLength = m_window.getShort(position) & 0xffff;
+		String routingKey = readString(position + 2, routingKeyLength);
+		position += 2 + routingKeyLength;
+		
+		int contentTypeLength = m_window.getShort(position) & 0xffff;
+		String contentType = null;
+		position += 2;
+		
+		if (contentTypeLength != TrafficRecorder.nullStringLength)
+		{
+			contentType = readString(position, contentTypeLength);
+			position += contentTypeLength;
+		}
+		
+		byte[] body = new byte[m_window.getInt(position)];
+		position += 4;
+		m_window.position(position);
+		m_window.get(body);
+		
+		BasicProperties props = contentType == null ? null : new BasicProperties.Builder().contentType(contentType).build();
+		return new ReceivedMessage(routingKey, props, body, arrival);
+	}
+	
+	/**
+	 * Reads only the routing key of a message.
+	 * @param index The index of the message.
+	 * @return Routing key.
+	 * @throws IOException Thrown if reading fails.
+	 */
+	String readRoutingKey(int index) throws IOException
+	{
+		int position = mapMessage(index) + 8; // throws IOException
+		return readString(position + 2, m_window.getShort(position) & 0xffff);
+	}
+	
+	/**
+	 * Closes the files.
+	 */
+	void close()
+	{
+		m_window = null;
+		
+		try
+		{
+			m_dataChannel.close();
+		}
+		catch (IOException e)
+		{
+			// No can do!
+		}
+	}
+	
+	private int getIndexPosition(int index)
+	{
+		return TrafficRecorder.headerLength + index * TrafficRecorder.indexEntryLength;
+	}
+	
+	private long getEnd(int index)
+	{
+		// A message ends where the next one starts
+		return index + 1 < m_count ? m_index.getLong(getIndexPosition(index + 1)) : m_dataLength;
+	}
+	
+	private boolean isComplete(int index) throws IOException
+	{
+		// Each length is checked against the data before it is read
+		long start = m_index.getLong(getIndexPosition(index));
+		long position = start + 8;
+		
+		if (start < TrafficRecorder.headerLength || position + 2 > m_dataLength)
+		{
+			return false;
+		}
+		
+		position += 2 + readDataShort(position); // throws IOException
+		
+		if (position + 2 > m_dataLength)
+		{
+			return false;
+		}
+		
+		int contentTypeLength = readDataShort(position); // throws IOException
+		position += 2 + (contentTypeLength == TrafficRecorder.nullStringLength ? 0 : contentTypeLength);
+		
+		if (position + 4 > m_dataLength)
+		{
+			return false;
+		}
+		
+		position += 4 + (readDataInt(position) & 0xffffffffL); // throws IOException
+		return position <= m_dataLength;
+	}
+	
+	private int mapMessage(int index) throws IOException
+	{
+		long start = m_index.getLong(getIndexPosition(index));
+		mapWindow(start, (int)(getEnd(index) - start)); // throws IOException
+		return (int)(start - m_windowStart);
+	}
+	
+	private void mapWindow(long start, int length) throws IOException
+	{
+		if (m_window != null && start >= m_windowStart && start + length <= m_windowStart + m_window.capacity())
+		{
+			return;
+		}
+		
+		long size = Math.min(Math.max(windowSize, length), m_dataLength - start);
+		m_window = m_dataChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		m_windowStart = start;
+	}
+	
+	private int readDataInt(long position) throws IOException
+	{
+		mapWindow(position, 4); // throws IOException
+		return m_window.getInt((int)(position - m_windowStart));
+	}
+	
+	private int readDataShort(long position) throws IOException
+	{
+		mapWindow(position, 2); // throws IOException
+		return m_window.getShort((int)(position - m_windowStart)) & 0xffff;
+	}
+	
+	private String readString(int position, int length)
+	{
+		byte[] bytes = new byte[length];
+		m_window.position(position);
+		m_window.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
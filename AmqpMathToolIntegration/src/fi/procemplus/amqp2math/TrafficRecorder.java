@@ -0,0 +1,149 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Records received messages to a binary log for replay (see
+ * ReplayTopicConnector). The log consists of two files. The data file has,
+ * for each message, the arrival time, the routing key, the content type and
+ * the body. The index file has, for each message, the position in the data
+ * file and the arrival time, so that the replay can schedule the messages
+ * without reading the data. Everything is big-endian. The class is thread-safe.
+ * @author Petri Kannisto
+ */
+class TrafficRecorder
+{
+	// Constants
+	// Each file starts with a magic number that also identifies the format version
+	static final int dataMagic = 0x414d4431; // "AMD1"
+	static final int indexMagic = 0x414d4931; // "AMI1"
+	static final int headerLength = 4;
+	
+	// An index entry is the position and the arrival time
+	static final int indexEntryLength = 16;
+	
+	// The length of a string that is null
+	static final int nullStringLength = 0xffff;
+	
+	// The extension of the index file after the name of the data file
+	static final String indexExtension = ".idx";
+	
+	private static final int bufferSize = 64 * 1024;
+	
+	// These are synchronized with the lock of this object
+	private final DataOutputStream m_data;
+	private final DataOutputStream m_index;
+	private long m_position = headerLength;
+	private IOException m_failure = null;
+	
+	
+	/**
+	 * Constructor. Any existing log with the same name is overwritten.
+	 * @param path The path of the data file. The index file has the extension ".idx" appended.
+	 * @throws IOException Thrown if the files cannot be created.
+	 */
+	TrafficRecorder(String path) throws IOException
+	{
+		m_data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), bufferSize));
+		
+		try
+		{
+			m_index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path + indexExtension), bufferSize));
+		}
+		catch (IOException e)
+		{
+			m_data.close();
+			throw e;
+		}
+		
+		m_data.writeInt(dataMagic);
+		m_index.writeInt(indexMagic);
+	}
+	
+	/**
+	 * Appends a message. If writing fails, recording stops, and close() reports the failure.
+	 * @param msg Message.
+	 */
+	synchronized void write(ReceivedMessage msg)
+	{
+		if (m_failure != null)
+		{
+			return;
+		}
+		
+		try
+		{
+			// The files are buffered and flushed independently, so a log cut
+			// short may index messages that are missing or incomplete in the
+			// data file. TrafficLogReader leaves these out.
+			byte[] routingKey = msg.getRoutingKey().getBytes(StandardCharsets.UTF_8);
+			String contentType = msg.getContentType();
+			byte[] contentTypeBytes = contentType == null ? new byte[0] : contentType.getBytes(StandardCharsets.UTF_8);
+			int bodyLength = msg.getBodyLength();
+			
+			m_data.writeLong(msg.getArrivalTime());
+			m_data.writeShort(routingKey.length);
+			m_data.write(routingKey);
+			m_data.writeShort(contentType == null ? nullStringLength : contentTypeBytes.length);
+			m_data.write(contentTypeBytes);
+			m_data.writeInt(bodyLength);
+			m_data.write(msg.getBody(), 0, bodyLength);
+			
+			m_index.writeLong(m_position);
+			m_index.writeLong(msg.getArrivalTime());
+			m_position += 8 + 2 + routingKey.length + 2 + contentTypeBytes.length + 4 + bodyLength;
+		}
+		catch (IOException e)
+		{
+			m_failure = e;
+		}
+	}
+	
+	/**
+	 * Writes everything to the files and closes them.
+	 * @throws IOException Thrown if writing has failed at any time during recording.
+	 */
+	synchronized void close() throws IOException
+	{
+		IOException failure = m_failure;
+		
+		try
+		{
+			m_data.close();
+		}
+		catch (IOException e)
+		{
+			failure = failure == null ? e : failure;
+		}
+		
+		try
+		{
+			m_index.close();
+		}
+		catch (IOException e)
+		{
+			failure = failure == null ? e : failure;
+		}
+		
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the publish and receive paths of the connector. Each benchmark
+ * is measured both for throughput and for latency (sample time).
+ * By default, the in-process loopback stands in for the broker, which
+ * isolates the cost of the connector itself. To measure against a real broker,
+ * give its host name with the parameter "broker" (e.g., "-p broker=localhost").
+ * @author Petri Kannisto
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectorBenchmark
+{
+	private static final String exchangeName = "amqp2math.benchmark";
+	private static final String roundtripTopic = "bench.roundtrip";
+	private static final String unboundTopic = "bench.unbound";
+	private static final int batchSize = 32;
+	private static final long receiveTimeoutMillis = 5000;
+	
+	/**
+	 * The host name of the broker, or "loopback" to communicate within the JVM.
+	 */
+	@Param({ "loopback" })
+	public String broker;
+	
+	/**
+	 * The size of each message body in bytes.
+	 */
+	@Param({ "64", "1024", "16384" })
+	public int payloadSize;
+	
+	private AmqpTopicConnectorSync m_sender = null;
+	private AmqpTopicConnectorSync m_receiver = null;
+	
+	private byte[] m_payload = null;
+	private String[] m_batchTopics = null;
+	private byte[][] m_batchPayloads = null;
+	
+	
+	/**
+	 * Sets up the connectors.
+	 * @throws CommunicationException Thrown if connecting fails.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws CommunicationException
+	{
+		m_sender = new AmqpTopicConnectorSync(createProps(), new String[0]);
+		m_receiver = new AmqpTopicConnectorSync(createProps(), new String[] { roundtripTopic });
+		m_sender.openConnectionIfNotOpen();
+		m_receiver.openConnectionIfNotOpen();
+		
+		m_payload = new byte[payloadSize];
+		Arrays.fill(m_payload, (byte)0x5a);
+		
+		m_batchTopics = new String[batchSize];
+		m_batchPayloads = new byte[batchSize][];
+		Arrays.fill(m_batchTopics, roundtripTopic);
+		Arrays.fill(m_batchPayloads, m_payload);
+	}
+	
+	/**
+	 * Closes the connectors.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		m_sender.close();
+		m_receiver.close();
+	}
+	
+	/**
+	 * Discards anything left over from an iteration, so that the queue
+	 * starts empty.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	@TearDown(Level.Iteration)
+	public void drain() throws CommunicationException
+	{
+		while (m_receiver.getMessages(1000).getCount() > 0)
+		{
+			// Keep draining
+		}
+	}
+	
+	/**
+	 * Publishes to a topic that nobody listens to. This measures the cost of
+	 * sendMessage() without any consumer.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	@Benchmark
+	public void sendMessage() throws CommunicationException
+	{
+		m_sender.sendMessage(unboundTopic, m_payload);
+	}
+	
+	/**
+	 * Polls an empty queue. This is what a Matlab polling loop does most of the time.
+	 * @return Message (always null).
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	@Benchmark
+	public ReceivedMessage getMessageEmpty() throws CommunicationException
+	{
+		return m_sender.getMessage();
+	}
+	
+	/**
+	 * Sends a message and receives it back.
+	 * @return Received message.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	@Benchmark
+	public ReceivedMessage sendAndGetMessage() throws CommunicationException
+	{
+		m_sender.sendMessage(roundtripTopic, m_payload);
+		return expectMessage(m_receiver.getMessage(receiveTimeoutMillis));
+	}
+	
+	/**
+	 * Sends a batch of messages and receives them back. The score is per batch.
+	 * @return Count of received messages.
+	 * @throws CommunicationException Thrown if communication fails.
+	 */
+	@Benchmark
+	public int sendAndGetMessages() throws CommunicationException
+	{
+		m_sender.sendMessages(m_batchTopics, m_batchPayloads);
+		
+		int receivedCount = 0;
+		
+		while (receivedCount < batchSize)
+		{
+			ReceivedMessageBatch batch = m_receiver.getMessages(batchSize - receivedCount, receiveTimeoutMillis);
+			
+			if (batch.getCount() == 0)
+			{
+				throw new IllegalStateException("Messages lost; received " + receivedCount + " of " + batchSize);
+			}
+			
+			receivedCount += batch.getCount();
+		}
+		
+		return receivedCount;
+	}
+	
+	private AmqpPropsManager createProps()
+	{
+		boolean loopback = "loopback".equals(broker);
+		AmqpPropsManager props = new AmqpPropsManager(loopback ? "localhost" : broker, exchangeName, "guest", "guest");
+		props.setLoopback(loopback);
+		props.setExchangeAutoDelete(true);
+		
+		// Otherwise, the wait would include the poll interval
+		props.setPushConsumer(true);
+		
+		return props;
+	}
+	
+	private static ReceivedMessage expectMessage(ReceivedMessage msg)
+	{
+		if (msg == null)
+		{
+			throw new IllegalStateException("Message lost");
+		}
+		
+		return msg;
+	}
+}
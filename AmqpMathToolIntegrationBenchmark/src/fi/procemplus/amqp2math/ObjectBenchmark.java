@@ -0,0 +1,96 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Benchmarks for the small objects that the connector creates or calls for
+ * every message. These need no broker.
+ * @author Petri Kannisto
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectBenchmark
+{
+	private AmqpPropsManager m_props = null;
+	private BasicProperties m_basicProps = null;
+	private byte[] m_body = null;
+	private ReceivedMessage m_doublesMessage = null;
+	
+	
+	/**
+	 * Sets up the objects.
+	 */
+	@Setup
+	public void setUp()
+	{
+		m_props = new AmqpPropsManager("localhost", "amqp2math.benchmark", "guest", "guest");
+		m_basicProps = new BasicProperties();
+		m_body = new byte[1024];
+		
+		byte[] doubles = NumericPayloadCodec.encode(new double[128]);
+		BasicProperties doubleProps = new BasicProperties().builder()
+				.contentType(NumericPayloadCodec.contentTypeFloat64)
+				.build();
+		m_doublesMessage = new ReceivedMessage("bench.doubles", doubleProps, doubles, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Constructs a received message like the connector does for every delivery.
+	 * @return Message.
+	 */
+	@Benchmark
+	public ReceivedMessage newReceivedMessage()
+	{
+		return new ReceivedMessage("bench.topic", m_basicProps, m_body, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Builds the connection URL.
+	 * @return URL.
+	 */
+	@Benchmark
+	public String getUrl()
+	{
+		return m_props.getUrl();
+	}
+	
+	/**
+	 * Decodes 128 doubles from a message body.
+	 * @return Values.
+	 */
+	@Benchmark
+	public double[] getBodyAsDoubles()
+	{
+		return m_doublesMessage.getBodyAsDoubles();
+	}
+}
@@ -0,0 +1,451 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2mathtest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import fi.procemplus.amqp2math.AmqpPropsManager;
+import fi.procemplus.amqp2math.AmqpTopicConnectorSync;
+import fi.procemplus.amqp2math.CommunicationException;
+import fi.procemplus.amqp2math.ReceivedMessageBatch;
+
+/**
+ * Generates load with multiple publisher and consumer threads, and reports the
+ * throughput and the end-to-end latency. The latency is measured from the send
+ * time written at the beginning of each message to the time when a consumer gets
+ * the message. With a target rate, the send time is the time when the message
+ * was due rather than when it was actually sent. Otherwise, a publisher that
+ * falls behind would hide the delay from the results.
+ * @author Petri Kannisto
+ */
+class LoadGenerator
+{
+	// Constants
+	private final String CLASS_NAME = "LoadGenerator";
+	private final String TOPIC_PREFIX = "load.topic.";
+	private final int RECEIVE_BATCH_SIZE = 256;
+	private final long RECEIVE_TIMEOUT_MS = 100;
+	private final long CONSUMER_IDLE_LIMIT_MS = 3000;
+	private final int HISTOGRAM_BAR_WIDTH = 50;
+	
+	private final Ui m_ui;
+	private final AmqpPropsManager m_amqpProps;
+	private final LoadSettings m_settings;
+	
+	// The total count of sent messages. Negative until the publishers have finished.
+	private volatile long m_publishedTotal = -1;
+	
+	
+	/**
+	 * Constructor.
+	 * @param ui User interface.
+	 * @param amqpProps Connection properties.
+	 * @param settings Load test parameters.
+	 */
+	LoadGenerator(Ui ui, AmqpPropsManager amqpProps, LoadSettings settings)
+	{
+		m_ui = ui;
+		m_amqpProps = amqpProps;
+		m_settings = settings;
+	}
+	
+	/**
+	 * Runs the load test and prints the results.
+	 * @throws IOException Thrown if connecting fails.
+	 * @throws InterruptedException Thrown if interrupted.
+	 */
+	void run() throws IOException, InterruptedException
+	{
+		String[] topics = new String[m_settings.getTopicCount()];
+		
+		for (int i = 0; i < topics.length; ++i)
+		{
+			topics[i] = TOPIC_PREFIX + i;
+		}
+		
+		Consumer[] consumers = new Consumer[m_settings.getConsumerCount()];
+		Publisher[] publishers = new Publisher[m_settings.getPublisherCount()];
+		
+		try
+		{
+			// Open every connector before starting, so that connecting does not
+			// count in the results. The consumers must listen before anything is sent.
+			myPrintMessage("Opening connectors: " + m_settings);
+			
+			for (int i = 0; i < consumers.length; ++i)
+			{
+				consumers[i] = new Consumer(openConnector(topics));
+			}
+			for (int i = 0; i < publishers.length; ++i)
+			{
+				publishers[i] = new Publisher(openConnector(new String[0]), topics, i);
+			}
+			
+			myPrintMessage("Running...");
+			
+			Thread[] consumerThreads = startThreads(consumers, "consumer");
+			Thread[] publisherThreads = startThreads(publishers, "publisher");
+			long publishedTotal = 0;
+			
+			for (int i = 0; i < publishers.length; ++i)
+			{
+				publisherThreads[i].join();
+				publishedTotal += publishers[i].m_sentCount;
+			}
+			
+			m_publishedTotal = publishedTotal;
+			myPrintMessage("Publishing finished. Waiting for the consumers...");
+			
+			for (Thread t : consumerThreads)
+			{
+				t.join();
+			}
+			
+			printReport(publishers, consumers);
+		}
+		finally
+		{
+			for (Consumer c : consumers)
+			{
+				if (c != null) c.m_connector.close();
+			}
+			for (Publisher p : publishers)
+			{
+				if (p != null) p.m_connector.close();
+			}
+		}
+	}
+	
+	private AmqpTopicConnectorSync openConnector(String[] topics) throws IOException
+	{
+		AmqpTopicConnectorSync connector = new AmqpTopicConnectorSync(m_amqpProps, topics);
+		
+		try
+		{
+			connector.openConnectionIfNotOpen();
+		}
+		catch (CommunicationException e)
+		{
+			connector.close();
+			throw new IOException("Failed to connect: " + e.getMessage(), e);
+		}
+		
+		return connector;
+	}
+	
+	private Thread[] startThreads(Runnable[] tasks, String name)
+	{
+		Thread[] threads = new Thread[tasks.length];
+		
+		for (int i = 0; i < tasks.length; ++i)
+		{
+			threads[i] = new Thread(tasks[i], "LoadGenerator-" + name + "-" + i);
+			threads[i].start();
+		}
+		
+		return threads;
+	}
+	
+	private void printReport(Publisher[] publishers, Consumer[] consumers)
+	{
+		long sent = 0;
+		long sendFailures = 0;
+		long publishNanos = 0;
+		String firstError = null;
+		
+		for (Publisher p : publishers)
+		{
+			sent += p.m_sentCount;
+			sendFailures += p.m_failedCount;
+			publishNanos = Math.max(publishNanos, p.m_elapsedNanos);
+			firstError = firstError != null ? firstError : p.m_firstError;
+		}
+		
+		PreciseLatencyHistogram latencies = new PreciseLatencyHistogram();
+		long received = 0;
+		long receiveFailures = 0;
+		long receiveStart = Long.MAX_VALUE;
+		long receiveEnd = Long.MIN_VALUE;
+		
+		for (Consumer c : consumers)
+		{
+			latencies.add(c.m_latencies);
+			received += c.m_latencies.getCount();
+			receiveFailures += c.m_failedCount;
+			firstError = firstError != null ? firstError : c.m_firstError;
+			
+			if (c.m_latencies.getCount() > 0)
+			{
+				receiveStart = Math.min(receiveStart, c.m_firstReceiveNanos);
+				receiveEnd = Math.max(receiveEnd, c.m_lastReceiveNanos);
+			}
+		}
+		
+		long expected = sent * consumers.length;
+		
+		myPrintMessage("Results: " + m_settings);
+		myPrintMessage(String.format("Published %d messages in %.1f s: %.0f msg/s, %.2f MB/s; %d failed",
+				sent, publishNanos / 1e9, perSecond(sent, publishNanos),
+				perSecond(sent * m_settings.getMessageSize(), publishNanos) / 1e6, sendFailures));
+		
+		if (consumers.length > 0)
+		{
+			long receiveNanos = Math.max(receiveEnd - receiveStart, 0);
+			myPrintMessage(String.format("Received %d of %d expected messages: %.0f msg/s; %d missing; %d receive errors",
+					received, expected, perSecond(received, receiveNanos), Math.max(expected - received, 0), receiveFailures));
+			myPrintMessage(String.format("Latency (us): min %d, mean %.0f, p50 %d, p99 %d, p999 %d, max %d",
+					latencies.getMin(), latencies.getMean(), latencies.getPercentile(50),
+					latencies.getPercentile(99), latencies.getPercentile(99.9), latencies.getMax()));
+			printHistogram(latencies);
+		}
+		
+		if (firstError != null)
+		{
+			myPrintError("First error: " + firstError);
+		}
+	}
+	
+	private void printHistogram(PreciseLatencyHistogram latencies)
+	{
+		if (latencies.getCount() == 0)
+		{
+			return;
+		}
+		
+		// One row for each power of two, starting from 64 us
+		long[] bounds = new long[64];
+		int rowCount = 0;
+		bounds[0] = 0;
+		long upper = 64;
+		
+		while (true)
+		{
+			bounds[++rowCount] = upper;
+			
+			if (upper > latencies.getMax()) break;
+			upper *= 2;
+		}
+		
+		long[] counts = new long[rowCount];
+		long maxCount = 1;
+		
+		for (int i = 0; i < rowCount; ++i)
+		{
+			counts[i] = latencies.getCountBetween(bounds[i], bounds[i + 1]);
+			maxCount = Math.max(maxCount, counts[i]);
+		}
+		
+		myPrintMessage("Latency histogram:");
+		
+		for (int i = 0; i < rowCount; ++i)
+		{
+			char[] bar = new char[(int)(counts[i] * HISTOGRAM_BAR_WIDTH / maxCount)];
+			Arrays.fill(bar, '#');
+			myPrintMessage(String.format("%10s - %10s | %-" + HISTOGRAM_BAR_WIDTH + "s %d",
+					formatMicros(bounds[i]), formatMicros(bounds[i + 1]), new String(bar), counts[i]));
+		}
+	}
+	
+	private static String formatMicros(long micros)
+	{
+		if (micros < 1000)
+		{
+			return micros + " us";
+		}
+		else if (micros < 1000000)
+		{
+			return String.format("%.2f ms", micros / 1e3);
+		}
+		else
+		{
+			return String.format("%.2f s", micros / 1e6);
+		}
+	}
+	
+	private static double perSecond(long count, long nanos)
+	{
+		return nanos <= 0 ? 0 : count * 1e9 / nanos;
+	}
+	
+	private void myPrintMessage(String msg)
+	{
+		m_ui.printMessage(msg, CLASS_NAME);
+	}
+	
+	private void myPrintError(String msg)
+	{
+		m_ui.printError(msg, CLASS_NAME);
+	}
+	
+	
+	/**
+	 * Publishes messages in a thread of its own. The results are read
+	 * after the thread has been joined.
+	 */
+	private class Publisher implements Runnable
+	{
+		private final AmqpTopicConnectorSync m_connector;
+		private final String[] m_topics;
+		private final int m_firstTopicIndex;
+		
+		private long m_sentCount = 0;
+		private long m_failedCount = 0;
+		private long m_elapsedNanos = 0;
+		private String m_firstError = null;
+		
+		
+		Publisher(AmqpTopicConnectorSync connector, String[] topics, int index)
+		{
+			m_connector = connector;
+			m_topics = topics;
+			m_firstTopicIndex = index % topics.length;
+		}
+		
+		@Override
+		public void run()
+		{
+			// The connector has sent the bytes before returning, so the buffer can be reused
+			byte[] payload = new byte[m_settings.getMessageSize()];
+			ByteBuffer stamp = ByteBuffer.wrap(payload);
+			
+			int rate = m_settings.getRatePerPublisher();
+			long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+			long start = System.nanoTime();
+			long end = start + TimeUnit.SECONDS.toNanos(m_settings.getDurationSeconds());
+			long nextDue = start;
+			int topicIndex = m_firstTopicIndex;
+			
+			while (true)
+			{
+				long now = System.nanoTime();
+				
+				if (now - end >= 0)
+				{
+					break;
+				}
+				
+				if (intervalNanos > 0)
+				{
+					if (nextDue - now > 0)
+					{
+						LockSupport.parkNanos(nextDue - now);
+						continue;
+					}
+					
+					stamp.putLong(0, nextDue);
+					nextDue += intervalNanos;
+				}
+				else
+				{
+					stamp.putLong(0, now);
+				}
+				
+				try
+				{
+					m_connector.sendMessage(m_topics[topicIndex], payload);
+					++m_sentCount;
+				}
+				catch (CommunicationException e)
+				{
+					++m_failedCount;
+					m_firstError = m_firstError != null ? m_firstError : e.getMessage();
+				}
+				
+				topicIndex = (topicIndex + 1) % m_topics.length;
+			}
+			
+			m_elapsedNanos = System.nanoTime() - start;
+		}
+	}
+	
+	/**
+	 * Receives messages in a thread of its own until everything published has
+	 * arrived or nothing has arrived for a while after publishing. The results are
+	 * read after the thread has been joined.
+	 */
+	private class Consumer implements Runnable
+	{
+		private final AmqpTopicConnectorSync m_connector;
+		private final PreciseLatencyHistogram m_latencies = new PreciseLatencyHistogram();
+		
+		private long m_failedCount = 0;
+		private long m_firstReceiveNanos = 0;
+		private long m_lastReceiveNanos = 0;
+		private String m_firstError = null;
+		
+		
+		Consumer(AmqpTopicConnectorSync connector)
+		{
+			m_connector = connector;
+		}
+		
+		@Override
+		public void run()
+		{
+			long lastActivity = System.nanoTime();
+			
+			while (true)
+			{
+				long publishedTotal = m_publishedTotal;
+				
+				if (publishedTotal >= 0)
+				{
+					boolean allReceived = m_latencies.getCount() >= publishedTotal;
+					boolean idle = System.nanoTime() - lastActivity > TimeUnit.MILLISECONDS.toNanos(CONSUMER_IDLE_LIMIT_MS);
+					
+					if (allReceived || idle) break;
+				}
+				
+				ReceivedMessageBatch batch = null;
+				
+				try
+				{
+					batch = m_connector.getMessages(RECEIVE_BATCH_SIZE, RECEIVE_TIMEOUT_MS);
+				}
+				catch (CommunicationException e)
+				{
+					++m_failedCount;
+					m_firstError = m_firstError != null ? m_firstError : e.getMessage();
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECEIVE_TIMEOUT_MS));
+					continue;
+				}
+				
+				long now = System.nanoTime();
+				byte[][] bodies = batch.getBodies();
+				
+				if (bodies.length == 0)
+				{
+					continue;
+				}
+				
+				for (byte[] body : bodies)
+				{
+					long sendTime = ByteBuffer.wrap(body).getLong(0);
+					m_latencies.record(TimeUnit.NANOSECONDS.toMicros(now - sendTime));
+				}
+				
+				if (m_firstReceiveNanos == 0)
+				{
+					m_firstReceiveNanos = now;
+				}
+				
+				m_lastReceiveNanos = now;
+				lastActivity = now;
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2mathtest;
+
+/**
+ * The parameters of a load test.
+ * @author Petri Kannisto
+ */
+class LoadSettings
+{
+	// The minimum message size. Each message begins with its send time.
+	static final int minMessageSize = 8;
+	
+	private int m_publisherCount = 1;
+	private int m_consumerCount = 1;
+	private int m_messageSize = 256;
+	private int m_topicCount = 1;
+	private int m_ratePerPublisher = 1000;
+	private int m_durationSeconds = 10;
+	
+	
+	/**
+	 * Sets a parameter by its name, as given on the command line.
+	 * @param name Name: "publishers", "consumers", "size", "topics", "rate" or "duration".
+	 * @param value Value.
+	 * @return True if the name was recognised, otherwise false.
+	 * @throws IllegalArgumentException Thrown if the value is invalid.
+	 */
+	boolean set(String name, String value) throws IllegalArgumentException
+	{
+		switch (name)
+		{
+		case "publishers":
+			setPublisherCount(Integer.parseInt(value));
+			return true;
+		case "consumers":
+			setConsumerCount(Integer.parseInt(value));
+			return true;
+		case "size":
+			setMessageSize(Integer.parseInt(value));
+			return true;
+		case "topics":
+			setTopicCount(Integer.parseInt(value));
+			return true;
+		case "rate":
+			setRatePerPublisher(Integer.parseInt(value));
+			return true;
+		case "duration":
+			setDurationSeconds(Integer.parseInt(value));
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Sets the count of publisher threads. Each thread has a connector of its own.
+	 * @param count Count. Must be at least 1.
+	 */
+	void setPublisherCount(int count)
+	{
+		m_publisherCount = expectAtLeast(count, 1, "Publisher count");
+	}
+	
+	/**
+	 * Gets the count of publisher threads.
+	 * @return Count.
+	 */
+	int getPublisherCount()
+	{
+		return m_publisherCount;
+	}
+	
+	/**
+	 * Sets the count of consumer threads. Each thread has a connector of its own,
+	 * and it listens to every topic, so each message is received once per consumer.
+	 * @param count Count. Can be 0 to only publish.
+	 */
+	void setConsumerCount(int count)
+	{
+		m_consumerCount = expectAtLeast(count, 0, "Consumer count");
+	}
+	
+	/**
+	 * Gets the count of consumer threads.
+	 * @return Count.
+	 */
+	int getConsumerCount()
+	{
+		return m_consumerCount;
+	}
+	
+	/**
+	 * Sets the size of each message.
+	 * @param size Size in bytes. Must be at least minMessageSize.
+	 */
+	void setMessageSize(int size)
+	{
+		m_messageSize = expectAtLeast(size, minMessageSize, "Message size");
+	}
+	
+	/**
+	 * Gets the size of each message.
+	 * @return Size in bytes.
+	 */
+	int getMessageSize()
+	{
+		return m_messageSize;
+	}
+	
+	/**
+	 * Sets the count of topics. The publishers send to the topics in turn.
+	 * @param count Count. Must be at least 1.
+	 */
+	void setTopicCount(int count)
+	{
+		m_topicCount = expectAtLeast(count, 1, "Topic count");
+	}
+	
+	/**
+	 * Gets the count of topics.
+	 * @return Count.
+	 */
+	int getTopicCount()
+	{
+		return m_topicCount;
+	}
+	
+	/**
+	 * Sets the target rate of each publisher.
+	 * @param rate Messages per second, or 0 to send as fast as possible.
+	 */
+	void setRatePerPublisher(int rate)
+	{
+		m_ratePerPublisher = expectAtLeast(rate, 0, "Rate");
+	}
+	
+	/**
+	 * Gets the target rate of each publisher.
+	 * @return Messages per second, or 0 if unlimited.
+	 */
+	int getRatePerPublisher()
+	{
+		return m_ratePerPublisher;
+	}
+	
+	/**
+	 * Sets how long to publish.
+	 * @param seconds Duration in seconds. Must be at least 1.
+	 */
+	void setDurationSeconds(int seconds)
+	{
+		m_durationSeconds = expectAtLeast(seconds, 1, "Duration");
+	}
+	
+	/**
+	 * Gets how long to publish.
+	 * @return Duration in seconds.
+	 */
+	int getDurationSeconds()
+	{
+		return m_durationSeconds;
+	}
+	
+	@Override
+	public String toString()
+	{
+		String rate = m_ratePerPublisher == 0 ? "unlimited" : m_ratePerPublisher + " msg/s";
+		return String.format("publishers=%d consumers=%d size=%d topics=%d rate=%s duration=%d s",
+				m_publisherCount, m_consumerCount, m_messageSize, m_topicCount, rate, m_durationSeconds);
+	}
+	
+	private static int expectAtLeast(int value, int min, String name)
+	{
+		if (value < min)
+		{
+			throw new IllegalArgumentException(name + " must be at least " + min);
+		}
+		
+		return value;
+	}
+}
@@ -0,0 +1,189 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2mathtest;
+
+/**
+ * A histogram of latencies in microseconds. The buckets are fixed: below 64 us,
+ * each microsecond has a bucket of its own, and above that, each power of two is
+ * divided into 32 buckets. Therefore, the precision is about 3 % regardless
+ * of the magnitude. The class is not thread-safe; each thread should record into
+ * a histogram of its own and the histograms should then be merged. This differs
+ * from the histograms in the statistics of the connector (see HistogramSnapshot),
+ * which have a bucket for each power of two so that the connector can record
+ * every message cheaply from any thread. There, a percentile can be up to twice
+ * the actual value, which is too coarse for comparing the results of load tests.
+ * Therefore, the same traffic gives higher percentiles in the statistics than here.
+ * @author Petri Kannisto
+ */
+class PreciseLatencyHistogram
+{
+	// Constants
+	private static final int subBucketBits = 5;
+	private static final int subBucketCount = 1 << subBucketBits; // 32
+	private static final int linearLimit = subBucketCount * 2; // 64 us
+	private static final int maxExponent = 40; // about 12 days in microseconds
+	private static final int bucketCount = linearLimit + (maxExponent - subBucketBits) * subBucketCount;
+	private static final long maxValue = (1L << (maxExponent + 1)) - 1;
+	
+	private final long[] m_counts = new long[bucketCount];
+	private long m_totalCount = 0;
+	private long m_min = Long.MAX_VALUE;
+	private long m_max = 0;
+	private double m_sum = 0;
+	
+	
+	/**
+	 * Records a value.
+	 * @param micros Latency in microseconds. Negative values are recorded as 0.
+	 */
+	void record(long micros)
+	{
+		long value = Math.min(Math.max(micros, 0), maxValue);
+		
+		++m_counts[getBucketIndex(value)];
+		++m_totalCount;
+		m_sum += value;
+		m_min = Math.min(m_min, value);
+		m_max = Math.max(m_max, value);
+	}
+	
+	/**
+	 * Adds the values of another histogram to this one.
+	 * @param other Other histogram.
+	 */
+	void add(PreciseLatencyHistogram other)
+	{
+		for (int i = 0; i < bucketCount; ++i)
+		{
+			m_counts[i] += other.m_counts[i];
+		}
+		
+		m_totalCount += other.m_totalCount;
+		m_sum += other.m_sum;
+		m_min = Math.min(m_min, other.m_min);
+		m_max = Math.max(m_max, other.m_max);
+	}
+	
+	/**
+	 * Returns the count of recorded values.
+	 * @return Count.
+	 */
+	long getCount()
+	{
+		return m_totalCount;
+	}
+	
+	/**
+	 * Returns the smallest recorded value.
+	 * @return Value in microseconds, or 0 if nothing has been recorded.
+	 */
+	long getMin()
+	{
+		return m_totalCount == 0 ? 0 : m_min;
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 * @return Value in microseconds.
+	 */
+	long getMax()
+	{
+		return m_max;
+	}
+	
+	/**
+	 * Returns the mean of the recorded values.
+	 * @return Mean in microseconds, or 0 if nothing has been recorded.
+	 */
+	double getMean()
+	{
+		return m_totalCount == 0 ? 0 : m_sum / m_totalCount;
+	}
+	
+	/**
+	 * Returns the value at the given percentile. The value is the upper bound of
+	 * the bucket, so it is never smaller than the actual value.
+	 * @param percentile Percentile, e.g., 99.9.
+	 * @return Value in microseconds, or 0 if nothing has been recorded.
+	 */
+	long getPercentile(double percentile)
+	{
+		if (m_totalCount == 0)
+		{
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * m_totalCount));
+		long cumulative = 0;
+		
+		for (int i = 0; i < bucketCount; ++i)
+		{
+			cumulative += m_counts[i];
+			
+			if (cumulative >= rank)
+			{
+				return Math.min(getBucketUpperBound(i), m_max);
+			}
+		}
+		
+		return m_max;
+	}
+	
+	/**
+	 * Returns the count of values from the given value (inclusive) to the other
+	 * (exclusive). The values are rounded to bucket boundaries.
+	 * @param fromMicros Lower bound.
+	 * @param toMicros Upper bound.
+	 * @return Count.
+	 */
+	long getCountBetween(long fromMicros, long toMicros)
+	{
+		int first = getBucketIndex(Math.min(fromMicros, maxValue));
+		int last = toMicros > maxValue ? bucketCount : getBucketIndex(toMicros);
+		long count = 0;
+		
+		for (int i = first; i < last; ++i)
+		{
+			count += m_counts[i];
+		}
+		
+		return count;
+	}
+	
+	private static int getBucketIndex(long value)
+	{
+		if (value < linearLimit)
+		{
+			return (int)value;
+		}
+		
+		// The exponent is at least 6 here; the top 6 bits select the sub-bucket
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - subBucketBits;
+		int subBucket = (int)(value >>> shift) - subBucketCount;
+		return linearLimit + (exponent - subBucketBits - 1) * subBucketCount + subBucket;
+	}
+	
+	private static long getBucketUpperBound(int index)
+	{
+		if (index < linearLimit)
+		{
+			return index;
+		}
+		
+		int exponent = (index - linearLimit) / subBucketCount + subBucketBits + 1;
+		int subBucket = (index - linearLimit) % subBucketCount + subBucketCount;
+		int shift = exponent - subBucketBits;
+		return ((long)(subBucket + 1) << shift) - 1;
+	}
+}
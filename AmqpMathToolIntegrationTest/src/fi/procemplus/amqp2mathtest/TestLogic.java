@@ -8,7 +8,7 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2mathtest;
 
@@ -18,6 +18,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 
 import fi.procemplus.amqp2math.AmqpPropsManager;
@@ -38,6 +39,7 @@ public class TestLogic
 	private boolean m_alreadyClosed = false;
 	private AmqpTopicConnectorSync m_connectorSend = null;
 	private AmqpTopicConnectorSync m_connectorRecv = null;
+	private AmqpPropsManager m_amqpProps = null;
 	
 	
 	/**
@@ -97,7 +99,7 @@ public class TestLogic
 		
 		while (true)
 		{
-			myPrintMessage("q: quit; r: check for receives msgs; s: send");
+			myPrintMessage("q: quit; r: check for receives msgs; s: send; l: load test");
 			String userInput = m_ui.promptUserInput("Input", "");
 			
 			if (userInput.equals("q"))
@@ -112,11 +114,105 @@ public class TestLogic
 			{
 				receive();
 			}
+			else if (userInput.equals("l"))
+			{
+				runLoadTestInteractive();
+			}
 		}
 		
 		myPrintMessage("Now quitting.");
 	}
 	
+	/**
+	 * Runs a load test without user interaction. The parameters are given as
+	 * "name=value" pairs. The connection parameters are "host", "port", "secure",
+	 * "exchange", "user", "password", "loopback" and "push" (for a push-based
+	 * consumer; enabled by default). For the other parameters, see LoadSettings.
+	 * @param args Parameters.
+	 * @throws IOException Thrown if connecting fails.
+	 * @throws InterruptedException Thrown if interrupted.
+	 */
+	public void runLoadTest(String[] args) throws IOException, InterruptedException
+	{
+		if (m_alreadyClosed)
+		{
+			throw new IllegalStateException("Test logic object already closed");
+		}
+		
+		HashMap<String, String> connParams = new HashMap<>();
+		LoadSettings settings = new LoadSettings();
+		
+		for (String arg : args)
+		{
+			int separatorIndex = arg.indexOf('=');
+			
+			if (separatorIndex < 1)
+			{
+				throw new IllegalArgumentException("Expected name=value, got \"" + arg + "\"");
+			}
+			
+			String name = arg.substring(0, separatorIndex).trim().toLowerCase();
+			String value = arg.substring(separatorIndex + 1).trim();
+			
+			if (!settings.set(name, value))
+			{
+				connParams.put(name, value);
+			}
+		}
+		
+		boolean isSecure = getBoolFromUserInput(getOrDefault(connParams, "secure", "n"));
+		
+		AmqpPropsManager amqpProps = new AmqpPropsManager(
+				getOrDefault(connParams, "host", "localhost"),
+				getOrDefault(connParams, "exchange", "my.exchange"),
+				getOrDefault(connParams, "user", "guest"),
+				getOrDefault(connParams, "password", "guest"));
+		amqpProps.setSecure(isSecure);
+		amqpProps.setPort(Integer.parseInt(getOrDefault(connParams, "port", isSecure ? "5671" : "5672")));
+		amqpProps.setLoopback(getBoolFromUserInput(getOrDefault(connParams, "loopback", "n")));
+		amqpProps.setPushConsumer(getBoolFromUserInput(getOrDefault(connParams, "push", "y")));
+		
+		if (!connParams.isEmpty())
+		{
+			throw new IllegalArgumentException("Unknown parameters: " + connParams.keySet());
+		}
+		
+		new LoadGenerator(m_ui, amqpProps, settings).run();
+	}
+	
+	private void runLoadTestInteractive()
+	{
+		LoadSettings settings = new LoadSettings();
+		
+		try
+		{
+			settings.setPublisherCount(Integer.parseInt(m_ui.promptUserInput("Publisher threads", Integer.toString(settings.getPublisherCount()))));
+			settings.setConsumerCount(Integer.parseInt(m_ui.promptUserInput("Consumer threads", Integer.toString(settings.getConsumerCount()))));
+			settings.setMessageSize(Integer.parseInt(m_ui.promptUserInput("Message size in bytes", Integer.toString(settings.getMessageSize()))));
+			settings.setTopicCount(Integer.parseInt(m_ui.promptUserInput("Topic count", Integer.toString(settings.getTopicCount()))));
+			settings.setRatePerPublisher(Integer.parseInt(m_ui.promptUserInput("Messages per second per publisher (0 for unlimited)", Integer.toString(settings.getRatePerPublisher()))));
+			settings.setDurationSeconds(Integer.parseInt(m_ui.promptUserInput("Duration in seconds", Integer.toString(settings.getDurationSeconds()))));
+		}
+		catch (IllegalArgumentException e)
+		{
+			myPrintError("Invalid input: " + e.getMessage());
+			return;
+		}
+		
+		try
+		{
+			new LoadGenerator(m_ui, m_amqpProps, settings).run();
+		}
+		catch (IOException e)
+		{
+			myPrintError("Load test failed: " + e.getMessage());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
 	private void send()
 	{
 		// Sending some messages
@@ -193,6 +289,7 @@ public class TestLogic
         	amqpProps.setPort(port);
         	amqpProps.setExchangeDurable(isDurableExchange);
         	amqpProps.setExchangeAutoDelete(isAutoDeleteExchange);
+        	amqpProps.setShareConnection(true); // The connectors need only one connection
         	
         	myPrintMessage("Creating connectors and opening connections...");
         	
@@ -206,6 +303,7 @@ public class TestLogic
         		m_connectorSend = createConnectorAndOpen(amqpProps, new ArrayList<String>());
         		
         		myPrintMessage("Connectors created and opened.");
+        		m_amqpProps = amqpProps;
         		return true;
         	}
         	catch (IOException e)
@@ -247,6 +345,13 @@ public class TestLogic
 		return input.trim().toLowerCase().equals("y");
 	}
 	
+	private String getOrDefault(HashMap<String, String> params, String name, String defaultValue)
+	{
+		// Remove the parameter, so that any unknown parameters remain in the map
+		String value = params.remove(name);
+		return value == null ? defaultValue : value;
+	}
+	
 	private void myPrintMessage(String msg)
 	{
 		m_ui.printMessage(msg, CLASS_NAME);
@@ -8,12 +8,16 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2mathtest;
 
+import java.util.Arrays;
+
 /**
- * Entry point for the test program.
+ * Entry point for the test program. Without arguments, the program is interactive.
+ * With the arguments "load name=value ...", the program runs a load test without
+ * user interaction (see TestLogic.runLoadTest()).
  * @author Petri Kannisto
  */
 public class TestProgram
@@ -30,7 +34,14 @@ public class TestProgram
 			testLogic = new TestLogic(ui);
 			
 			// Run test logic
-			testLogic.run();
+			if (args.length > 0 && args[0].equals("load"))
+			{
+				testLogic.runLoadTest(Arrays.copyOfRange(args, 1, args.length));
+			}
+			else
+			{
+				testLogic.run();
+			}
 		}
 		catch (Exception e)
 		{
@@ -0,0 +1,129 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.Channel;
+
+public class AckBatcherUnitTest
+{
+	// The tags acknowledged with "multiple" through the fake channel
+	private final List<Long> m_acked = new ArrayList<>();
+	
+	
+	@Test
+	public void immediate() throws IOException
+	{
+		AckBatcher testObject = new AckBatcher(1, 0);
+		int generation = testObject.setChannel(createChannel());
+		
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 1));
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 3));
+		
+		// An older tag is covered already
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 2));
+		
+		assertEquals(2, m_acked.size());
+		assertEquals(3L, (long)m_acked.get(1));
+	}
+	
+	@Test
+	public void flushCount() throws IOException
+	{
+		AckBatcher testObject = new AckBatcher(10, 0);
+		int generation = testObject.setChannel(createChannel());
+		
+		// Not enough messages covered yet
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 9));
+		assertTrue(m_acked.isEmpty());
+		
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 12));
+		assertEquals(1, m_acked.size());
+		assertEquals(12L, (long)m_acked.get(0));
+		
+		// Counting restarts from the previous acknowledgement
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 20));
+		assertEquals(1, m_acked.size());
+		
+		testObject.flush();
+		assertEquals(2, m_acked.size());
+		assertEquals(20L, (long)m_acked.get(1));
+		
+		// Nothing pending anymore
+		testObject.flush();
+		assertEquals(2, m_acked.size());
+	}
+	
+	@Test
+	public void flushInterval() throws Exception
+	{
+		AckBatcher testObject = new AckBatcher(1000, 20);
+		int generation = testObject.setChannel(createChannel());
+		
+		testObject.ackUpTo(AckBatcher.toUserTag(generation, 1));
+		testObject.flushIfDue();
+		assertTrue(m_acked.isEmpty());
+		
+		Thread.sleep(40);
+		testObject.flushIfDue();
+		assertEquals(1, m_acked.size());
+	}
+	
+	@Test
+	public void replacedChannel() throws IOException
+	{
+		AckBatcher testObject = new AckBatcher(1, 0);
+		int oldGeneration = testObject.setChannel(createChannel());
+		int newGeneration = testObject.setChannel(createChannel());
+		
+		// The same delivery tag of the broker in another channel
+		assertNotEquals(AckBatcher.toUserTag(oldGeneration, 5), AckBatcher.toUserTag(newGeneration, 5));
+		
+		// A tag of the replaced channel is ignored
+		testObject.ackUpTo(AckBatcher.toUserTag(oldGeneration, 5));
+		assertTrue(m_acked.isEmpty());
+		
+		testObject.ackUpTo(AckBatcher.toUserTag(newGeneration, 5));
+		assertEquals(1, m_acked.size());
+	}
+	
+	private Channel createChannel()
+	{
+		// Only acknowledgements are expected
+		return (Channel)Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+				new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				if (method.getName().equals("basicAck") && (Boolean)args[1])
+				{
+					m_acked.add((Long)args[0]);
+					return null;
+				}
+				
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+}
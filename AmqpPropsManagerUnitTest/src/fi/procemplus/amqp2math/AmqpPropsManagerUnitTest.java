@@ -8,7 +8,7 @@
 // Author: Petri Kannisto, Tampere University, Finland
 // http://kannisto.org / petri.kannisto@tuni.fi
 // File created: 11/2020
-// Last modified: 11/2020
+// Last modified: 10/2026
 
 package fi.procemplus.amqp2math;
 
@@ -113,4 +113,295 @@ public class AmqpPropsManagerUnitTest
 		assertFalse(testObject.getExchangeAutoDelete());
 		assertFalse(testObject.getExchangeDurable());
 	}
+	
+	
+	// *** Queue ***
+	
+	@Test
+	public void queueName()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value (server-named)
+		assertEquals("", testObject.getQueueName());
+		
+		// Changing the value
+		testObject.setQueueName("my.queue");
+		assertEquals("my.queue", testObject.getQueueName());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void queueNameMustNotBeNull()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setQueueName(null);
+	}
+	
+	@Test
+	public void queueDurableFlag()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertFalse(testObject.getQueueDurable());
+		
+		// Changing the value
+		testObject.setQueueDurable(true);
+		assertTrue(testObject.getQueueDurable());
+	}
+	
+	
+	// *** Connection ***
+	
+	@Test
+	public void autoReconnectFlag()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertFalse(testObject.getAutoReconnect());
+		
+		// Changing the value
+		testObject.setAutoReconnect(true);
+		assertTrue(testObject.getAutoReconnect());
+	}
+	
+	@Test
+	public void shareConnectionFlag()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertFalse(testObject.getShareConnection());
+		
+		// Changing the value
+		testObject.setShareConnection(true);
+		assertTrue(testObject.getShareConnection());
+	}
+	
+	@Test
+	public void topicQueueCapacity()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertEquals(1000, testObject.getTopicQueueCapacity());
+		
+		// Changing the value
+		testObject.setTopicQueueCapacity(1);
+		assertEquals(1, testObject.getTopicQueueCapacity());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void topicQueueCapacityMustBePositive()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setTopicQueueCapacity(0);
+	}
+	
+	@Test
+	public void manualAck()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default values
+		assertFalse(testObject.getManualAck());
+		assertEquals(1, testObject.getAckFlushCount());
+		assertEquals(0, testObject.getAckFlushIntervalMillis());
+		
+		// Changing the values
+		testObject.setManualAck(true);
+		testObject.setAckFlushCount(50);
+		testObject.setAckFlushIntervalMillis(200);
+		assertTrue(testObject.getManualAck());
+		assertEquals(50, testObject.getAckFlushCount());
+		assertEquals(200, testObject.getAckFlushIntervalMillis());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void ackFlushCountMustBePositive()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setAckFlushCount(0);
+	}
+	
+	@Test
+	public void receiveBufferMaxBytes()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertEquals(0, testObject.getReceiveBufferMaxBytes());
+		
+		// Changing the value
+		testObject.setReceiveBufferMaxBytes(1024 * 1024);
+		assertEquals(1024 * 1024, testObject.getReceiveBufferMaxBytes());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void receiveBufferMaxBytesMustNotBeNegative()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setReceiveBufferMaxBytes(-1);
+	}
+	
+	@Test
+	public void outboundJournal()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default values
+		assertEquals(0, testObject.getOutboundJournalMaxBytes());
+		assertEquals(0, testObject.getJournalDrainRate());
+		
+		// Changing the values
+		testObject.setOutboundJournalMaxBytes(100 * 1024 * 1024);
+		testObject.setJournalDrainRate(500);
+		assertEquals(100 * 1024 * 1024, testObject.getOutboundJournalMaxBytes());
+		assertEquals(500, testObject.getJournalDrainRate());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void journalDrainRateMustNotBeNegative()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setJournalDrainRate(-1);
+	}
+	
+	@Test
+	public void compression()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default values
+		assertEquals(AmqpPropsManager.compressionNone, testObject.getCompression());
+		assertEquals(1024, testObject.getCompressionThreshold());
+		assertEquals(0, testObject.getCompressedTopics().length);
+		assertEquals(64 * 1024 * 1024, testObject.getMaxDecompressedBytes());
+		
+		// Changing the values
+		testObject.setCompression(AmqpPropsManager.compressionFast);
+		testObject.setCompressionThreshold(0);
+		testObject.setCompressedTopics(new String[] { "matrix.#" });
+		testObject.setMaxDecompressedBytes(1);
+		assertEquals(AmqpPropsManager.compressionFast, testObject.getCompression());
+		assertEquals(0, testObject.getCompressionThreshold());
+		assertArrayEquals(new String[] { "matrix.#" }, testObject.getCompressedTopics());
+		assertEquals(1, testObject.getMaxDecompressedBytes());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void maxDecompressedBytesMustBePositive()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setMaxDecompressedBytes(0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void compressionMustBeKnown()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setCompression("lz4");
+	}
+	
+	@Test
+	public void conflatedTopics()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertEquals(0, testObject.getConflatedTopics().length);
+		
+		// Changing the value
+		testObject.setConflatedTopics(new String[] { "a.*", "b" });
+		assertArrayEquals(new String[] { "a.*", "b" }, testObject.getConflatedTopics());
+	}
+	
+	@Test
+	public void pooledBuffersFlag()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertFalse(testObject.getPooledBuffers());
+		
+		// Changing the value
+		testObject.setPooledBuffers(true);
+		assertTrue(testObject.getPooledBuffers());
+	}
+	
+	@Test
+	public void traceHeadersFlag()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertFalse(testObject.getTraceHeaders());
+		
+		// Changing the value
+		testObject.setTraceHeaders(true);
+		assertTrue(testObject.getTraceHeaders());
+	}
+	
+	
+	// *** Consumer ***
+	
+	@Test
+	public void pushConsumerSettings()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default values
+		assertFalse(testObject.getPushConsumer());
+		assertEquals(100, testObject.getPrefetchCount());
+		
+		// Changing the values
+		testObject.setPushConsumer(true);
+		testObject.setPrefetchCount(5);
+		
+		// Assert values
+		assertTrue(testObject.getPushConsumer());
+		assertEquals(5, testObject.getPrefetchCount());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void prefetchCountMustBePositive()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		testObject.setPrefetchCount(0);
+	}
+	
+	
+	// *** Publishing ***
+	
+	@Test
+	public void publisherConfirmSettings()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default values
+		assertFalse(testObject.getPublisherConfirms());
+		assertEquals(1000, testObject.getMaxUnconfirmed());
+		
+		// Changing the values
+		testObject.setPublisherConfirms(true);
+		testObject.setMaxUnconfirmed(10);
+		
+		// Assert values
+		assertTrue(testObject.getPublisherConfirms());
+		assertEquals(10, testObject.getMaxUnconfirmed());
+	}
+	
+	@Test
+	public void publishChannelCount()
+	{
+		AmqpPropsManager testObject = new AmqpPropsManager("1.2.3.4", "foo", "user", "password");
+		
+		// The default value
+		assertEquals(1, testObject.getPublishChannelCount());
+		
+		// Changing the value
+		testObject.setPublishChannelCount(4);
+		assertEquals(4, testObject.getPublishChannelCount());
+	}
 }
@@ -0,0 +1,65 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BufferPoolUnitTest
+{
+	@Test
+	public void sizeClasses()
+	{
+		assertEquals(0, BufferPool.getClassIndex(0));
+		assertEquals(0, BufferPool.getClassIndex(64));
+		assertEquals(1, BufferPool.getClassIndex(65));
+		assertEquals(1, BufferPool.getClassIndex(128));
+		assertEquals(14, BufferPool.getClassIndex(1024 * 1024));
+		assertEquals(-1, BufferPool.getClassIndex(1024 * 1024 + 1));
+	}
+	
+	@Test
+	public void reuse()
+	{
+		ConnectorMetrics metrics = new ConnectorMetrics();
+		BufferPool testObject = new BufferPool(metrics);
+		
+		byte[] buffer = testObject.acquire(100);
+		assertEquals(128, buffer.length);
+		testObject.release(buffer);
+		
+		// The same size class reuses the buffer
+		assertSame(buffer, testObject.acquire(70));
+		
+		// Another size class does not
+		assertEquals(64, testObject.acquire(10).length);
+		
+		ConnectorStatistics stats = metrics.snapshot();
+		assertEquals(2, stats.getBuffersAllocated());
+		assertEquals(1, stats.getBuffersReused());
+		assertEquals(1, stats.getBuffersReleased());
+	}
+	
+	@Test
+	public void oversize()
+	{
+		BufferPool testObject = new BufferPool(new ConnectorMetrics());
+		
+		// An oversize buffer has the exact length and is never reused
+		byte[] buffer = testObject.acquire(2 * 1024 * 1024 + 1);
+		assertEquals(2 * 1024 * 1024 + 1, buffer.length);
+		testObject.release(buffer);
+		assertNotSame(buffer, testObject.acquire(2 * 1024 * 1024 + 1));
+	}
+}
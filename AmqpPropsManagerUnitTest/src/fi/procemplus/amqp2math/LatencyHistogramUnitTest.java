@@ -0,0 +1,78 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramUnitTest
+{
+	@Test
+	public void empty()
+	{
+		HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+		
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getPercentileMicros(50));
+		assertEquals(0, snapshot.getMeanMicros(), 0);
+	}
+	
+	@Test
+	public void percentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		// 98 values of 10 us, one of 100 us and one of 5000 us
+		for (int i = 0; i < 98; ++i)
+		{
+			histogram.recordNanos(10000);
+		}
+		histogram.recordNanos(100000);
+		histogram.recordNanos(5000000);
+		
+		HistogramSnapshot snapshot = histogram.snapshot();
+		
+		assertEquals(100, snapshot.getCount());
+		assertEquals(5000, snapshot.getMaxMicros());
+		assertEquals(60.8, snapshot.getMeanMicros(), 0.001);
+		
+		// The bucket of 10 us is [8, 16), the bucket of 100 us is [64, 128)
+		assertEquals(15, snapshot.getPercentileMicros(50));
+		assertEquals(15, snapshot.getPercentileMicros(98));
+		assertEquals(127, snapshot.getPercentileMicros(99));
+		assertEquals(5000, snapshot.getPercentileMicros(99.9)); // capped by the max
+	}
+	
+	@Test
+	public void buckets()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordNanos(500); // below 1 us
+		histogram.recordNanos(1000);
+		histogram.recordNanos(Long.MAX_VALUE);
+		
+		HistogramSnapshot snapshot = histogram.snapshot();
+		long[] counts = snapshot.getBucketCounts();
+		long[] bounds = snapshot.getBucketUpperBoundsMicros();
+		
+		assertEquals(LatencyHistogram.bucketCount, counts.length);
+		assertEquals(1, counts[0]);
+		assertEquals(1, bounds[0]);
+		assertEquals(1, counts[1]);
+		assertEquals(2, bounds[1]);
+		assertEquals(1, counts[counts.length - 1]);
+		assertEquals(Long.MAX_VALUE, bounds[bounds.length - 1]);
+	}
+}
@@ -0,0 +1,163 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LocalReceiveBufferUnitTest
+{
+	@Test
+	public void spillInOrder() throws Exception
+	{
+		ConnectorMetrics metrics = new ConnectorMetrics();
+		LocalReceiveBuffer testObject = new LocalReceiveBuffer(10, 250, false, metrics);
+		int generation = testObject.startGeneration(false);
+		
+		try
+		{
+			// The budget fits two bodies, so the rest are spilled
+			for (int i = 0; i < 5; ++i)
+			{
+				testObject.put(createMessage(i, 100), generation);
+			}
+			
+			ConnectorStatistics stats = metrics.snapshot();
+			assertEquals(3, stats.getMessagesSpilled());
+			assertEquals(300, stats.getBytesSpilled());
+			
+			// Everything is read back in the order of arrival
+			for (int i = 0; i < 5; ++i)
+			{
+				ReceivedMessage msg = testObject.poll();
+				assertEquals("topic" + i, msg.getRoutingKey());
+				assertEquals(100, msg.getBodyLength());
+				assertEquals((byte)i, msg.getBody()[99]);
+			}
+			
+			assertNull(testObject.poll());
+			assertTrue(testObject.isEmpty());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void budgetFreedOnDequeue() throws Exception
+	{
+		ConnectorMetrics metrics = new ConnectorMetrics();
+		LocalReceiveBuffer testObject = new LocalReceiveBuffer(10, 250, false, metrics);
+		int generation = testObject.startGeneration(false);
+		
+		try
+		{
+			// Dequeuing frees the budget, so nothing is spilled
+			for (int i = 0; i < 5; ++i)
+			{
+				testObject.put(createMessage(i, 100), generation);
+				testObject.put(createMessage(i, 100), generation);
+				assertNotNull(testObject.poll(100));
+				assertNotNull(testObject.poll(100));
+			}
+			
+			assertEquals(0, metrics.snapshot().getMessagesSpilled());
+			
+			// A body larger than the budget is not spilled into an empty buffer
+			testObject.put(createMessage(0, 1000), generation);
+			assertEquals(0, metrics.snapshot().getMessagesSpilled());
+			assertEquals(1000, testObject.poll().getBodyLength());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void previousChannelDiscarded() throws Exception
+	{
+		ConnectorMetrics metrics = new ConnectorMetrics();
+		LocalReceiveBuffer testObject = new LocalReceiveBuffer(10, 250, false, metrics);
+		
+		try
+		{
+			int first = testObject.startGeneration(false);
+			
+			for (int i = 0; i < 5; ++i)
+			{
+				testObject.put(createMessage(i, 100), first);
+			}
+			
+			// Without a redelivery, the leftovers remain
+			int second = testObject.startGeneration(false);
+			testObject.put(createMessage(5, 100), second);
+			assertEquals("topic0", testObject.poll().getRoutingKey());
+			
+			// With a redelivery, the leftovers and any late deliveries are discarded
+			int third = testObject.startGeneration(true);
+			assertTrue(testObject.isEmpty());
+			testObject.put(createMessage(6, 100), second);
+			assertTrue(testObject.isEmpty());
+			
+			// The budget has been freed, so nothing more is spilled
+			testObject.put(createMessage(7, 100), third);
+			testObject.put(createMessage(8, 100), third);
+			assertEquals(4, metrics.snapshot().getMessagesSpilled());
+			assertEquals("topic7", testObject.poll().getRoutingKey());
+			assertEquals("topic8", testObject.poll().getRoutingKey());
+			assertNull(testObject.poll());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void spillFileSegments() throws Exception
+	{
+		SpillFile testObject = new SpillFile();
+		
+		try
+		{
+			assertTrue(testObject.isEmpty());
+			
+			// A body larger than a segment gets a segment of its own
+			SpillFile.Location small = testObject.append(new byte[] { 1, 2, 3 });
+			SpillFile.Location large = testObject.append(new byte[65 * 1024 * 1024]);
+			assertFalse(testObject.isEmpty());
+			
+			assertArrayEquals(new byte[] { 1, 2, 3 }, testObject.read(small));
+			assertEquals(65 * 1024 * 1024, testObject.read(large).length);
+			assertTrue(testObject.isEmpty());
+			
+			// Writing starts over once everything has been read
+			SpillFile.Location again = testObject.append(new byte[] { 4 });
+			assertArrayEquals(new byte[] { 4 }, testObject.read(again));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	private ReceivedMessage createMessage(int index, int length)
+	{
+		byte[] body = new byte[length];
+		body[length - 1] = (byte)index;
+		return new ReceivedMessage("topic" + index, null, body, System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,534 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackConnectorUnitTest
+{
+	private AmqpTopicConnectorSync m_sender = null;
+	private AmqpTopicConnectorSync m_receiver = null;
+	
+	
+	@Before
+	public void setUp() throws CommunicationException
+	{
+		useConnectors(createProps(), new String[] { "a.*", "b.#" });
+	}
+	
+	@After
+	public void tearDown()
+	{
+		m_sender.close();
+		m_receiver.close();
+	}
+	
+	@Test
+	public void routing() throws CommunicationException
+	{
+		m_sender.sendMessage("a.x", bytes("1"));
+		m_sender.sendMessage("a.x.y", bytes("2")); // no match
+		m_sender.sendMessage("b.x.y", bytes("3"));
+		
+		ReceivedMessageBatch batch = m_receiver.getMessages(10);
+		
+		assertEquals(2, batch.getCount());
+		assertArrayEquals(new String[] { "a.x", "b.x.y" }, batch.getRoutingKeys());
+		assertEquals("1", new String(batch.getBodies()[0], StandardCharsets.UTF_8));
+		assertEquals("3", new String(batch.getBodies()[1], StandardCharsets.UTF_8));
+		assertNull(m_receiver.getMessage());
+	}
+	
+	@Test
+	public void waitForMessage() throws Exception
+	{
+		Thread sender = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(50);
+					m_sender.sendDoubles("a.x", new double[] { 1, 2 });
+				}
+				catch (Exception e)
+				{
+					// The receiver will time out
+				}
+			}
+		};
+		sender.start();
+		
+		ReceivedMessage msg = m_receiver.getMessage(5000);
+		sender.join();
+		
+		assertNotNull(msg);
+		assertArrayEquals(new double[] { 1, 2 }, msg.getBodyAsDoubles(), 0);
+	}
+	
+	@Test
+	public void timeout() throws CommunicationException
+	{
+		assertNull(m_receiver.getMessage(10));
+		assertEquals(0, m_receiver.getMessages(10, 10).getCount());
+	}
+	
+	@Test
+	public void subscribeAtRuntime() throws CommunicationException
+	{
+		m_sender.sendMessage("c.x", bytes("lost"));
+		
+		m_receiver.subscribe("c.*");
+		m_receiver.subscribe("c.*"); // Subscribing twice does nothing
+		assertArrayEquals(new String[] { "a.*", "b.#", "c.*" }, m_receiver.getTopics());
+		
+		m_sender.sendMessage("a.x", bytes("1"));
+		m_sender.sendMessage("c.x", bytes("2"));
+		
+		m_receiver.unsubscribe("a.*");
+		assertArrayEquals(new String[] { "b.#", "c.*" }, m_receiver.getTopics());
+		
+		m_sender.sendMessage("a.x", bytes("lost"));
+		m_sender.sendMessage("c.x", bytes("3"));
+		
+		// Messages received before unsubscribing remain
+		ReceivedMessageBatch batch = m_receiver.getMessages(10);
+		assertArrayEquals(new String[] { "a.x", "c.x", "c.x" }, batch.getRoutingKeys());
+	}
+	
+	@Test
+	public void bodyCopiedForEachQueue() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		useConnectors(props, new String[] { "t" });
+		AmqpTopicConnectorSync other = new AmqpTopicConnectorSync(props, new String[] { "t" });
+		
+		try
+		{
+			other.openConnectionIfNotOpen();
+			
+			// The sender reuses its array
+			byte[] body = bytes("1");
+			m_sender.sendMessage("t", body);
+			body[0] = '2';
+			
+			// A receiver modifies the body
+			ReceivedMessage msg = m_receiver.getMessage();
+			assertEquals("1", new String(msg.getBody(), StandardCharsets.UTF_8));
+			msg.getBody()[0] = '3';
+			
+			assertEquals("1", new String(other.getMessage().getBody(), StandardCharsets.UTF_8));
+		}
+		finally
+		{
+			other.close();
+		}
+	}
+	
+	@Test
+	public void statistics() throws CommunicationException
+	{
+		m_sender.sendMessage("a.x", bytes("12"));
+		m_sender.sendMessage("b.y", bytes("345"));
+		m_sender.sendMessages(new String[] { "a.x", "c" }, new byte[][] { bytes("6"), bytes("78") });
+		
+		assertEquals(3, m_receiver.getMessages(10).getCount());
+		assertNull(m_receiver.getMessage());
+		
+		ConnectorStatistics sent = m_sender.getStatistics();
+		assertEquals(4, sent.getMessagesSent());
+		assertEquals(8, sent.getBytesSent());
+		assertEquals(2, sent.getPublishLatency().getCount()); // only single sends are timed
+		assertArrayEquals(new String[] { "a.x", "b.y", "c" }, sent.getTopics());
+		assertEquals(2, sent.getTopicStatistics("a.x").getMessagesSent());
+		
+		ConnectorStatistics received = m_receiver.getStatistics();
+		assertEquals(3, received.getMessagesReceived());
+		assertEquals(6, received.getBytesReceived());
+		assertEquals(1, received.getEmptyPollCount());
+		assertEquals(3, received.getTopicStatistics("b.y").getBytesReceived());
+		assertNull(received.getTopicStatistics("c"));
+		assertEquals(0, received.getBindDuration().getCount()); // no broker, no binding
+	}
+	
+	@Test
+	public void perTopicQueues() throws CommunicationException
+	{
+		m_sender.sendMessage("a.x", bytes("1"));
+		m_sender.sendMessage("b.y", bytes("2"));
+		m_sender.sendMessage("a.x", bytes("3"));
+		m_sender.sendMessage("a.z", bytes("4"));
+		
+		assertEquals(2, m_receiver.getMessageCount("a.x"));
+		assertEquals(0, m_receiver.getMessageCount("a.*")); // routing keys, not patterns
+		assertEquals("2", new String(m_receiver.getMessage("b.y").getBody(), StandardCharsets.UTF_8));
+		assertNull(m_receiver.getMessage("b.y"));
+		
+		// The rest in the order of arrival
+		ReceivedMessageBatch rest = m_receiver.getMessages(10);
+		assertArrayEquals(new String[] { "a.x", "a.x", "a.z" }, rest.getRoutingKeys());
+		assertEquals("1", new String(rest.getBodies()[0], StandardCharsets.UTF_8));
+		assertEquals("3", new String(rest.getBodies()[1], StandardCharsets.UTF_8));
+		assertEquals(4, m_receiver.getStatistics().getMessagesReceived());
+	}
+	
+	@Test
+	public void perTopicQueueCapacity() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setTopicQueueCapacity(2);
+		useConnectors(props, new String[] { "#" });
+		
+		for (int i = 1; i <= 3; ++i)
+		{
+			m_sender.sendMessage("t", bytes(Integer.toString(i)));
+		}
+		
+		// The oldest was dropped
+		assertEquals(2, m_receiver.getMessageCount("t"));
+		assertEquals("2", new String(m_receiver.getMessage("t").getBody(), StandardCharsets.UTF_8));
+		assertEquals("3", new String(m_receiver.getMessage().getBody(), StandardCharsets.UTF_8));
+		assertEquals(1, m_receiver.getStatistics().getTopicStatistics("t").getMessagesDropped());
+	}
+	
+	@Test
+	public void conflatedTopics() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setConflatedTopics(new String[] { "latest.*" });
+		useConnectors(props, new String[] { "#" });
+		
+		for (int i = 1; i <= 3; ++i)
+		{
+			m_sender.sendMessage("latest.t", bytes(Integer.toString(i)));
+			m_sender.sendMessage("all", bytes(Integer.toString(i)));
+		}
+		
+		// Only the latest value remains of the conflated topic
+		ReceivedMessageBatch batch = m_receiver.getMessages(10);
+		assertEquals(4, batch.getCount());
+		assertEquals(2, m_receiver.getStatistics().getTopicStatistics("latest.t").getMessagesDropped());
+		assertEquals(0, m_receiver.getStatistics().getTopicStatistics("all").getMessagesDropped());
+		
+		m_sender.sendMessage("latest.t", bytes("4"));
+		m_sender.sendMessage("latest.t", bytes("5"));
+		assertEquals("5", new String(m_receiver.getMessage().getBody(), StandardCharsets.UTF_8));
+		assertNull(m_receiver.getMessage());
+	}
+	
+	@Test
+	public void conflationKeepsOtherTopics() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setConflatedTopics(new String[] { "latest.*" });
+		props.setTopicQueueCapacity(10);
+		useConnectors(props, new String[] { "#" });
+		
+		// Far more than the capacity of a per-topic queue
+		for (int i = 0; i < 1500; ++i)
+		{
+			m_sender.sendMessage("all", bytes(Integer.toString(i)));
+			m_sender.sendMessage("latest.t", bytes(Integer.toString(i)));
+		}
+		
+		// Each retrieval moves at most a queue capacity at a time
+		int allCount = 0;
+		String latest = null;
+		ReceivedMessageBatch batch = m_receiver.getMessages(2000);
+		
+		while (batch.getCount() > 0)
+		{
+			assertTrue(batch.getCount() <= 10);
+			
+			for (int i = 0; i < batch.getCount(); ++i)
+			{
+				String body = new String(batch.getBodies()[i], StandardCharsets.UTF_8);
+				
+				if (batch.getRoutingKeys()[i].equals("all"))
+				{
+					assertEquals(Integer.toString(allCount++), body);
+				}
+				else
+				{
+					latest = body;
+				}
+			}
+			
+			batch = m_receiver.getMessages(2000);
+		}
+		
+		assertEquals(1500, allCount);
+		assertEquals("1499", latest);
+		assertEquals(0, m_receiver.getStatistics().getTopicStatistics("all").getMessagesDropped());
+		assertTrue(m_receiver.getStatistics().getTopicStatistics("latest.t").getMessagesDropped() > 0);
+	}
+	
+	@Test
+	public void pooledBuffers() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setPooledBuffers(true);
+		useConnectors(props, new String[] { "t" });
+		m_sender.sendMessage("t", bytes("first"));
+		m_sender.sendMessage("t", bytes("second"));
+		m_sender.sendDoubles("t", new double[] { 1.5, 2 });
+		
+		ReceivedMessage msg = m_receiver.getMessage();
+		ByteBuffer body = msg.getBodyBuffer();
+		assertTrue(body.isReadOnly());
+		assertEquals(5, body.remaining());
+		assertEquals("first", new String(msg.getBody(), StandardCharsets.UTF_8));
+		msg.release();
+		msg.release(); // Releasing twice does nothing
+		
+		// The second message reuses the buffer of the first
+		msg = m_receiver.getMessage();
+		assertEquals(6, msg.getBodyLength());
+		assertEquals("second", new String(msg.getBody(), StandardCharsets.UTF_8));
+		msg.release();
+		
+		msg = m_receiver.getMessage();
+		assertArrayEquals(new double[] { 1.5, 2 }, msg.getBodyAsDoubles(), 0);
+		msg.release();
+		
+		ConnectorStatistics stats = m_receiver.getStatistics();
+		assertEquals(1, stats.getBuffersAllocated());
+		assertEquals(2, stats.getBuffersReused());
+		assertEquals(3, stats.getBuffersReleased());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void pooledBufferReleased() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setPooledBuffers(true);
+		useConnectors(props, new String[] { "t" });
+		
+		m_sender.sendMessage("t", bytes("x"));
+		ReceivedMessage msg = m_receiver.getMessage();
+		msg.release();
+		msg.getBodyBuffer();
+	}
+	
+	@Test
+	public void traceHeaders() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setTraceHeaders(true);
+		useConnectors(props, new String[] { "t" });
+		
+		long before = System.currentTimeMillis() * 1000;
+		m_sender.sendMessage("t", bytes("1"));
+		m_sender.sendMessages(new String[] { "t" }, new byte[][] { bytes("2") });
+		
+		ReceivedMessage first = m_receiver.getMessage();
+		ReceivedMessage second = m_receiver.getMessage();
+		
+		assertEquals(m_sender.getSenderId(), first.getSenderId());
+		assertEquals(1, first.getSequenceNumber());
+		assertEquals(2, second.getSequenceNumber());
+		assertTrue(first.getSendTime() >= before - 100 * 1000); // the clock may drift by up to 50 ms
+		assertTrue(first.getSendTime() <= second.getSendTime());
+		
+		ConnectorStatistics stats = m_receiver.getStatistics();
+		assertEquals(2, stats.getEndToEndLatency().getCount());
+		assertEquals(2, stats.getTopicStatistics("t").getEndToEndLatency().getCount());
+		assertArrayEquals(new String[] { m_sender.getSenderId() }, stats.getPeerIds());
+		assertEquals(1, stats.getPeerClockOffsetsMicros().length);
+	}
+	
+	@Test
+	public void noTraceHeaders() throws CommunicationException
+	{
+		// Without tracing, nothing is available
+		m_sender.sendMessage("a.x", bytes("1"));
+		ReceivedMessage plain = m_receiver.getMessage();
+		assertEquals(-1, plain.getSendTime());
+		assertEquals(-1, plain.getSequenceNumber());
+		assertNull(plain.getSenderId());
+		assertEquals(0, m_receiver.getStatistics().getEndToEndLatency().getCount());
+	}
+	
+	@Test
+	public void recordAndReplay() throws Exception
+	{
+		File log = File.createTempFile("amqp2math-test-", ".log");
+		File index = new File(log.getPath() + ".idx");
+		
+		try
+		{
+			m_receiver.startRecording(log.getPath());
+			m_sender.sendMessage("a.x", bytes("1"));
+			m_sender.sendDoubles("b.y", new double[] { 2.5 });
+			assertEquals(2, m_receiver.getMessages(10).getCount());
+			
+			// A gap in the timing
+			Thread.sleep(300);
+			m_sender.sendMessage("a.x", bytes("3"));
+			assertNotNull(m_receiver.getMessage());
+			m_receiver.stopRecording();
+			
+			AmqpPropsManager props = new AmqpPropsManager("localhost", "replay", "user", "password");
+			
+			// As fast as possible, and only the given topics
+			ReplayTopicConnector fast = new ReplayTopicConnector(props, new String[] { "a.*" }, log.getPath(),
+					ReplayTopicConnector.asFastAsPossible);
+			
+			try
+			{
+				ReceivedMessageBatch batch = fast.getMessages(10);
+				assertArrayEquals(new String[] { "a.x", "a.x" }, batch.getRoutingKeys());
+				assertEquals("3", new String(batch.getBodies()[1], StandardCharsets.UTF_8));
+				assertTrue(fast.isReplayComplete());
+			}
+			finally
+			{
+				fast.close();
+			}
+			
+			// At the original timing, the gap remains
+			ReplayTopicConnector timed = new ReplayTopicConnector(props, new String[] { "#" }, log.getPath(),
+					ReplayTopicConnector.originalSpeed);
+			
+			try
+			{
+				assertEquals("1", new String(timed.getMessage().getBody(), StandardCharsets.UTF_8));
+				assertArrayEquals(new double[] { 2.5 }, timed.getMessage(100).getBodyAsDoubles(), 0); // within a few ms
+				assertNull(timed.getMessage());
+				assertFalse(timed.isReplayComplete());
+				
+				ReceivedMessage last = timed.getMessage(2000);
+				assertEquals("3", new String(last.getBody(), StandardCharsets.UTF_8));
+				assertTrue(timed.isReplayComplete());
+			}
+			finally
+			{
+				timed.close();
+			}
+		}
+		finally
+		{
+			log.delete();
+			index.delete();
+		}
+	}
+	
+	@Test
+	public void compression() throws CommunicationException
+	{
+		// The receiver decompresses whatever its own setting
+		AmqpPropsManager props = createProps();
+		props.setCompression(AmqpPropsManager.compressionDeflate);
+		props.setCompressionThreshold(100);
+		props.setCompressedTopics(new String[] { "a.*" });
+		useConnectors(props, new String[] { "#" });
+		
+		// A time series compresses well
+		double[] values = new double[1000];
+		
+		for (int i = 0; i < values.length; ++i)
+		{
+			values[i] = i % 10;
+		}
+		
+		m_sender.sendDoubles("a.x", values);
+		m_sender.sendMessage("a.x", bytes("short")); // below the threshold
+		m_sender.sendDoubles("b.x", values); // another topic
+		
+		// Decompressed automatically, also in a batch
+		ReceivedMessage first = m_receiver.getMessage();
+		assertArrayEquals(values, first.getBodyAsDoubles(), 0);
+		assertNull(first.getContentEncoding());
+		
+		ReceivedMessageBatch rest = m_receiver.getMessages(10);
+		assertEquals("short", new String(rest.getBodies()[0], StandardCharsets.UTF_8));
+		assertEquals(8000, rest.getBodies()[1].length);
+		
+		ConnectorStatistics stats = m_sender.getStatistics();
+		assertEquals(8000, stats.getBytesBeforeCompression());
+		assertTrue(stats.getCompressionRatio() > 10);
+		assertEquals(1, stats.getCompressDuration().getCount());
+		assertEquals(1, m_receiver.getStatistics().getDecompressDuration().getCount());
+	}
+	
+	@Test
+	public void decompressionLimit() throws CommunicationException
+	{
+		AmqpPropsManager props = createProps();
+		props.setCompression(AmqpPropsManager.compressionDeflate);
+		props.setCompressionThreshold(100);
+		props.setMaxDecompressedBytes(4000);
+		useConnectors(props, new String[] { "#" });
+		
+		// Compresses to far less than the limit but expands beyond it
+		double[] values = new double[1000];
+		m_sender.sendDoubles("a.x", values);
+		m_sender.sendMessage("a.x", bytes("short"));
+		
+		try
+		{
+			m_receiver.getMessage();
+			fail("Expected an exception");
+		}
+		catch (CommunicationException e)
+		{
+			assertTrue(e.getMessage().contains("4000"));
+		}
+		
+		assertEquals("short", new String(m_receiver.getMessage().getBody(), StandardCharsets.UTF_8));
+		
+		// In a batch, only the message over the limit is dropped
+		m_sender.sendDoubles("a.x", values);
+		m_sender.sendMessage("a.x", bytes("short"));
+		ReceivedMessageBatch batch = m_receiver.getMessages(10);
+		assertEquals(1, batch.getCount());
+		assertEquals("short", new String(batch.getBodies()[0], StandardCharsets.UTF_8));
+		assertEquals(2, m_receiver.getStatistics().getReceiveFailureCount());
+	}
+	
+	private AmqpPropsManager createProps()
+	{
+		// Each test uses an exchange of its own
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "loopback." + System.nanoTime(), "user", "password");
+		props.setLoopback(true);
+		return props;
+	}
+	
+	private void useConnectors(AmqpPropsManager props, String[] receiverTopics) throws CommunicationException
+	{
+		// Replacing the connectors of the fixture. Whichever are in use are closed after the test.
+		if (m_sender != null)
+		{
+			m_sender.close();
+			m_receiver.close();
+		}
+		
+		m_sender = new AmqpTopicConnectorSync(props, new String[0]);
+		m_receiver = new AmqpTopicConnectorSync(props, receiverTopics);
+		m_receiver.openConnectionIfNotOpen();
+	}
+	
+	private byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,77 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+public class NumericPayloadCodecUnitTest
+{
+	// *** Round trips ***
+	
+	@Test
+	public void doubles()
+	{
+		double[] values = new double[] { 1.5, -2.25, Double.MAX_VALUE, Double.NaN };
+		byte[] body = NumericPayloadCodec.encode(values);
+		
+		assertEquals(32, body.length);
+		assertArrayEquals(values, NumericPayloadCodec.decodeDoubles(body), 0);
+	}
+	
+	@Test
+	public void floats()
+	{
+		float[] values = new float[] { 1.5f, -2.25f };
+		assertArrayEquals(values, NumericPayloadCodec.decodeFloats(NumericPayloadCodec.encode(values)), 0);
+	}
+	
+	@Test
+	public void longsAndInts()
+	{
+		long[] longs = new long[] { Long.MIN_VALUE, 0, 42 };
+		int[] ints = new int[] { Integer.MAX_VALUE, -1 };
+		
+		assertArrayEquals(longs, NumericPayloadCodec.decodeLongs(NumericPayloadCodec.encode(longs)));
+		assertArrayEquals(ints, NumericPayloadCodec.decodeInts(NumericPayloadCodec.encode(ints)));
+	}
+	
+	@Test
+	public void littleEndian()
+	{
+		byte[] body = NumericPayloadCodec.encode(new int[] { 0x01020304 });
+		assertArrayEquals(new byte[] { 4, 3, 2, 1 }, body);
+	}
+	
+	
+	// *** Errors ***
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void lengthNotMultiple()
+	{
+		NumericPayloadCodec.decodeDoubles(new byte[7]);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void contentTypeMismatch()
+	{
+		BasicProperties props = new BasicProperties().builder()
+				.contentType(NumericPayloadCodec.contentTypeInt32)
+				.build();
+		ReceivedMessage msg = new ReceivedMessage("a", props, new byte[8], 0);
+		msg.getBodyAsDoubles();
+	}
+}
@@ -0,0 +1,149 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class OutboundJournalUnitTest
+{
+	@Test
+	public void takeInOrder() throws Exception
+	{
+		OutboundJournal testObject = new OutboundJournal(1000);
+		
+		try
+		{
+			assertFalse(testObject.isActive());
+			
+			for (int i = 0; i < 5; ++i)
+			{
+				assertTrue(testObject.append("topic" + i, null, new byte[] { (byte)i }));
+			}
+			
+			assertTrue(testObject.isActive());
+			assertEquals(5, testObject.getCount());
+			
+			List<OutboundJournal.Entry> batch = testObject.take(3);
+			assertEquals(3, batch.size());
+			testObject.confirm(batch);
+			assertEquals(2, testObject.getCount());
+			
+			for (int i = 0; i < 3; ++i)
+			{
+				assertEquals("topic" + i, batch.get(i).getTopic());
+				assertArrayEquals(new byte[] { (byte)i }, batch.get(i).getBody());
+			}
+			
+			// Taking the rest does not deactivate yet, because these may fail
+			assertEquals(2, testObject.take(10).size());
+			assertTrue(testObject.isActive());
+			
+			// Only taking from an empty journal does
+			assertEquals(0, testObject.take(10).size());
+			assertFalse(testObject.isActive());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void putBack() throws Exception
+	{
+		OutboundJournal testObject = new OutboundJournal(1000);
+		
+		try
+		{
+			for (int i = 0; i < 3; ++i)
+			{
+				testObject.append("topic" + i, null, new byte[] { (byte)i });
+			}
+			
+			List<OutboundJournal.Entry> batch = testObject.take(2);
+			testObject.append("topic3", null, new byte[] { 3 });
+			
+			// The failed messages precede everything else
+			testObject.putBack(batch);
+			List<OutboundJournal.Entry> all = testObject.take(10);
+			assertEquals(4, all.size());
+			
+			for (int i = 0; i < 4; ++i)
+			{
+				assertEquals("topic" + i, all.get(i).getTopic());
+				assertArrayEquals(new byte[] { (byte)i }, all.get(i).getBody());
+			}
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void countUntilConfirmed() throws Exception
+	{
+		OutboundJournal testObject = new OutboundJournal(1000);
+		
+		try
+		{
+			for (int i = 0; i < 3; ++i)
+			{
+				testObject.append("topic" + i, null, new byte[] { (byte)i });
+			}
+			
+			// Messages being published still count
+			List<OutboundJournal.Entry> batch = testObject.take(2);
+			assertEquals(3, testObject.getCount());
+			
+			testObject.putBack(batch);
+			assertEquals(3, testObject.getCount());
+			
+			batch = testObject.take(10);
+			assertEquals(3, testObject.getCount());
+			
+			testObject.confirm(batch);
+			assertEquals(0, testObject.getCount());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void sizeLimit() throws Exception
+	{
+		OutboundJournal testObject = new OutboundJournal(250);
+		
+		try
+		{
+			assertTrue(testObject.append("a", null, new byte[100]));
+			assertTrue(testObject.append("a", null, new byte[100]));
+			assertFalse(testObject.append("a", null, new byte[100]));
+			assertEquals(2, testObject.getCount());
+			
+			// Taking frees the space
+			testObject.take(1);
+			assertTrue(testObject.append("a", null, new byte[100]));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TopicMatcherUnitTest
+{
+	@Test
+	public void exact()
+	{
+		assertTrue(TopicMatcher.matches("a.b.c", "a.b.c"));
+		assertFalse(TopicMatcher.matches("a.b.c", "a.b"));
+		assertFalse(TopicMatcher.matches("a.b", "a.b.c"));
+	}
+	
+	@Test
+	public void star()
+	{
+		assertTrue(TopicMatcher.matches("a.*.c", "a.b.c"));
+		assertTrue(TopicMatcher.matches("*", "a"));
+		assertFalse(TopicMatcher.matches("a.*", "a"));
+		assertFalse(TopicMatcher.matches("a.*", "a.b.c"));
+	}
+	
+	@Test
+	public void hash()
+	{
+		assertTrue(TopicMatcher.matches("#", "a.b.c"));
+		assertTrue(TopicMatcher.matches("a.#", "a"));
+		assertTrue(TopicMatcher.matches("a.#", "a.b.c"));
+		assertTrue(TopicMatcher.matches("a.#.c", "a.c"));
+		assertTrue(TopicMatcher.matches("a.#.c", "a.b.b.c"));
+		assertTrue(TopicMatcher.matches("#.*.c", "b.c"));
+		assertFalse(TopicMatcher.matches("a.#.c", "a.b.d"));
+		assertFalse(TopicMatcher.matches("#.*.c", "c"));
+	}
+}
@@ -0,0 +1,130 @@
+//
+// Copyright (c) 2021 Tampere University
+// MIT license
+// Please make sure to read and understand the files README.md and LICENSE in the root of the repository.
+// 
+// This file was prepared in the research project ProCemPlus; https://www.senecc.fi/projects/procemplus
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// http://kannisto.org / petri.kannisto@tuni.fi
+// File created: 10/2026
+// Last modified: 10/2026
+
+package fi.procemplus.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficLogUnitTest
+{
+	private File m_log = null;
+	private File m_index = null;
+	
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		m_log = File.createTempFile("amqp2math-test-", ".log");
+		m_index = new File(m_log.getPath() + TrafficRecorder.indexExtension);
+		
+		TrafficRecorder recorder = new TrafficRecorder(m_log.getPath());
+		
+		for (int i = 0; i < 3; ++i)
+		{
+			recorder.write(new ReceivedMessage("a.x", null, ("message" + i).getBytes(StandardCharsets.UTF_8), 1000 + i));
+		}
+		
+		recorder.close();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		m_log.delete();
+		m_index.delete();
+	}
+	
+	@Test
+	public void complete() throws Exception
+	{
+		TrafficLogReader testObject = new TrafficLogReader(m_log.getPath());
+		
+		try
+		{
+			assertEquals(3, testObject.getCount());
+			assertEquals(1002, testObject.getArrivalTime(2));
+			assertEquals("message2", new String(testObject.read(2).getBody(), StandardCharsets.UTF_8));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void truncatedBody() throws Exception
+	{
+		// The last message misses a byte of its body
+		truncate(m_log, m_log.length() - 1);
+		assertReadable(2);
+	}
+	
+	@Test
+	public void truncatedHeader() throws Exception
+	{
+		// The last message has only its arrival time and a part of its routing key
+		long length = m_log.length();
+		truncate(m_log, length - "message2".length() - 4 - 2 - 1);
+		assertReadable(2);
+		
+		// Only the arrival time
+		truncate(m_log, length - "message2".length() - 4 - 2 - 3 - 2 - 1);
+		assertReadable(2);
+	}
+	
+	@Test
+	public void truncatedIndex() throws Exception
+	{
+		// Half an index entry is left out
+		truncate(m_index, m_index.length() - TrafficRecorder.indexEntryLength / 2);
+		assertReadable(2);
+		
+		// Without any data, no message remains
+		truncate(m_log, TrafficRecorder.headerLength);
+		assertReadable(0);
+	}
+	
+	private void truncate(File file, long length) throws Exception
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(length);
+		}
+	}
+	
+	private void assertReadable(int count) throws Exception
+	{
+		TrafficLogReader testObject = new TrafficLogReader(m_log.getPath());
+		
+		try
+		{
+			assertEquals(count, testObject.getCount());
+			
+			for (int i = 0; i < count; ++i)
+			{
+				assertEquals("message" + i, new String(testObject.read(i).getBody(), StandardCharsets.UTF_8));
+			}
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+}